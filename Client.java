@@ -0,0 +1,49 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.*;
+
+/* Thin client for Server: Same CLI as Main, but the compilation happens in the
+ * (already warm) server. Socket path comes from $MINIJAVA_SOCKET, if set */
+public class Client {
+	public static void main(String[] args) {
+		String socket = System.getenv("MINIJAVA_SOCKET");
+		if (socket == null)
+			socket = Server.DEFAULT_SOCKET;
+
+		try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			channel.connect(UnixDomainSocketAddress.of(socket));
+
+			DataOutputStream request = new DataOutputStream(Channels.newOutputStream(channel));
+			DataInputStream response = new DataInputStream(Channels.newInputStream(channel));
+
+			/* Relative paths are resolved by the server against our working directory */
+			request.writeUTF(Paths.get("").toAbsolutePath().toString());
+			request.writeInt(args.length);
+			for (String arg: args)
+				request.writeUTF(arg);
+			request.flush();
+
+			byte stream;
+			while ((stream = response.readByte()) != Server.END) {
+				byte[] chunk = new byte[response.readInt()];
+				response.readFully(chunk);
+
+				PrintStream target = (stream == Server.STDERR) ? System.err : System.out;
+				target.write(chunk, 0, chunk.length);
+				target.flush();
+			}
+
+			int status = response.readInt();
+			if (status != 0)
+				System.exit(status);
+		} catch (Exception e) {
+			System.err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
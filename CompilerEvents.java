@@ -0,0 +1,136 @@
+import java.lang.reflect.Field;
+import java.util.*;
+
+import jdk.jfr.*;
+
+import syntaxtree.*;
+
+/* Java Flight Recorder events, so that JMC can break compile time down to
+ * phases, MiniJava classes and methods. While recording is off, begin()/end()
+ * are practically free and shouldCommit() is false, so the (few) field
+ * computations are guarded by it. */
+public class CompilerEvents {
+	@Name("minijava.Phase")
+	@Label("Compiler Phase")
+	@Category({ "MiniJava", "Compiler" })
+	public static class PhaseEvent extends Event {
+		@Label("File")
+		public String file;
+
+		@Label("Phase")
+		public String phase;
+	}
+
+	@Name("minijava.Class")
+	@Label("Class Visit")
+	@Category({ "MiniJava", "Compiler" })
+	public static class ClassEvent extends Event {
+		@Label("Pass")
+		public String pass;
+
+		@Label("Class")
+		public String className;
+
+		@Label("Statements")
+		public int statements;
+
+		@Label("IR Emitted")
+		@DataAmount
+		public long irBytes;
+	}
+
+	@Name("minijava.Method")
+	@Label("Method Visit")
+	@Category({ "MiniJava", "Compiler" })
+	public static class MethodEvent extends Event {
+		@Label("Pass")
+		public String pass;
+
+		@Label("Class")
+		public String className;
+
+		@Label("Method")
+		public String methodName;
+
+		@Label("Statements")
+		public int statements;
+
+		@Label("IR Emitted")
+		@DataAmount
+		public long irBytes;
+	}
+
+	public static PhaseEvent phase(String file, String phase) {
+		PhaseEvent event = new PhaseEvent();
+		event.file = file;
+		event.phase = phase;
+		event.begin();
+
+		return event;
+	}
+
+	public static void commit(Event event) {
+		event.end();
+
+		if (event.shouldCommit())
+			event.commit();
+	}
+
+	public static void commit(ClassEvent event, String pass, String className, Node body, long irBytes) throws Exception {
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.pass = pass;
+			event.className = className;
+			event.statements = countStatements(body);
+			event.irBytes = irBytes;
+			event.commit();
+		}
+	}
+
+	public static void commit(MethodEvent event, String pass, String className, String methodName, Node body, long irBytes) throws Exception {
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.pass = pass;
+			event.className = className;
+			event.methodName = methodName;
+			event.statements = countStatements(body);
+			event.irBytes = irBytes;
+			event.commit();
+		}
+	}
+
+	/* All statements in a subtree, nested ones (in blocks, if, while) included.
+	 * Off an explicit stack, as they nest without bound; expressions hold none, so are skipped */
+	public static int countStatements(Node root) throws Exception {
+		int count = 0;
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.push(root);
+
+		while (!pending.isEmpty()) {
+			Node n = pending.pop();
+
+			if (n instanceof Statement)
+				++count;
+			else if (n instanceof Expression || n instanceof NodeToken)
+				continue;
+
+			if (n instanceof NodeListInterface) {
+				for (Enumeration<Node> e = ((NodeListInterface) n).elements(); e.hasMoreElements(); )
+					pending.push(e.nextElement());
+
+				continue;
+			}
+
+			for (Field f: n.getClass().getFields()) {
+				Object child = f.get(n);
+
+				if (child instanceof Node)
+					pending.push((Node) child);
+			}
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,939 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import syntaxtree.*;
+import visitor.*;
+
+/* Hand-written recursive descent counterpart of MiniJavaParser, over Lexer's token arrays.
+ * Builds the very same JTB tree (node classes, NodeChoice indices, token images and positions),
+ * so the visitors cannot tell the difference.
+ * The grammar's syntactic lookaheads become plain token peeks: LOOKAHEAD(2)/(3) look at the
+ * next few kinds, and the Expression alternatives (all "Clause or PrimaryExpression, then
+ * an operator") parse their first operand once, then decide by the token after it.
+ * Methods are named after the productions of minijava.jj; those of statements and expressions,
+ * which nest without bound, are steps of the explicit-stack Partial machine instead (see nested()). */
+public class DescentParser implements MiniJavaParserConstants {
+	private final Lexer lexer;
+	private final int[] kinds;
+
+	private int t = 0;                                  /* Next token */
+
+	/* LazyGoal() only: Method bodies left for later, in source order */
+	private List<LazyMethodDeclaration> bodies;
+	private boolean shared = false;                     /* Lexer shared with body parsers on other threads */
+
+	public DescentParser(Lexer lexer) {
+		this.lexer = lexer;
+		this.kinds = lexer.kinds;
+	}
+
+	/* Parser for a method body, starting at token t */
+	private DescentParser(Lexer lexer, int t) {
+		this(lexer);
+
+		this.t = t;
+		this.shared = true;
+	}
+
+	/* Kind of the token k places ahead. Looking at a lexical error raises it */
+	private int peek(int k) {
+		int kind = kinds[Math.min(t + k, lexer.count - 1)];
+
+		if (kind == Lexer.ERROR)
+			throw lexer.error;
+
+		return kind;
+	}
+
+	private NodeToken consume(int kind) throws ParseException {
+		if (peek(0) != kind)
+			throw error(kind);
+
+		NodeToken token = token(t);
+		++t;
+
+		return token;
+	}
+
+	private NodeToken token(int i) {
+		int column = lexer.columns[i];
+		int last = column + Math.max(lexer.ends[i] - lexer.starts[i], 1) - 1;
+
+		return new NodeToken(image(i), kinds[i], lexer.lines[i], column, lexer.lines[i], last);
+	}
+
+	/* The lexer's name pool fills up as images are asked for: Guard it once bodies parse in parallel */
+	private String image(int i) {
+		if (!shared)
+			return lexer.image(i);
+
+		synchronized (lexer) {
+			return lexer.image(i);
+		}
+	}
+
+	/* Same report as MiniJavaParser's: Last good token, and what came instead of the expected */
+	private ParseException error(int... expected) {
+		int[][] sequences = new int[expected.length][];
+		for (int i = 0; i < expected.length; ++i)
+			sequences[i] = new int[] { expected[i] };
+
+		Token current = (t > 0) ? asToken(t - 1) : new Token();
+		current.next = asToken(t);
+
+		return new ParseException(current, sequences, tokenImage);
+	}
+
+	private Token asToken(int i) {
+		NodeToken n = token(i);
+		Token token = Token.newToken(n.kind, n.tokenImage);
+
+		token.beginLine = n.beginLine;
+		token.beginColumn = n.beginColumn;
+		token.endLine = n.endLine;
+		token.endColumn = n.endColumn;
+
+		return token;
+	}
+
+	private static boolean startsExpression(int kind) {
+		switch (kind) {
+			case LPAREN: case NOT: case FALSE: case NEW: case THIS: case TRUE: case INTEGER_LITERAL: case IDENTIFIER:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static boolean startsStatement(int kind) {
+		return kind == LBRACE || kind == IF || kind == WHILE || kind == PRINT || kind == IDENTIFIER;
+	}
+
+	private static boolean startsType(int kind) {
+		return kind == BOOLEAN || kind == INTEGER || kind == IDENTIFIER;
+	}
+
+	/* LOOKAHEAD(2) VarDeclaration(), inside method bodies, where statements may follow */
+	private boolean atVarDeclaration() {
+		switch (peek(0)) {
+			case BOOLEAN:
+				return peek(1) == IDENTIFIER;
+			case INTEGER:
+				return peek(1) == IDENTIFIER || peek(1) == LSQPAREN;
+			case IDENTIFIER:
+				return peek(1) == IDENTIFIER;
+			default:
+				return false;
+		}
+	}
+
+	public Goal Goal() throws ParseException {
+		MainClass mainClass = MainClass();
+		NodeListOptional types = new NodeListOptional();
+
+		while (peek(0) == CLASS)
+			types.addNode(TypeDeclaration());
+		types.nodes.trimToSize();
+
+		return new Goal(mainClass, types, EOF());
+	}
+
+	/* Goal(), skimming method bodies: Only up to their variable declarations (all SymbolVisitor
+	 * looks at), then on to the matching brace. Each body is parsed when first visited by
+	 * anything else, with the next few forked off in parallel */
+	public LazyGoal LazyGoal() throws ParseException {
+		bodies = new ArrayList<>();
+
+		try {
+			Goal goal = Goal();
+			return new LazyGoal(goal, bodies);
+		} catch (ParseException | TokenMgrError e) {
+			/* Report what a full parse would: An error in a skipped body may come first */
+			bodies = null;
+			t = 0;
+
+			Goal goal = Goal();
+			return new LazyGoal(goal, new ArrayList<>());
+		}
+	}
+
+	private MethodDeclaration skipBody(NodeToken n0, Type n1, Identifier n2, NodeToken n3, NodeOptional n4,
+	                                   NodeToken n5, NodeToken n6, NodeListOptional n7) throws ParseException {
+		int start = t;
+
+		for (int depth = 1; ; ++t) {
+			int kind = peek(0);
+
+			if (kind == EOF)
+				throw error(RBRACE);
+
+			if (kind == LBRACE)
+				++depth;
+			else if (kind == RBRACE && --depth == 0)
+				break;
+		}
+
+		LazyMethodDeclaration method = new LazyMethodDeclaration(n0, n1, n2, n3, n4, n5, n6, n7, start, consume(RBRACE), bodies.size());
+		bodies.add(method);
+
+		return method;
+	}
+
+	/* Goal whose method bodies may not be parsed yet */
+	public static class LazyGoal extends Goal {
+		private static final long serialVersionUID = 1L;
+
+		private final List<LazyMethodDeclaration> bodies;
+
+		LazyGoal(Goal goal, List<LazyMethodDeclaration> bodies) {
+			super(goal.f0, goal.f1, goal.f2);
+
+			this.bodies = bodies;
+
+			/* Get going while the symbol table is built */
+			if (!bodies.isEmpty())
+				bodies.get(0).prefetch();
+		}
+
+		/* Parse every body still pending. Throws the first syntax error among them, if any */
+		public void parseBodies() throws Exception {
+			for (LazyMethodDeclaration method: bodies)
+				method.fork();
+
+			for (LazyMethodDeclaration method: bodies)
+				method.parse();
+		}
+	}
+
+	/* MethodDeclaration with f8 to f11 (statements to ";") filled in on first visit */
+	private class LazyMethodDeclaration extends MethodDeclaration {
+		private static final long serialVersionUID = 1L;
+
+		private final int body;                          /* First token of the statements */
+		private final int index;                         /* In bodies */
+
+		private final ForkJoinTask<?> task = ForkJoinTask.adapt(this::run);
+		private boolean forked = false;
+		private Throwable failure;
+
+		LazyMethodDeclaration(NodeToken n0, Type n1, Identifier n2, NodeToken n3, NodeOptional n4, NodeToken n5,
+		                      NodeToken n6, NodeListOptional n7, int body, NodeToken n12, int index) {
+			super(n0, n1, n2, n3, n4, n5, n6, n7, null, null, null, null, n12);
+
+			this.body = body;
+			this.index = index;
+		}
+
+		private void run() {
+			try {
+				new DescentParser(lexer, body).MethodBody(this);
+			} catch (ParseException | TokenMgrError e) {
+				failure = e;
+			}
+		}
+
+		/* Synchronized: Bodies may be visited from several threads (TypeCheckVisitor, in parallel) */
+		private synchronized void fork() {
+			if (!forked) {
+				forked = true;
+				task.fork();
+			}
+		}
+
+		/* Fork this body and as many following ones as there are threads to parse them */
+		private void prefetch() {
+			int end = Math.min(bodies.size(), index + 1 + ForkJoinPool.getCommonPoolParallelism());
+
+			for (int i = index; i < end; ++i)
+				bodies.get(i).fork();
+		}
+
+		private void parse() throws Exception {
+			if (!task.isDone()) {
+				prefetch();
+				task.join();
+			}
+
+			if (failure instanceof Error)
+				throw (Error) failure;
+			if (failure != null)
+				throw (Exception) failure;
+		}
+
+		/* SymbolVisitor stops at the variable declarations: No need to wait for the body */
+		private void parse(Object visitor) throws Exception {
+			if (!(visitor instanceof SymbolVisitor))
+				parse();
+		}
+
+		@Override
+		public void accept(Visitor v) throws Exception {
+			parse(v);
+			super.accept(v);
+		}
+
+		@Override
+		public <R, A> R accept(GJVisitor<R, A> v, A argu) throws Exception {
+			parse(v);
+			return super.accept(v, argu);
+		}
+
+		@Override
+		public <R> R accept(GJNoArguVisitor<R> v) throws Exception {
+			parse(v);
+			return super.accept(v);
+		}
+
+		@Override
+		public <A> void accept(GJVoidVisitor<A> v, A argu) throws Exception {
+			parse(v);
+			super.accept(v, argu);
+		}
+	}
+
+	private NodeToken EOF() throws ParseException {
+		/* JTB's: One past where JavaCC puts it */
+		NodeToken eof = consume(EOF);
+		eof.beginColumn++;
+		eof.endColumn++;
+
+		return eof;
+	}
+
+	public MainClass MainClass() throws ParseException {
+		NodeToken n0 = consume(CLASS);
+		Identifier n1 = Identifier();
+		NodeToken n2 = consume(LBRACE);
+		NodeToken n3 = consume(PUBLIC);
+		NodeToken n4 = consume(STATIC);
+		NodeToken n5 = consume(VOID);
+		NodeToken n6 = consume(MAIN);
+		NodeToken n7 = consume(LPAREN);
+		NodeToken n8 = consume(STRING);
+		NodeToken n9 = consume(LSQPAREN);
+		NodeToken n10 = consume(RSQPAREN);
+		Identifier n11 = Identifier();
+		NodeToken n12 = consume(RPAREN);
+		NodeToken n13 = consume(LBRACE);
+
+		NodeListOptional vars = new NodeListOptional();
+		while (atVarDeclaration())
+			vars.addNode(VarDeclaration());
+		vars.nodes.trimToSize();
+
+		NodeListOptional statements = new NodeListOptional();
+		while (startsStatement(peek(0)))
+			statements.addNode(Statement());
+		statements.nodes.trimToSize();
+
+		NodeToken n16 = consume(RBRACE);
+		NodeToken n17 = consume(RBRACE);
+
+		return new MainClass(n0, n1, n2, n3, n4, n5, n6, n7, n8, n9, n10, n11, n12, n13, vars, statements, n16, n17);
+	}
+
+	public TypeDeclaration TypeDeclaration() throws ParseException {
+		/* LOOKAHEAD(3): "class" Identifier "{" */
+		if (peek(1) == IDENTIFIER && peek(2) == LBRACE)
+			return new TypeDeclaration(new NodeChoice(ClassDeclaration(), 0));
+
+		return new TypeDeclaration(new NodeChoice(ClassExtendsDeclaration(), 1));
+	}
+
+	public ClassDeclaration ClassDeclaration() throws ParseException {
+		NodeToken n0 = consume(CLASS);
+		Identifier n1 = Identifier();
+		NodeToken n2 = consume(LBRACE);
+
+		NodeListOptional vars = new NodeListOptional();
+		while (startsType(peek(0)))
+			vars.addNode(VarDeclaration());
+		vars.nodes.trimToSize();
+
+		NodeListOptional methods = new NodeListOptional();
+		while (peek(0) == PUBLIC)
+			methods.addNode(MethodDeclaration());
+		methods.nodes.trimToSize();
+
+		return new ClassDeclaration(n0, n1, n2, vars, methods, consume(RBRACE));
+	}
+
+	public ClassExtendsDeclaration ClassExtendsDeclaration() throws ParseException {
+		NodeToken n0 = consume(CLASS);
+		Identifier n1 = Identifier();
+		NodeToken n2 = consume(EXTENDS);
+		Identifier n3 = Identifier();
+		NodeToken n4 = consume(LBRACE);
+
+		NodeListOptional vars = new NodeListOptional();
+		while (startsType(peek(0)))
+			vars.addNode(VarDeclaration());
+		vars.nodes.trimToSize();
+
+		NodeListOptional methods = new NodeListOptional();
+		while (peek(0) == PUBLIC)
+			methods.addNode(MethodDeclaration());
+		methods.nodes.trimToSize();
+
+		return new ClassExtendsDeclaration(n0, n1, n2, n3, n4, vars, methods, consume(RBRACE));
+	}
+
+	public VarDeclaration VarDeclaration() throws ParseException {
+		Type n0 = Type();
+		Identifier n1 = Identifier();
+
+		return new VarDeclaration(n0, n1, consume(SEMICOLON));
+	}
+
+	public MethodDeclaration MethodDeclaration() throws ParseException {
+		NodeToken n0 = consume(PUBLIC);
+		Type n1 = Type();
+		Identifier n2 = Identifier();
+		NodeToken n3 = consume(LPAREN);
+
+		NodeOptional parameters = new NodeOptional();
+		if (startsType(peek(0)))
+			parameters.addNode(FormalParameterList());
+
+		NodeToken n5 = consume(RPAREN);
+		NodeToken n6 = consume(LBRACE);
+
+		NodeListOptional vars = new NodeListOptional();
+		while (atVarDeclaration())
+			vars.addNode(VarDeclaration());
+		vars.nodes.trimToSize();
+
+		if (bodies != null)
+			return skipBody(n0, n1, n2, n3, parameters, n5, n6, vars);
+
+		NodeListOptional statements = new NodeListOptional();
+		while (startsStatement(peek(0)))
+			statements.addNode(Statement());
+		statements.nodes.trimToSize();
+
+		NodeToken n9 = consume(RETURN);
+		Expression n10 = Expression();
+		NodeToken n11 = consume(SEMICOLON);
+		NodeToken n12 = consume(RBRACE);
+
+		return new MethodDeclaration(n0, n1, n2, n3, parameters, n5, n6, vars, statements, n9, n10, n11, n12);
+	}
+
+	/* The rest of MethodDeclaration, up to (not including) its "}", into method */
+	private void MethodBody(MethodDeclaration method) throws ParseException {
+		NodeListOptional statements = new NodeListOptional();
+		while (startsStatement(peek(0)))
+			statements.addNode(Statement());
+		statements.nodes.trimToSize();
+
+		NodeToken n9 = consume(RETURN);
+		Expression n10 = Expression();
+		NodeToken n11 = consume(SEMICOLON);
+
+		/* Braces balance in a good body: Its "}" is the one skipBody() found */
+		if (peek(0) != RBRACE)
+			throw error(RBRACE);
+
+		method.f8 = statements;
+		method.f9 = n9;
+		method.f10 = n10;
+		method.f11 = n11;
+	}
+
+	public FormalParameterList FormalParameterList() throws ParseException {
+		FormalParameter first = FormalParameter();
+		NodeListOptional rest = new NodeListOptional();
+
+		while (peek(0) == 47)                        /* "," */
+			rest.addNode(new FormalParameterTerm(consume(47), FormalParameter()));
+		rest.nodes.trimToSize();
+
+		return new FormalParameterList(first, new FormalParameterTail(rest));
+	}
+
+	public FormalParameter FormalParameter() throws ParseException {
+		Type n0 = Type();
+		return new FormalParameter(n0, Identifier());
+	}
+
+	public Type Type() throws ParseException {
+		switch (peek(0)) {
+			case INTEGER:
+				/* LOOKAHEAD(3): "int" "[" "]" */
+				if (peek(1) == LSQPAREN && peek(2) == RSQPAREN) {
+					NodeToken n0 = consume(INTEGER);
+					NodeToken n1 = consume(LSQPAREN);
+					return new Type(new NodeChoice(new ArrayType(n0, n1, consume(RSQPAREN)), 0));
+				}
+
+				return new Type(new NodeChoice(new IntegerType(consume(INTEGER)), 2));
+
+			case BOOLEAN:
+				return new Type(new NodeChoice(new BooleanType(consume(BOOLEAN)), 1));
+
+			case IDENTIFIER:
+				return new Type(new NodeChoice(Identifier(), 3));
+
+			default:
+				throw error(INTEGER, BOOLEAN, IDENTIFIER);
+		}
+	}
+
+	public Statement Statement() throws ParseException {
+		return (Statement) nested(Production.STATEMENT);
+	}
+
+	public Expression Expression() throws ParseException {
+		return (Expression) nested(Production.EXPRESSION);
+	}
+
+	/* Statements and expressions nest without bound (blocks in blocks, brackets in brackets, "!!!..."),
+	 * so their productions run off an explicit stack of Partial ones instead of the call stack.
+	 * Each step of a Partial either finishes its node, or calls a nested production, whose node
+	 * it gets at the next step */
+	private enum Production {
+		STATEMENT, BLOCK, ASSIGNMENT_STATEMENT, ARRAY_ASSIGNMENT_STATEMENT, IF_STATEMENT, WHILE_STATEMENT, PRINT_STATEMENT,
+		EXPRESSION, CLAUSE, PRIMARY_EXPRESSION
+	}
+
+	private static class Partial {
+		Production production;
+		int state;
+		int which;                                      /* NodeChoice to wrap the result in */
+		final Object[] parts = new Object[7];           /* Tokens and nodes so far, in field order */
+	}
+
+	private Partial[] partials = new Partial[32];
+	private int depth = 0;
+
+	private Node nested(Production production) throws ParseException {
+		int base = depth;
+		Node child = null;
+
+		try {
+			call(production);
+
+			while (true) {
+				Partial p = partials[depth - 1];
+				int before = depth;
+
+				Node done = step(p, child);
+				if (depth > before) {
+					child = null;
+					continue;
+				}
+
+				Arrays.fill(p.parts, null);
+				if (--depth == base)
+					return done;
+
+				child = done;
+			}
+		} finally {
+			while (depth > base)
+				Arrays.fill(partials[--depth].parts, null);
+		}
+	}
+
+	/* Start a nested production: Its node comes as "child" to the next step of the caller. Returns null */
+	private Node call(Production production) {
+		if (depth == partials.length)
+			partials = Arrays.copyOf(partials, depth * 2);
+
+		Partial p = partials[depth];
+		if (p == null)
+			p = partials[depth] = new Partial();
+
+		p.production = production;
+		p.state = 0;
+		++depth;
+
+		return null;
+	}
+
+	private Node call(Partial caller, int state, Production production) {
+		caller.state = state;
+		return call(production);
+	}
+
+	private Node step(Partial p, Node child) throws ParseException {
+		Object[] parts = p.parts;
+
+		switch (p.production) {
+			case STATEMENT:
+				if (p.state == 1)
+					return new Statement(new NodeChoice(child, p.which));
+
+				switch (peek(0)) {
+					case LBRACE:
+						p.which = 0;
+						return call(p, 1, Production.BLOCK);
+
+					case IDENTIFIER:
+						/* LOOKAHEAD(2) */
+						if (peek(1) == ASSIGN) {
+							p.which = 1;
+							return call(p, 1, Production.ASSIGNMENT_STATEMENT);
+						}
+						if (peek(1) == LSQPAREN) {
+							p.which = 2;
+							return call(p, 1, Production.ARRAY_ASSIGNMENT_STATEMENT);
+						}
+						break;
+
+					case IF:
+						p.which = 3;
+						return call(p, 1, Production.IF_STATEMENT);
+
+					case WHILE:
+						p.which = 4;
+						return call(p, 1, Production.WHILE_STATEMENT);
+
+					case PRINT:
+						p.which = 5;
+						return call(p, 1, Production.PRINT_STATEMENT);
+				}
+
+				throw error(LBRACE, IDENTIFIER, IF, WHILE, PRINT);
+
+			case BLOCK: {
+				if (p.state == 0) {
+					parts[0] = consume(LBRACE);
+					parts[1] = new NodeListOptional();
+					p.state = 1;
+				} else {
+					((NodeListOptional) parts[1]).addNode(child);
+				}
+
+				if (startsStatement(peek(0)))
+					return call(Production.STATEMENT);
+
+				NodeListOptional statements = (NodeListOptional) parts[1];
+				statements.nodes.trimToSize();
+
+				return new Block((NodeToken) parts[0], statements, consume(RBRACE));
+			}
+
+			case ASSIGNMENT_STATEMENT:
+				if (p.state == 0) {
+					parts[0] = Identifier();
+					parts[1] = consume(ASSIGN);
+					return call(p, 1, Production.EXPRESSION);
+				}
+
+				return new AssignmentStatement((Identifier) parts[0], (NodeToken) parts[1], (Expression) child, consume(SEMICOLON));
+
+			case ARRAY_ASSIGNMENT_STATEMENT:
+				switch (p.state) {
+					case 0:
+						parts[0] = Identifier();
+						parts[1] = consume(LSQPAREN);
+						return call(p, 1, Production.EXPRESSION);
+
+					case 1:
+						parts[2] = child;
+						parts[3] = consume(RSQPAREN);
+						parts[4] = consume(ASSIGN);
+						return call(p, 2, Production.EXPRESSION);
+
+					default:
+						return new ArrayAssignmentStatement((Identifier) parts[0], (NodeToken) parts[1], (Expression) parts[2], (NodeToken) parts[3],
+						                                    (NodeToken) parts[4], (Expression) child, consume(SEMICOLON));
+				}
+
+			case IF_STATEMENT:
+				switch (p.state) {
+					case 0:
+						parts[0] = consume(IF);
+						parts[1] = consume(LPAREN);
+						return call(p, 1, Production.EXPRESSION);
+
+					case 1:
+						parts[2] = child;
+						parts[3] = consume(RPAREN);
+						return call(p, 2, Production.STATEMENT);
+
+					case 2:
+						parts[4] = child;
+						parts[5] = consume(ELSE);
+						return call(p, 3, Production.STATEMENT);
+
+					default:
+						return new IfStatement((NodeToken) parts[0], (NodeToken) parts[1], (Expression) parts[2], (NodeToken) parts[3],
+						                       (Statement) parts[4], (NodeToken) parts[5], (Statement) child);
+				}
+
+			case WHILE_STATEMENT:
+				switch (p.state) {
+					case 0:
+						parts[0] = consume(WHILE);
+						parts[1] = consume(LPAREN);
+						return call(p, 1, Production.EXPRESSION);
+
+					case 1:
+						parts[2] = child;
+						parts[3] = consume(RPAREN);
+						return call(p, 2, Production.STATEMENT);
+
+					default:
+						return new WhileStatement((NodeToken) parts[0], (NodeToken) parts[1], (Expression) parts[2], (NodeToken) parts[3], (Statement) child);
+				}
+
+			case PRINT_STATEMENT:
+				if (p.state == 0) {
+					parts[0] = consume(PRINT);
+					parts[1] = consume(LPAREN);
+					return call(p, 1, Production.EXPRESSION);
+				}
+
+				parts[2] = child;
+				parts[3] = consume(RPAREN);
+
+				return new PrintStatement((NodeToken) parts[0], (NodeToken) parts[1], (Expression) parts[2], (NodeToken) parts[3], consume(SEMICOLON));
+
+			case EXPRESSION:
+				return expressionStep(p, child);
+
+			case CLAUSE:
+				switch (p.state) {
+					case 0:
+						if (peek(0) == NOT) {
+							parts[0] = consume(NOT);
+							return call(p, 1, Production.CLAUSE);
+						}
+
+						if (!startsExpression(peek(0)))
+							throw error(NOT, LPAREN, FALSE, NEW, THIS, TRUE, INTEGER_LITERAL, IDENTIFIER);
+
+						return primary(p, 2);
+
+					case 1:
+						return new Clause(new NodeChoice(new NotExpression((NodeToken) parts[0], (Clause) child), 0));
+
+					default:
+						return new Clause(new NodeChoice(child, 1));
+				}
+
+			default:
+				return primaryExpressionStep(p, child);
+		}
+	}
+
+	/* Expression: The alternatives all start with a Clause (or PrimaryExpression); which one
+	 * it is shows in the token after it. parts: left operand, operator (or "."), then for
+	 * MessageSend: Identifier, "(", first argument, the rest, and the last "," */
+	private Node expressionStep(Partial p, Node child) throws ParseException {
+		Object[] parts = p.parts;
+
+		switch (p.state) {
+			case 0:
+				if (peek(0) == NOT)
+					return call(p, 1, Production.CLAUSE);
+
+				if (!startsExpression(peek(0)))
+					throw error(LPAREN, NOT, FALSE, NEW, THIS, TRUE, INTEGER_LITERAL, IDENTIFIER);
+
+				return primary(p, 2);
+
+			case 1:                                     /* Clause starting with "!" */
+				if (peek(0) == AND) {
+					parts[0] = child;
+					parts[1] = consume(AND);
+					return call(p, 3, Production.CLAUSE);
+				}
+
+				return new Expression(new NodeChoice(child, 8));
+
+			case 2: {                                   /* PrimaryExpression */
+				PrimaryExpression left = (PrimaryExpression) child;
+				parts[0] = left;
+
+				switch (peek(0)) {
+					case AND:
+						parts[0] = new Clause(new NodeChoice(left, 1));
+						parts[1] = consume(AND);
+						return call(p, 3, Production.CLAUSE);
+
+					case LT:
+						p.which = 1;
+						parts[1] = consume(LT);
+						return primary(p, 4);
+
+					case PLUS:
+						p.which = 2;
+						parts[1] = consume(PLUS);
+						return primary(p, 4);
+
+					case MINUS:
+						p.which = 3;
+						parts[1] = consume(MINUS);
+						return primary(p, 4);
+
+					case 48:                            /* "*" */
+						p.which = 4;
+						parts[1] = consume(48);
+						return primary(p, 4);
+
+					case LSQPAREN:
+						parts[1] = consume(LSQPAREN);
+						return primary(p, 5);
+
+					case DOT:
+						if (peek(1) == LENGTH) {
+							NodeToken dot = consume(DOT);
+							return new Expression(new NodeChoice(new ArrayLength(left, dot, consume(LENGTH)), 6));
+						}
+
+						if (peek(1) == IDENTIFIER && peek(2) == LPAREN) {
+							parts[1] = consume(DOT);
+							parts[2] = Identifier();
+							parts[3] = consume(LPAREN);
+
+							if (startsExpression(peek(0)))
+								return call(p, 6, Production.EXPRESSION);
+
+							return messageSend(p, new NodeOptional());
+						}
+
+						break;
+				}
+
+				return new Expression(new NodeChoice(new Clause(new NodeChoice(left, 1)), 8));
+			}
+
+			case 3:
+				return new Expression(new NodeChoice(new AndExpression((Clause) parts[0], (NodeToken) parts[1], (Clause) child), 0));
+
+			case 4: {
+				PrimaryExpression left = (PrimaryExpression) parts[0];
+				NodeToken op = (NodeToken) parts[1];
+				PrimaryExpression right = (PrimaryExpression) child;
+
+				switch (p.which) {
+					case 1:
+						return new Expression(new NodeChoice(new CompareExpression(left, op, right), 1));
+					case 2:
+						return new Expression(new NodeChoice(new PlusExpression(left, op, right), 2));
+					case 3:
+						return new Expression(new NodeChoice(new MinusExpression(left, op, right), 3));
+					default:
+						return new Expression(new NodeChoice(new TimesExpression(left, op, right), 4));
+				}
+			}
+
+			case 5:
+				return new Expression(new NodeChoice(new ArrayLookup((PrimaryExpression) parts[0], (NodeToken) parts[1], (PrimaryExpression) child,
+				                                                     consume(RSQPAREN)), 5));
+
+			case 6:                                     /* First argument */
+				parts[4] = child;
+				parts[5] = new NodeListOptional();
+				break;
+
+			default:                                    /* "," Expression */
+				((NodeListOptional) parts[5]).addNode(new ExpressionTerm((NodeToken) parts[6], (Expression) child));
+		}
+
+		/* In an ExpressionList */
+		if (peek(0) == 47) {                            /* "," */
+			parts[6] = consume(47);
+			return call(p, 7, Production.EXPRESSION);
+		}
+
+		NodeListOptional rest = (NodeListOptional) parts[5];
+		rest.nodes.trimToSize();
+
+		NodeOptional arguments = new NodeOptional();
+		arguments.addNode(new ExpressionList((Expression) parts[4], new ExpressionTail(rest)));
+
+		return messageSend(p, arguments);
+	}
+
+	/* PrimaryExpression "." Identifier "(" ( ExpressionList )? ")", up to the arguments in parts */
+	private Expression messageSend(Partial p, NodeOptional arguments) throws ParseException {
+		Object[] parts = p.parts;
+		MessageSend send = new MessageSend((PrimaryExpression) parts[0], (NodeToken) parts[1], (Identifier) parts[2], (NodeToken) parts[3],
+		                                   arguments, consume(RPAREN));
+
+		return new Expression(new NodeChoice(send, 7));
+	}
+
+	/* PrimaryExpression into caller's next step (state): Right away, unless it nests */
+	private Node primary(Partial caller, int state) throws ParseException {
+		PrimaryExpression leaf = leafPrimaryExpression();
+
+		if (leaf == null)
+			return call(caller, state, Production.PRIMARY_EXPRESSION);
+
+		caller.state = state;
+		return step(caller, leaf);
+	}
+
+	/* PrimaryExpression, if one that cannot nest (all but "new int [...]" and "(...)"), or null */
+	private PrimaryExpression leafPrimaryExpression() throws ParseException {
+		switch (peek(0)) {
+			case INTEGER_LITERAL:
+				return new PrimaryExpression(new NodeChoice(new IntegerLiteral(consume(INTEGER_LITERAL)), 0));
+
+			case TRUE:
+				return new PrimaryExpression(new NodeChoice(new TrueLiteral(consume(TRUE)), 1));
+
+			case FALSE:
+				return new PrimaryExpression(new NodeChoice(new FalseLiteral(consume(FALSE)), 2));
+
+			case IDENTIFIER:
+				return new PrimaryExpression(new NodeChoice(Identifier(), 3));
+
+			case THIS:
+				return new PrimaryExpression(new NodeChoice(new ThisExpression(consume(THIS)), 4));
+
+			case NEW: {
+				/* LOOKAHEAD(3): "new" "int" "[" */
+				if (peek(1) == INTEGER && peek(2) == LSQPAREN)
+					return null;
+
+				NodeToken n0 = consume(NEW);
+				Identifier n1 = Identifier();
+				NodeToken n2 = consume(LPAREN);
+				return new PrimaryExpression(new NodeChoice(new AllocationExpression(n0, n1, n2, consume(RPAREN)), 6));
+			}
+
+			default:
+				return null;
+		}
+	}
+
+	/* The PrimaryExpressions leafPrimaryExpression() leaves */
+	private Node primaryExpressionStep(Partial p, Node child) throws ParseException {
+		Object[] parts = p.parts;
+
+		switch (p.state) {
+			case 1:
+				return new PrimaryExpression(new NodeChoice(new ArrayAllocationExpression((NodeToken) parts[0], (NodeToken) parts[1], (NodeToken) parts[2],
+				                                                                          (Expression) child, consume(RSQPAREN)), 5));
+
+			case 2:
+				return new PrimaryExpression(new NodeChoice(new BracketExpression((NodeToken) parts[0], (Expression) child, consume(RPAREN)), 7));
+		}
+
+		switch (peek(0)) {
+			case NEW:
+				parts[0] = consume(NEW);
+				parts[1] = consume(INTEGER);
+				parts[2] = consume(LSQPAREN);
+				return call(p, 1, Production.EXPRESSION);
+
+			case LPAREN:
+				parts[0] = consume(LPAREN);
+				return call(p, 2, Production.EXPRESSION);
+
+			default:
+				throw error(INTEGER_LITERAL, TRUE, FALSE, IDENTIFIER, THIS, NEW, LPAREN);
+		}
+	}
+
+	public Identifier Identifier() throws ParseException {
+		return new Identifier(consume(IDENTIFIER));
+	}
+}
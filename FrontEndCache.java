@@ -0,0 +1,50 @@
+import java.security.MessageDigest;
+import java.util.*;
+
+import syntaxtree.*;
+import symbol.*;
+
+/* LRU of type-checked ASTs, their Symbol Tables and what the type checker found in method bodies,
+ * keyed by source content hash. None is modified by LLVMVisitor, so entries can be shared between compilations. */
+public class FrontEndCache {
+	public static class Entry {
+		public final Node root;
+		public final SymbolTable symbols;
+		public final MethodTables tables;
+
+		public Entry(Node root, SymbolTable symbols, MethodTables tables) {
+			this.root = root;
+			this.symbols = symbols;
+			this.tables = tables;
+		}
+	}
+
+	private final Map<String, Entry> entries;
+
+	public FrontEndCache(int capacity) {
+		/* accessOrder = true: iteration order is least to most recently used */
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	public synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, Node root, SymbolTable symbols, MethodTables tables) {
+		entries.put(key, new Entry(root, symbols, tables));
+	}
+
+	public static String key(byte[] source) throws Exception {
+		StringBuilder hex = new StringBuilder();
+
+		for (byte b: MessageDigest.getInstance("SHA-256").digest(source))
+			hex.append(String.format("%02x", b));
+
+		return hex.toString();
+	}
+}
@@ -0,0 +1,164 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import syntaxtree.*;
+import visitor.*;
+
+/* Hash of the declarations a SymbolVisitor reads: Class names and parents, fields, and method
+ * signatures and variables, not method bodies (which lazy parsing thus never needs).
+ * Sources of equal hash have equal symbol tables, so a stored one can stand in (see SymbolFile) */
+public class HeaderHash extends GJVoidDepthFirst<StringBuilder> {
+	public static String key(Node root, String version) throws Exception {
+		/* Names are gathered first, then hashed at once: Much faster than a digest update each */
+		StringBuilder header = new StringBuilder();
+
+		update(header, version);
+		root.accept(new HeaderHash(), header);
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b: MessageDigest.getInstance("SHA-256").digest(header.toString().getBytes(StandardCharsets.UTF_8)))
+			hex.append(String.format("%02x", b));
+
+		return hex.toString();
+	}
+
+	/* Each name is terminated, so that neighbouring ones can't run into each other.
+	 * Markers start with '#', so they can't be mistaken for names either */
+	private static void update(StringBuilder header, String name) {
+		header.append(name).append('\0');
+	}
+
+	private static String typeName(Type n) {
+		switch (n.f0.which) {
+			case 0:
+				return "int[]";
+
+			case 1:
+				return "boolean";
+
+			case 2:
+				return "int";
+
+			default:
+				return ((Identifier) n.f0.choice).f0.toString();
+		}
+	}
+
+	/**
+	 * f0 -> "class"
+	 * f1 -> Identifier()
+	 * f2 -> "{"
+	 * f3 -> "public"
+	 * f4 -> "static"
+	 * f5 -> "void"
+	 * f6 -> "main"
+	 * f7 -> "("
+	 * f8 -> "String"
+	 * f9 -> "["
+	 * f10 -> "]"
+	 * f11 -> Identifier()
+	 * f12 -> ")"
+	 * f13 -> "{"
+	 * f14 -> ( VarDeclaration() )*
+	 * f15 -> ( Statement() )*
+	 * f16 -> "}"
+	 * f17 -> "}"
+	*/
+	@Override
+	public void visit(MainClass n, StringBuilder argu) throws Exception {
+		update(argu, "#main");
+		update(argu, n.f1.f0.toString());
+		update(argu, n.f11.f0.toString());
+
+		n.f14.accept(this, argu);
+	}
+
+	/**
+	 * f0 -> "class"
+	 * f1 -> Identifier()
+	 * f2 -> "{"
+	 * f3 -> ( VarDeclaration() )*
+	 * f4 -> ( MethodDeclaration() )*
+	 * f5 -> "}"
+	*/
+	@Override
+	public void visit(ClassDeclaration n, StringBuilder argu) throws Exception {
+		update(argu, "#class");
+		update(argu, n.f1.f0.toString());
+
+		n.f3.accept(this, argu);
+		n.f4.accept(this, argu);
+	}
+
+	/**
+	 * f0 -> "class"
+	 * f1 -> Identifier()
+	 * f2 -> "extends"
+	 * f3 -> Identifier()
+	 * f4 -> "{"
+	 * f5 -> ( VarDeclaration() )*
+	 * f6 -> ( MethodDeclaration() )*
+	 * f7 -> "}"
+	*/
+	@Override
+	public void visit(ClassExtendsDeclaration n, StringBuilder argu) throws Exception {
+		update(argu, "#extends");
+		update(argu, n.f1.f0.toString());
+		update(argu, n.f3.f0.toString());
+
+		n.f5.accept(this, argu);
+		n.f6.accept(this, argu);
+	}
+
+	/**
+	 * f0 -> Type()
+	 * f1 -> Identifier()
+	 * f2 -> ";"
+	*/
+	@Override
+	public void visit(VarDeclaration n, StringBuilder argu) throws Exception {
+		update(argu, "#var");
+		update(argu, typeName(n.f0));
+		update(argu, n.f1.f0.toString());
+	}
+
+	/**
+	 * f0 -> "public"
+	 * f1 -> Type()
+	 * f2 -> Identifier()
+	 * f3 -> "("
+	 * f4 -> ( FormalParameterList() )?
+	 * f5 -> ")"
+	 * f6 -> "{"
+	 * f7 -> ( VarDeclaration() )*
+	 * f8 -> ( Statement() )*
+	 * f9 -> "return"
+	 * f10 -> Expression()
+	 * f11 -> ";"
+	 * f12 -> "}"
+	*/
+	@Override
+	public void visit(MethodDeclaration n, StringBuilder argu) throws Exception {
+		update(argu, "#method");
+		update(argu, typeName(n.f1));
+		update(argu, n.f2.f0.toString());
+
+		n.f4.accept(this, argu);
+
+		/* Variables of the method, or fields of the class after it? */
+		update(argu, "#body");
+		n.f7.accept(this, argu);
+		update(argu, "#end");
+	}
+
+	/**
+	 * f0 -> Type()
+	 * f1 -> Identifier()
+	*/
+	@Override
+	public void visit(FormalParameter n, StringBuilder argu) throws Exception {
+		update(argu, "#param");
+		update(argu, typeName(n.f0));
+		update(argu, n.f1.f0.toString());
+	}
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.*;
+
+import symbol.*;
+
+/* Content-addressed on-disk cache of generated .ll files, shareable between
+ * concurrent compiler processes. Entries are <dir>/<key>.ll, where key hashes
+ * the source, the compiler version and the codegen flags. Symbol tables are kept
+ * alongside, as <dir>/<key>.sym, where key hashes just the declarations (see HeaderHash).
+ * Modification time of an entry doubles as its "last used" time for LRU eviction.
+ * Processes take turns through a file lock, threads of one process through the instance (see open()) */
+public class IRCache {
+	/* By real path: File locks are held by the whole JVM, so two instances on one directory
+	 * would fail on each other's locks (OverlappingFileLockException) rather than wait */
+	private static final Map<Path, IRCache> opened = new HashMap<>();
+
+	private final Path dir;
+	private volatile long maxBytes;      /* The latest open()'s */
+	private final Path lockFile;
+
+	private IRCache(Path dir) {
+		this.dir = dir;
+		lockFile = dir.resolve(".lock");
+	}
+
+	/* The cache in dir, made if missing: The same instance for each open() of it in this JVM */
+	public static IRCache open(Path dir, long maxBytes) throws IOException {
+		Files.createDirectories(dir);
+		Path real = dir.toRealPath();
+		IRCache cache;
+
+		synchronized (opened) {
+			cache = opened.get(real);
+
+			if (cache == null) {
+				cache = new IRCache(real);
+				opened.put(real, cache);
+			}
+		}
+
+		cache.maxBytes = maxBytes;
+		return cache;
+	}
+
+	public static String key(byte[] source, String version, String flags) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+		digest.update((version + '\0' + flags + '\0').getBytes("UTF-8"));
+		digest.update(source);
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b: digest.digest())
+			hex.append(String.format("%02x", b));
+
+		return hex.toString();
+	}
+
+	/* Copy cached IR to target. Returns false on miss */
+	public synchronized boolean get(String key, Path target) throws IOException {
+		Path entry = dir.resolve(key + ".ll");
+
+		/* Shared lock: Other processes may read too, but not evict while we copy */
+		try (FileChannel lock = openLock()) {
+			lock.lock(0, Long.MAX_VALUE, true);
+
+			if (!Files.exists(entry))
+				return false;
+
+			Files.copy(entry, target, StandardCopyOption.REPLACE_EXISTING);
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		}
+
+		return true;
+	}
+
+	/* Store generated IR, then evict least recently used entries over the size limit */
+	public synchronized void put(String key, Path generated) throws IOException {
+		/* Write under a unique name first, so readers never see a partial entry */
+		Path temp = Files.createTempFile(dir, key, ".tmp");
+
+		try {
+			Files.copy(generated, temp, StandardCopyOption.REPLACE_EXISTING);
+			store(temp, key + ".ll");
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/* Stored symbol table of the same declarations. Returns null on miss (or an unreadable entry) */
+	public synchronized SymbolTable getSymbols(String key) throws IOException {
+		Path entry = dir.resolve(key + ".sym");
+
+		try (FileChannel lock = openLock()) {
+			lock.lock(0, Long.MAX_VALUE, true);
+
+			if (!Files.exists(entry))
+				return null;
+
+			SymbolTable symbols;
+
+			try {
+				symbols = SymbolFile.read(entry);
+			} catch (IOException e) {
+				return null;             /* Damaged: Rebuilt and stored anew */
+			}
+
+			if (symbols != null)
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+
+			return symbols;
+		}
+	}
+
+	public synchronized void putSymbols(String key, SymbolTable symbols) throws IOException {
+		Path temp = Files.createTempFile(dir, key, ".tmp");
+
+		try {
+			/* Made anew, as copies of .ll entries are (not with the temporary file's permissions) */
+			Files.delete(temp);
+			SymbolFile.write(symbols, temp);
+			store(temp, key + ".sym");
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/* Move a complete entry in place */
+	private void store(Path temp, String name) throws IOException {
+		try (FileChannel lock = openLock()) {
+			lock.lock();
+			Files.move(temp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			evict();
+		}
+	}
+
+	/* Locks on it are released as it is closed */
+	private FileChannel openLock() throws IOException {
+		return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private void evict() throws IOException {
+		List<Path> entries = new ArrayList<>();
+		long total = 0;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.{ll,sym}")) {
+			for (Path entry: stream) {
+				entries.add(entry);
+				total += Files.size(entry);
+			}
+		}
+
+		if (total <= maxBytes)
+			return;
+
+		/* Oldest first */
+		Map<Path, FileTime> used = new HashMap<>();
+		for (Path entry: entries)
+			used.put(entry, Files.getLastModifiedTime(entry));
+
+		entries.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+
+		for (Path entry: entries) {
+			if (total <= maxBytes)
+				break;
+
+			total -= Files.size(entry);
+			Files.delete(entry);
+		}
+	}
+}
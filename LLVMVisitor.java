@@ -1,15 +1,27 @@
-import java.io.BufferedWriter;
 import java.util.*;
 
 import syntaxtree.*;
 import visitor.*;
 import symbol.*;
+import symbol.Type;                  /* Not syntaxtree.Type */
+import ir.*;
+import ir.Instruction.Opcode;
 
 class Session {
 	private String className;
 	private String methodName;
-	private String objectType;
-	private List<String> callArgs = new ArrayList<>();
+
+	/* Arguments of the calls being generated, innermost call's last */
+	private List<Value> callArgs = new ArrayList<>();
+
+	/* What the variable uses in the method's body resolve to (see MethodTables.getSlots()) */
+	private Map<Identifier, Slot> slots;
+
+	/* The static types of the method's expressions, as the type checker found them (see MethodTables.getTypes()) */
+	private Map<Node, Type> types;
+
+	/* %this, in a method */
+	private Value thisValue;
 
 	public Session(String className) {
 		this(className, null);
@@ -24,11 +36,31 @@ class Session {
 		this.methodName = methodName;
 	}
 
-	public void setObjectType(String objectType) {
-		this.objectType = objectType;
+	public void setSlots(Map<Identifier, Slot> slots) {
+		this.slots = slots;
+	}
+
+	public Slot getSlot(Identifier use) {
+		return slots.get(use);
+	}
+
+	public void setTypes(Map<Node, Type> types) {
+		this.types = types;
 	}
 
-	public void addCallArg(String argExpr) {
+	public Type getType(Node expression) {
+		return MethodTables.typeOf(slots, types, expression);
+	}
+
+	public void setThis(Value thisValue) {
+		this.thisValue = thisValue;
+	}
+
+	public Value getThis() {
+		return thisValue;
+	}
+
+	public void addCallArg(Value argExpr) {
 		callArgs.add(argExpr);
 	}
 
@@ -40,21 +72,52 @@ class Session {
 		return methodName;
 	}
 
-	public String getObjectType() {
-		return objectType;
-	}
-
-	public List<String> getCallArgs() {
+	public List<Value> getCallArgs() {
 		return callArgs;
 	}
 }
-public class LLVMVisitor extends GJDepthFirst<String, Session> {
+
+/* Builds each method as an ir.Function (a Builder at a time), and has the IRPrinter write it out
+ * once done. Variables are built as allocas, each use a load and each assignment a store, that
+ * Mem2Reg then turns into SSA values (unless they are to stay in memory), and every array access
+ * is checked, until BoundsChecks takes out the checks that can't fail */
+public class LLVMVisitor extends GJDepthFirst<Value, Session> {
+	/* The runtime, in the header below */
+	private static final Global CALLOC = new Global(LlvmType.of("i8* (i32, i32)*"), "calloc");
+	private static final Global PRINT_INT = new Global(LlvmType.of("void (i32)*"), "print_int");
+	private static final Global THROW_OOB = new Global(LlvmType.of("void ()*"), "throw_oob");
+
+	private static final Constant ZERO = Constant.i32(0);
+	private static final Constant ONE = Constant.i32(1);
+	private static final Constant FOUR = Constant.i32(4);
+	private static final Constant BIT = new Constant(LlvmType.I1, "1");
+
+	private static final LlvmType I8_PTR_PTR = LlvmType.I8_PTR.pointer();
+	private static final LlvmType I8_PTR_PTR_PTR = I8_PTR_PTR.pointer();
+
 	private final SymbolTable symbols;
-	private final BufferedWriter ll;
+	private final MethodTables tables;
+	private final IRWriter ll;
+	private final IRPrinter printer;
+	private final Builder builder;
+	private final boolean memoryLocals;  /* Keep the allocas */
+	private final boolean allChecks;     /* Keep the bounds checks that can't fail */
 	private final Counters counters = new Counters();
+	private final Traversal<Value, Session> traversal = new Traversal<>(this, new Steps());
+
+	/* Of each class, once referred to */
+	private final Map<String, Global> vtables = new HashMap<>();
+
+	/* Of the method being generated: Arguments (bar this), and the allocas of parameters and
+	 * local variables, in order of declaration (as Slot.getIndex() counts them) */
+	private final List<Argument> arguments = new ArrayList<>();
+	private final List<Instruction> parameters = new ArrayList<>();
+	private final List<Instruction> locals = new ArrayList<>();
 
 	private class Counters {
-		private int register;
+		/* Totals over the whole program, for --stats */
+		private int totalRegisters;
+		private int totalLabels;
 
 		/* Labels */
 		private int oob;
@@ -63,12 +126,10 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 		private int clause;
 		private int exit;
 
-		public Counters() {
-			reset();
-		}
-
 		public void reset() {
-			register = 0;
+			totalRegisters += builder.resetRegisters();
+			totalLabels += oob * 2 + _if * 2 + loop * 2 + clause + exit;
+
 			oob = 0;
 			_if = 0;
 			loop = 0;
@@ -76,86 +137,114 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 			exit = 0;
 		}
 
-		public String nextRegister() {
-			return "%_" + register++;
-		}
-
-		public String[] nextOob() {
-			return new String[] { "not_oob" + oob, "oob" + oob++ };
+		/* Labels come numbered, in families (not_oobN and oobN, ifN and elseN ...): These return N */
+		public int nextOob() {
+			return oob++;
 		}
 
-		public String[] nextIf() {
-			return new String[] { "if" + _if, "else" + _if++ };
+		public int nextIf() {
+			return _if++;
 		}
 
-		public String[] nextLoop() {
-			return new String[] { "loop_start" + loop, "loop_body" + loop++ };
+		public int nextLoop() {
+			return loop++;
 		}
 
-		public String nextClause() {
-			return "clause" + clause++;
+		public int nextClause() {
+			return clause++;
 		}
 
-		public String nextExit() {
-			return "exit" + exit++;
+		public int nextExit() {
+			return exit++;
 		}
 	};
 
-	public LLVMVisitor(SymbolTable symbols, BufferedWriter ll) throws Exception {
+	public int getRegisterCount() {
+		return counters.totalRegisters + builder.getRegisters();
+	}
+
+	public int getLabelCount() {
+		return counters.totalLabels + counters.oob * 2 + counters._if * 2 + counters.loop * 2 + counters.clause + counters.exit;
+	}
+
+	public LLVMVisitor(SymbolTable symbols, MethodTables tables, IRWriter ll, boolean memoryLocals, boolean allChecks) throws Exception {
+		if (!symbols.isFrozen())
+			throw new IllegalStateException("Symbol table is not frozen");
+
 		this.symbols = symbols;
+		this.tables = tables;
 		this.ll = ll;
+		this.printer = new IRPrinter(ll);
+		this.builder = new Builder(!ll.isCompact());
+		this.memoryLocals = memoryLocals;
+		this.allChecks = allChecks;
+
+		ll.append("; Helper functions\n" +
+		          "declare i8* @calloc(i32, i32)\n" +
+		          "declare i32 @printf(i8*, ...)\n" +
+		          "declare void @exit(i32)\n\n" +
+
+		          "@_cint = constant [4 x i8] c\"%d\\0a\\00\"\n" +
+		          "@_cOOB = constant [15 x i8] c\"Out of bounds\\0a\\00\"\n" +
+		          "define void @print_int(i32 %i) {\n" +
+		          "\t%_str = bitcast [4 x i8]* @_cint to i8*\n" +
+		          "\tcall i32 (i8*, ...) @printf(i8* %_str, i32 %i)\n" +
+		          "\tret void\n" +
+		          "}\n\n" +
+
+		          "define void @throw_oob() {\n" +
+		          "\t%_str = bitcast [15 x i8]* @_cOOB to i8*\n" +
+		          "\tcall i32 (i8*, ...) @printf(i8* %_str)\n" +
+		          "\tcall void @exit(i32 1)\n" +
+		          "\tret void\n" +
+		          "}\n").newLine();
+	}
 
-		emit("; Helper functions\n" +
-		     "declare i8* @calloc(i32, i32)\n" +
-		     "declare i32 @printf(i8*, ...)\n" +
-		     "declare void @exit(i32)\n\n" +
-
-		     "@_cint = constant [4 x i8] c\"%d\\0a\\00\"\n" +
-		     "@_cOOB = constant [15 x i8] c\"Out of bounds\\0a\\00\"\n" +
-		     "define void @print_int(i32 %i) {\n" +
-		     "\t%_str = bitcast [4 x i8]* @_cint to i8*\n" +
-		     "\tcall i32 (i8*, ...) @printf(i8* %_str, i32 %i)\n" +
-		     "\tret void\n" +
-		     "}\n\n" +
-
-		     "define void @throw_oob() {\n" +
-		     "\t%_str = bitcast [15 x i8]* @_cOOB to i8*\n" +
-		     "\tcall i32 (i8*, ...) @printf(i8* %_str)\n" +
-		     "\tcall void @exit(i32 1)\n" +
-		     "\tret void\n" +
-		     "}\n");
+	private static LlvmType llType(Type type) {
+		return LlvmType.of(type.getLlType());
 	}
 
-	private String llType(String miniJavaType) {
-		switch (miniJavaType) {
-			case "boolean":
-				return "i1";
+	private void beginFunction(LlvmType returnType, String name) {
+		builder.begin(returnType, name);
+
+		arguments.clear();
+		parameters.clear();
+		locals.clear();
+	}
 
-			case "int":
-				return "i32";
+	/* Promote variables, take out the bounds checks that can't fail (which needs them promoted),
+	 * and write the function out */
+	private void endFunction() throws Exception {
+		if (!memoryLocals) {
+			Mem2Reg.run(builder.getFunction());
 
-			case "int[]":
-				return "i32*";
+			if (!allChecks)
+				BoundsChecks.run(builder.getFunction());
 
-			default:
-				return "i8*";
+			builder.renumber();
 		}
+
+		printer.print(builder.getFunction());
 	}
 
-	private String llNull(String miniJavaType) {
-		String llTypeStr = llType(miniJavaType);
+	private Global vtable(ClassSymbol c) {
+		Global vtable = vtables.get(c.getName());
 
-		if (llTypeStr.equals("i1"))
-			return "false";
-		else if (llTypeStr.contains("*"))
-			return "null";
-		else
-			return "0";
-	}
+		if (vtable == null) {
+			List<Constant> methods = new ArrayList<>();
+
+			for (MethodSymbol method: c.getVtable()) {
+				MethodType signature = method.getSignature();
+
+				methods.add(new Constant(LlvmType.I8_PTR, "bitcast (" + signature.getReturnType().getLlType() + '(' + signature.getLlParameters() + ")* @" +
+				                                          method.getOwner().getName() + '.' + method.getName() + " to i8*)"));
+			}
 
-	private void emit(String line) throws Exception {
-		ll.write(line);
-		ll.newLine();
+			vtable = new Global(c.getName() + "_vtable", LlvmType.I8_PTR, methods);
+			vtables.put(c.getName(), vtable);
+		}
+
+		return vtable;
 	}
 
 	private void emit_vtable(String className) throws Exception {
@@ -164,27 +253,7 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 		if (thisClass == null)
 			return;
 
-		emit("@" + className + "_vtable = global [" + thisClass.getMethodsAmount() + " x i8*] [");
-
-		StringBuilder methods = new StringBuilder();
-		for (MethodSymbol method: thisClass.getMethods()) {
-			if (method.isStatic())
-				continue;
-
-			methods.append("\ti8* bitcast (" + llType(method.getType()) + "(i8*");
-
-			for (Symbol parameter: method.getParameters())
-				methods.append(", " + llType(parameter.getType()));
-
-			methods.append(")* @" + method.getOwner().getName() + '.' + method.getName() + " to i8*),\n");
-		}
-
-		/* Delete trailing comma */
-		if (methods.length() >= 2)
-			methods.delete(methods.length() - 2, methods.length());
-
-		emit(methods.toString());
-		emit("]\n");
+		printer.print(vtable(thisClass));
 	}
 
 	/**
@@ -208,18 +277,28 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 	 * f17 -> "}"
 	*/
 	@Override
-	public String visit(MainClass n, Session argu) throws Exception {
+	public Value visit(MainClass n, Session argu) throws Exception {
+		CompilerEvents.MethodEvent event = new CompilerEvents.MethodEvent();
+		event.begin();
+		long start = ll.size();
+
 		// Names of class and main method (only one method in the main class, so we can include it here)
-		argu = new Session(n.f1.accept(this, argu), "main");
+		argu = new Session(n.f1.f0.toString(), "main");
 
-		emit("; Program body\n" +
-		     "define i32 @main() {");
+		MethodSymbol method = symbols.getClass(argu.getClassName()).getMethod("main");
+		argu.setSlots(tables.getSlots(method));
+		argu.setTypes(tables.getTypes(method));
+
+		ll.append("; Program body").newLine();
+		beginFunction(LlvmType.I32, "main");
 
 		n.f14.accept(this, argu); // Main Method Local Variables
 		n.f15.accept(this, argu); // Main Method Body
 
-		emit("\tret i32 0\n" +
-		     "}\n");
+		builder.ret(ZERO);
+		endFunction();
+
+		CompilerEvents.commit(event, "codegen", argu.getClassName(), "main", n.f15, ll.size() - start);
 
 		return null;
 	}
@@ -233,15 +312,21 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 	 * f5 -> "}"
 	*/
 	@Override
-	public String visit(ClassDeclaration n, Session argu) throws Exception {
+	public Value visit(ClassDeclaration n, Session argu) throws Exception {
+		CompilerEvents.ClassEvent event = new CompilerEvents.ClassEvent();
+		event.begin();
+		long start = ll.size();
+
 		// Initialize argu with name of visited class for now
-		argu = new Session(n.f1.accept(this, argu));
+		argu = new Session(n.f1.f0.toString());
 
-		emit("; class " + argu.getClassName());
+		ll.append("; class ").append(argu.getClassName()).newLine();
 		emit_vtable(argu.getClassName());
 
 		n.f4.accept(this, argu); // Class Methods
 
+		CompilerEvents.commit(event, "codegen", argu.getClassName(), n.f4, ll.size() - start);
+
 		return null;
 	}
 
@@ -256,15 +341,21 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 	 * f7 -> "}"
 	*/
 	@Override
-	public String visit(ClassExtendsDeclaration n, Session argu) throws Exception {
+	public Value visit(ClassExtendsDeclaration n, Session argu) throws Exception {
+		CompilerEvents.ClassEvent event = new CompilerEvents.ClassEvent();
+		event.begin();
+		long start = ll.size();
+
 		// Initialize argu with name of visited class for now
-		argu = new Session(n.f1.accept(this, argu));
+		argu = new Session(n.f1.f0.toString());
 
-		emit("; class " + argu.getClassName() + " extends " + n.f3.accept(this, argu));
+		ll.append("; class ").append(argu.getClassName()).append(" extends ").append(n.f3.f0.toString()).newLine();
 		emit_vtable(argu.getClassName());
 
 		n.f6.accept(this, argu); // Class Methods
 
+		CompilerEvents.commit(event, "codegen", argu.getClassName(), n.f6, ll.size() - start);
+
 		return null;
 	}
 
@@ -274,16 +365,17 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 	 * f2 -> ";"
 	*/
 	@Override
-	public String visit(VarDeclaration n, Session argu) throws Exception {
-		String varType = n.f0.accept(this, argu);
-		String varName = n.f1.accept(this, argu);
+	public Value visit(VarDeclaration n, Session argu) throws Exception {
+		String varName = n.f1.f0.toString();
+		Type varType = symbols.getClass(argu.getClassName()).getMethod(argu.getMethodName()).getField(varName).getType();
 
-		String varLlType = llType(varType);
+		LlvmType varLlType = llType(varType);
 
-		emit("\t%" + varName + " = alloca " + varLlType);
+		Instruction variable = builder.alloca(varLlType, varName);
+		locals.add(variable);
 
 		// Zero-initialized
-		emit("\tstore " + varLlType + ' ' + llNull(varType) + ", " + varLlType + "* %" + varName);
+		builder.store(new Constant(varLlType, varType.getLlNull()), variable);
 
 		return null;
 	}
@@ -304,46 +396,52 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 	 * f12 -> "}"
 	*/
 	@Override
-	public String visit(MethodDeclaration n, Session argu) throws Exception {
-		/* Declared method return type */
-		String methodType = n.f1.accept(this, argu);
+	public Value visit(MethodDeclaration n, Session argu) throws Exception {
+		CompilerEvents.MethodEvent event = new CompilerEvents.MethodEvent();
+		event.begin();
+		long start = ll.size();
 
 		/* add function name to array passed from Class Declaration */
-		argu.setMethod(n.f2.accept(this, argu));
+		argu.setMethod(n.f2.f0.toString());
 
-		StringBuilder parameters = new StringBuilder("i8* %this");
-		Collection<Symbol> parameterList = symbols.getClass(argu.getClassName()).getMethod(argu.getMethodName()).getParameters();
+		MethodSymbol method = symbols.getClass(argu.getClassName()).getMethod(argu.getMethodName());
+		argu.setSlots(tables.getSlots(method));
+		argu.setTypes(tables.getTypes(method));
 
-		for (Symbol parameter: parameterList)
-			parameters.append(", " + llType(parameter.getType()) + " %_" + parameter.getName());
+		/* Declared method return type */
+		beginFunction(llType(method.getType()), argu.getClassName() + '.' + argu.getMethodName());
 
-		emit("define " + llType(methodType) + " @" + argu.getClassName() + '.' + argu.getMethodName() + '(' + parameters + ") {");
+		argu.setThis(builder.argument(LlvmType.I8_PTR, "this"));
+		for (Symbol parameter: method.getParameters())
+			arguments.add(builder.argument(llType(parameter.getType()), "_" + parameter.getName()));
 
 		// Allocate space for method parameters
 		if (n.f4.present()) {
-			emit("\t; Parameters (pass by value)");
+			builder.comment("Parameters (pass by value)");
 			n.f4.accept(this, argu);
-			emit(""); // Cosmetic separation
+			builder.gap(); // Cosmetic separation
 		}
 
 		// Allocate space for local method variables
 		if (n.f7.present()) {
-			emit("\t; Local variables (zero-initialized)");
+			builder.comment("Local variables (zero-initialized)");
 			n.f7.accept(this, argu);
-			emit(""); // Cosmetic separation
+			builder.gap(); // Cosmetic separation
 		}
 
 		// Method body
 		n.f8.accept(this, argu);
 
 		/* Return type and value of final expression */
-		String retExpr = n.f10.accept(this, argu);
+		Value retExpr = n.f10.accept(this, argu);
 
-		emit("\tret " + retExpr + "\n" +
-		     "}\n");
+		builder.ret(retExpr);
+		endFunction();
 
 		counters.reset();
 
+		CompilerEvents.commit(event, "codegen", argu.getClassName(), argu.getMethodName(), n.f8, ll.size() - start);
+
 		return null;
 	}
 
@@ -352,680 +450,810 @@ public class LLVMVisitor extends GJDepthFirst<String, Session> {
 	 * f1 -> Identifier()
 	*/
 	@Override
-	public String visit(FormalParameter n, Session argu) throws Exception {
-		String paramType = n.f0.accept(this, argu);
-		String paramName = n.f1.accept(this, argu);
+	public Value visit(FormalParameter n, Session argu) throws Exception {
+		String paramName = n.f1.f0.toString();
 
-		String paramLlType = llType(paramType);
+		LlvmType paramLlType = llType(symbols.getClass(argu.getClassName()).getMethod(argu.getMethodName()).getParameter(paramName).getType());
 
 		// Pass by value: Copy arguments to local variables
-		emit("\t%" + paramName + " = alloca " + paramLlType);
- 		emit("\tstore " + paramLlType + " %_" + paramName + ", " + paramLlType + "* %" + paramName);
+		Instruction variable = builder.alloca(paramLlType, paramName);
+		builder.store(arguments.get(parameters.size()), variable);
+		parameters.add(variable);
 
 		return null;
 	}
 
 	/**
-	 * f0 -> "int"
-	 * f1 -> "["
-	 * f2 -> "]"
-	*/
-	@Override
-	public String visit(ArrayType n, Session argu) throws Exception {
-		return n.f0.toString() + n.f1.toString() + n.f2.toString();
-	}
-
-	/**
-	 * f0 -> "boolean"
+	 * f0 -> <INTEGER_LITERAL>
 	*/
 	@Override
-	public String visit(BooleanType n, Session argu) throws Exception {
-		return n.f0.toString();
+	public Value visit(IntegerLiteral n, Session argu) throws Exception {
+		return new Constant(LlvmType.I32, n.f0.toString());
 	}
 
 	/**
-	 * f0 -> "int"
+	 * f0 -> "true"
 	*/
 	@Override
-	public String visit(IntegerType n, Session argu) throws Exception {
-		return n.f0.toString();
+	public Value visit(TrueLiteral n, Session argu) throws Exception {
+		return Constant.TRUE;
 	}
 
 	/**
-	 * f0 -> <IDENTIFIER>
+	 * f0 -> "false"
 	*/
 	@Override
-	public String visit(Identifier n, Session argu) throws Exception {
-		return n.f0.toString();
+	public Value visit(FalseLiteral n, Session argu) throws Exception {
+		return Constant.FALSE;
 	}
 
-	/* Statement Family */
-
 	/**
-	 * f0 -> Identifier()
-	 * f1 -> "="
-	 * f2 -> Expression()
-	 * f3 -> ";"
+	 * f0 -> "this"
 	*/
 	@Override
-	public String visit(AssignmentStatement n, Session argu) throws Exception {
-		String idName = n.f0.accept(this, argu);
-		String exprRegister = n.f2.accept(this, argu);
-
-		ClassSymbol classSymbol = symbols.getClass(argu.getClassName());
-		MethodSymbol method = classSymbol.getMethod(argu.getMethodName());
-		Symbol variable;
-
-
-		if ((variable = method.getParameter(idName)) != null ||
-		    (variable = method.getField(idName)) != null) {
-			// store value to alloc'd pointer
-			emit("\tstore " + exprRegister + ", " + llType(variable.getType()) + "* %" + idName);
-		} else { // We have a class member on our hands: Get field pointer, THEN store.
-			emit("\t; " + argu.getClassName() + '.' + idName + " = " + exprRegister);
-
-			variable = classSymbol.getField(idName);
-
-			String fieldAddr = counters.nextRegister();
-			emit('\t' + fieldAddr + " = getelementptr i8, i8* %this, i32 " + (8 + variable.getOffset()));
-
-			String fieldPointer = counters.nextRegister();
-			emit('\t' + fieldPointer + " = bitcast i8* " + fieldAddr + " to " + llType(variable.getType()) + "*");
-
-			emit("\tstore " + exprRegister + ", " + llType(variable.getType()) + "* " + fieldPointer + '\n');
-		}
-
-		return null;
+	public Value visit(ThisExpression n, Session argu) throws Exception {
+		return argu.getThis();
 	}
 
 	/**
-	 * f0 -> Identifier()
-	 * f1 -> "["
-	 * f2 -> Expression()
-	 * f3 -> "]"
-	 * f4 -> "="
-	 * f5 -> Expression()
-	 * f6 -> ";"
-	*/
-	@Override
-	public String visit(ArrayAssignmentStatement n, Session argu) throws Exception {
-		String idName = n.f0.accept(this, argu);
-		String indexRegister = n.f2.accept(this, argu);
-
-		// Part 1: Acquire pointer to the array
-
-		ClassSymbol classSymbol = symbols.getClass(argu.getClassName());
-		MethodSymbol method = classSymbol.getMethod(argu.getMethodName());
-		Symbol array;
-
-		String arrayRegister;
-
-		emit("\t; " + idName + '[' + indexRegister + "] = ...");
-		if ((array = method.getParameter(idName)) != null ||
-		    (array = method.getField(idName)) != null) {
-			// load address of first element from alloc'd pointer
-			arrayRegister = counters.nextRegister();
-			emit('\t' + arrayRegister + " = load i32*, i32** %" + idName);
-		} else { // We have a class member on our hands: Get field pointer, THEN load array pointer.
-			array = classSymbol.getField(idName);
-
-			String fieldAddr = counters.nextRegister();
-			emit('\t' + fieldAddr + " = getelementptr i8, i8* %this, i32 " + (8 + array.getOffset()));
-
-			String arrayPointer = counters.nextRegister();
-			emit('\t' + arrayPointer + " = bitcast i8* " + fieldAddr + " to i32**");
-
-			arrayRegister = counters.nextRegister();
-			emit('\t' + arrayRegister + " = load i32*, i32** " + arrayPointer);
-		}
-
-		// Part 2: Check index compared to array length, if bad throw_oob()
-
-		String arrayLength = counters.nextRegister();
-		// Convention: First "member" of array is actually its length, as an int
-		emit('\t' + arrayLength + " = load i32, i32* " + arrayRegister);
-
-		String oobCheck = counters.nextRegister();
-		emit('\t' + oobCheck + " = icmp ult " + indexRegister + ", " + arrayLength);
-
-		String[] oobLabel = counters.nextOob();
-		emit('\t' + "br i1 " + oobCheck + ", label %" + oobLabel[0] + ", label %" + oobLabel[1]);
-
-		String exitLabel = counters.nextExit();
-
-		// Path 1: Correct indexing -> store
-		emit(oobLabel[0] + ':');
-
-		// Because, as mentioned, the 0th element is the array length, and MiniJava arrays properly start at 0
-		String actualIndex = counters.nextRegister();
-		emit('\t' + actualIndex + " = add " + indexRegister + ", 1");
-
-		String elementPointer = counters.nextRegister();
-		emit('\t' + elementPointer + " = getelementptr i32, i32* " + arrayRegister + ", i32 " + actualIndex);
-
-		String exprRegister = n.f5.accept(this, argu);
-		emit("\tstore " + exprRegister + ", i32* " + elementPointer);
-		emit("\tbr label %" + exitLabel);
-
-		// Path 2: Ya dun goofed
-		emit(oobLabel[1] + ':');
-		emit("\tcall void @throw_oob()");
-		emit("\tunreachable\n");
-
-		emit(exitLabel + ':');
-
-		return null;
-	}
-
-	/**
-	 * f0 -> "if"
-	 * f1 -> "("
-	 * f2 -> Expression()
+	 * f0 -> "new"
+	 * f1 -> Identifier()
+	 * f2 -> "("
 	 * f3 -> ")"
-	 * f4 -> Statement()
-	 * f5 -> "else"
-	 * f6 -> Statement()
 	*/
 	@Override
-	public String visit(IfStatement n, Session argu) throws Exception {
-		String exprRegister = n.f2.accept(this, argu);
+	public Value visit(AllocationExpression n, Session argu) throws Exception {
+		ClassSymbol newClass = symbols.getClass(n.f1.f0.toString());
 
-		String[] ifLabel = counters.nextIf();
-		String exitLabel = counters.nextExit();
-		emit("\tbr " + exprRegister + ", label %" + ifLabel[0] + ", label %" + ifLabel[1]);
+		// Part 1: Allocate space for class (zero initialized by calloc)
+		Instruction objRegister = builder.call(LlvmType.I8_PTR, CALLOC, ONE, Constant.i32(8 + newClass.getSize()));
 
-		// if
-		emit(ifLabel[0] + ':');
-		n.f4.accept(this, argu);
-		emit("\tbr label %" + exitLabel);
+		// Part 2: Store V-Table address as first field
+		Instruction objAddr = builder.bitcast(objRegister, I8_PTR_PTR_PTR);
 
-		// else
-		emit(ifLabel[1] + ':');
-		n.f6.accept(this, argu);
-		emit("\tbr label %" + exitLabel + '\n');
+		Instruction vTableAddr = builder.getelementptr(I8_PTR_PTR, vtable(newClass), ZERO, ZERO);
 
-		emit(exitLabel + ':');
+		// Store vtable address at start of object area (the fabled 8 bytes we keep adding to those offsets)
+		builder.store(vTableAddr, objAddr);
+		builder.gap();
 
-		return null;
+		return objRegister;
 	}
 
-	/**
-	 * f0 -> "while"
-	 * f1 -> "("
-	 * f2 -> Expression()
-	 * f3 -> ")"
-	 * f4 -> Statement()
-	*/
-	@Override
-	public String visit(WhileStatement n, Session argu) throws Exception {
-		String whileLabel[] = counters.nextLoop();
-		String exitLabel = counters.nextExit();
-
-		// Previous basic block must end with branch
-		emit("\tbr label %" + whileLabel[0] + '\n');
+	/* Statements and Expressions nest without bound: Their code is generated off Traversal's stack */
 
-		// Loop condition
-		emit(whileLabel[0] + ':');
-		String exprRegister = n.f2.accept(this, argu);
-		emit("\tbr " + exprRegister + ", label %" + whileLabel[1] + ", label %" + exitLabel);
-
-		// Loop body
-		emit(whileLabel[1] + ':');
-		n.f4.accept(this, argu);
-		emit("\tbr label %" + whileLabel[0] + '\n');
-
-		emit(exitLabel + ':');
-
-		return null;
+	@Override
+	public Value visit(Statement n, Session argu) throws Exception {
+		return traversal.visit(n, argu);
 	}
 
-	/**
-	 * f0 -> "System.out.println"
-	 * f1 -> "("
-	 * f2 -> Expression()
-	 * f3 -> ")"
-	 * f4 -> ";"
-	*/
 	@Override
-	public String visit(PrintStatement n, Session argu) throws Exception {
-		String expRegister = n.f2.accept(this, argu);
-
-		emit("\tcall void (i32) @print_int(" + expRegister + ')');
-
-		return null;
+	public Value visit(Expression n, Session argu) throws Exception {
+		return traversal.visit(n, argu);
 	}
 
-	/* Expression Family */
+	/* Code for each Statement and Expression, a child at a time:
+	 * f.result is the value of the child visited last */
+	private class Steps extends GJVoidDepthFirst<Traversal.Frame<Value, Session>> {
+		/**
+		 * f0 -> Block()
+		 *       | AssignmentStatement()
+		 *       | ArrayAssignmentStatement()
+		 *       | IfStatement()
+		 *       | WhileStatement()
+		 *       | PrintStatement()
+		*/
+		@Override
+		public void visit(Statement n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f0.choice);
+			else
+				f.done(f.result);
+		}
 
-	/**
-	 * f0 -> Clause()
-	 * f1 -> "&&"
-	 * f2 -> Clause()
-	*/
-	@Override
-	public String visit(AndExpression n, Session argu) throws Exception {
-		String[] exprRegister = new String[2];
-		String[] clauseLabel = new String[] { counters.nextClause(), counters.nextClause() };
-		String exitLabel = counters.nextExit();
-		String helperLabel = counters.nextExit().replaceFirst("exit", "temp");
+		/* Statement Family */
+
+		/**
+		 * f0 -> "{"
+		 * f1 -> ( Statement() )*
+		 * f2 -> "}"
+		*/
+		@Override
+		public void visit(Block n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state < n.f1.size())
+				f.visit(n.f1.elementAt(f.state++));
+			else
+				f.done(null);
+		}
 
-		exprRegister[0] = n.f0.accept(this, argu);
+		/* A field of this, as a pointer of its type */
+		private Instruction fieldPointer(Slot field, Session argu) throws Exception {
+			Instruction fieldAddr = builder.getelementptr(LlvmType.I8_PTR, argu.getThis(), Constant.i32(8 + field.getIndex()));
 
-		// Previous basic block must end with branch
-		emit("\tbr label %" + clauseLabel[0]);
+			return builder.bitcast(fieldAddr, llType(field.getType()).pointer());
+		}
 
-		emit(clauseLabel[0] + ':');
-		emit("\tbr " + exprRegister[0] + ", label %" + clauseLabel[1] + ", label %" + exitLabel);
+		/* The alloca of a parameter or local variable of the method */
+		private Instruction variable(Slot variable) {
+			return (variable.getKind() == Slot.Kind.PARAMETER) ? parameters.get(variable.getIndex()) : locals.get(variable.getIndex());
+		}
 
-		emit(clauseLabel[1] + ':');
-		exprRegister[1] = n.f2.accept(this, argu);
-		emit("\tbr label %" + helperLabel + '\n');
+		/**
+		 * f0 -> Identifier()
+		 * f1 -> "="
+		 * f2 -> Expression()
+		 * f3 -> ";"
+		*/
+		@Override
+		public void visit(AssignmentStatement n, Traversal.Frame<Value, Session> f) throws Exception {
+			Session argu = f.argu;
+
+			if (f.state++ == 0) {
+				f.visit(n.f2);
+				return;
+			}
+
+			Slot variable = argu.getSlot(n.f0);
+			Value exprRegister = f.result;
+
+			if (!variable.isField()) {
+				// store value to alloc'd pointer
+				builder.store(exprRegister, variable(variable));
+			} else { // We have a class member on our hands: Get field pointer, THEN store.
+				builder.comment(argu.getClassName(), ".", variable.getName(), " = ", exprRegister);
+
+				builder.store(exprRegister, fieldPointer(variable, argu));
+				builder.gap();
+			}
+
+			f.done(null);
+		}
 
-		// This fixes error with AND nesting.
-		// phi needs to check BBs that directly jumped to it
-		emit(helperLabel + ':');
-		emit("\tbr label %" + exitLabel + '\n');
+		/**
+		 * f0 -> Identifier()
+		 * f1 -> "["
+		 * f2 -> Expression()
+		 * f3 -> "]"
+		 * f4 -> "="
+		 * f5 -> Expression()
+		 * f6 -> ";"
+		*/
+		@Override
+		public void visit(ArrayAssignmentStatement n, Traversal.Frame<Value, Session> f) throws Exception {
+			Session argu = f.argu;
 
-		emit(exitLabel + ':');
-		String resultRegister = counters.nextRegister();
- 		emit('\t' + resultRegister + " = phi i1 [ false, %" + clauseLabel[0] + " ], [ " + exprRegister[1].split(" ")[1] + ", %" + helperLabel + " ]");
+			switch (f.state++) {
+				case 0:
+					f.visit(n.f2);
+					break;
 
-		return "i1 " + resultRegister;
-	}
+				case 1: {
+					Slot array = argu.getSlot(n.f0);
+					Value indexRegister = f.result;
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "<"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(CompareExpression n, Session argu) throws Exception {
-		String[] exprRegister = new String[2];
+					// Part 1: Acquire pointer to the array
 
-		exprRegister[0] = n.f0.accept(this, argu);
-		exprRegister[1] = n.f2.accept(this, argu).split(" ")[1]; // only need reg name
+					builder.comment(array.getName(), "[", indexRegister, "] = ...");
 
-		String cmpResult = counters.nextRegister();
-		emit('\t' + cmpResult + " = icmp slt " + exprRegister[0] + ", " + exprRegister[1]);
+					// load address of first element from alloc'd pointer (or, for a class member, from the field)
+					Instruction arrayRegister = builder.load(!array.isField() ? variable(array) : fieldPointer(array, argu));
 
-		return "i1 " + cmpResult;
-	}
+					// Part 2: Check index compared to array length, if bad throw_oob()
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "+"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(PlusExpression n, Session argu) throws Exception {
-		String[] exprRegister = new String[2];
+					// Convention: First "member" of array is actually its length, as an int
+					Instruction arrayLength = builder.load(arrayRegister);
 
-		exprRegister[0] = n.f0.accept(this, argu);
-		exprRegister[1] = n.f2.accept(this, argu).split(" ")[1]; // only need reg name
+					Instruction oobCheck = builder.binary(Opcode.ICMP_ULT, indexRegister, arrayLength);
 
-		String addResult = counters.nextRegister();
-		emit('\t' + addResult + " = add " + exprRegister[0] + ", " + exprRegister[1]);
+					int oob = counters.nextOob();
+					BasicBlock inBounds = builder.block("not_oob", oob);
+					BasicBlock outOfBounds = builder.block("oob", oob);
+					builder.br(oobCheck, inBounds, outOfBounds);
 
-		return "i32 " + addResult;
-	}
+					BasicBlock exitLabel = builder.block("exit", counters.nextExit());
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "-"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(MinusExpression n, Session argu) throws Exception {
-		String[] exprRegister = new String[2];
+					// Path 1: Correct indexing -> store
+					builder.place(inBounds);
 
-		exprRegister[0] = n.f0.accept(this, argu);
-		exprRegister[1] = n.f2.accept(this, argu).split(" ")[1]; // only need reg name
+					// Because, as mentioned, the 0th element is the array length, and MiniJava arrays properly start at 0
+					Instruction actualIndex = builder.binary(Opcode.ADD, indexRegister, ONE);
 
-		String subResult = counters.nextRegister();
-		emit('\t' + subResult + " = sub " + exprRegister[0] + ", " + exprRegister[1]);
+					Instruction elementPointer = builder.getelementptr(LlvmType.I32_PTR, arrayRegister, actualIndex);
 
-		return "i32 " + subResult;
-	}
+					f.locals[1] = elementPointer;
+					f.locals[2] = outOfBounds;
+					f.locals[3] = exitLabel;
+					f.visit(n.f5);
+					break;
+				}
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "*"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(TimesExpression n, Session argu) throws Exception {
-		String[] exprRegister = new String[2];
+				default: {
+					Value elementPointer = (Value) f.locals[1];
+					BasicBlock outOfBounds = (BasicBlock) f.locals[2];
+					BasicBlock exitLabel = (BasicBlock) f.locals[3];
 
-		exprRegister[0] = n.f0.accept(this, argu);
-		exprRegister[1] = n.f2.accept(this, argu).split(" ")[1]; // only need reg name
+					Value exprRegister = f.result;
+					builder.store(exprRegister, elementPointer);
+					builder.br(exitLabel);
 
-		String mulResult = counters.nextRegister();
-		emit('\t' + mulResult + " = mul " + exprRegister[0] + ", " + exprRegister[1]);
+					// Path 2: Ya dun goofed
+					outOfBounds(outOfBounds);
 
-		return "i32 " + mulResult;
-	}
+					builder.place(exitLabel);
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "["
-	 * f2 -> PrimaryExpression()
-	 * f3 -> "]"
-	*/
-	@Override
-	public String visit(ArrayLookup n, Session argu) throws Exception {
-		String arrayRegister = n.f0.accept(this, argu);
-		String indexRegister = n.f2.accept(this, argu);
+					f.done(null);
+				}
+			}
+		}
 
-		// Check index compared to array length, if bad throw_oob()
+		/* Where a failed bounds check goes */
+		private void outOfBounds(BasicBlock block) {
+			builder.place(block);
+			builder.call(LlvmType.VOID, THROW_OOB);
+			builder.unreachable();
+			builder.gap();
+		}
 
-		String arrayLength = counters.nextRegister();
-		// Convention: First "member" of array is actually its length, as an int
-		emit('\t' + arrayLength + " = load i32, " + arrayRegister);
+		/**
+		 * f0 -> "if"
+		 * f1 -> "("
+		 * f2 -> Expression()
+		 * f3 -> ")"
+		 * f4 -> Statement()
+		 * f5 -> "else"
+		 * f6 -> Statement()
+		*/
+		@Override
+		public void visit(IfStatement n, Traversal.Frame<Value, Session> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(n.f2);
+					break;
+
+				case 1: {
+					Value exprRegister = f.result;
+
+					int _if = counters.nextIf();
+					BasicBlock ifLabel = builder.block("if", _if);
+					BasicBlock elseLabel = builder.block("else", _if);
+					BasicBlock exitLabel = builder.block("exit", counters.nextExit());
+					builder.br(exprRegister, ifLabel, elseLabel);
+
+					// if
+					builder.place(ifLabel);
+
+					f.locals[0] = elseLabel;
+					f.locals[1] = exitLabel;
+					f.visit(n.f4);
+					break;
+				}
+
+				case 2: {
+					BasicBlock elseLabel = (BasicBlock) f.locals[0];
+					BasicBlock exitLabel = (BasicBlock) f.locals[1];
+
+					builder.br(exitLabel);
+
+					// else
+					builder.place(elseLabel);
+					f.visit(n.f6);
+					break;
+				}
+
+				default: {
+					BasicBlock exitLabel = (BasicBlock) f.locals[1];
+
+					builder.br(exitLabel);
+					builder.gap();
+
+					builder.place(exitLabel);
+
+					f.done(null);
+				}
+			}
+		}
 
-		String oobCheck = counters.nextRegister();
-		emit('\t' + oobCheck + " = icmp ult " + indexRegister + ", " + arrayLength);
+		/**
+		 * f0 -> "while"
+		 * f1 -> "("
+		 * f2 -> Expression()
+		 * f3 -> ")"
+		 * f4 -> Statement()
+		*/
+		@Override
+		public void visit(WhileStatement n, Traversal.Frame<Value, Session> f) throws Exception {
+			switch (f.state++) {
+				case 0: {
+					int loop = counters.nextLoop();
+					BasicBlock startLabel = builder.block("loop_start", loop);
+					BasicBlock bodyLabel = builder.block("loop_body", loop);
+					BasicBlock exitLabel = builder.block("exit", counters.nextExit());
+
+					// Previous basic block must end with branch
+					builder.br(startLabel);
+					builder.gap();
+
+					// Loop condition
+					builder.place(startLabel);
+
+					f.locals[0] = startLabel;
+					f.locals[1] = bodyLabel;
+					f.locals[2] = exitLabel;
+					f.visit(n.f2);
+					break;
+				}
+
+				case 1: {
+					BasicBlock bodyLabel = (BasicBlock) f.locals[1];
+					BasicBlock exitLabel = (BasicBlock) f.locals[2];
+
+					Value exprRegister = f.result;
+					builder.br(exprRegister, bodyLabel, exitLabel);
+
+					// Loop body
+					builder.place(bodyLabel);
+					f.visit(n.f4);
+					break;
+				}
+
+				default: {
+					BasicBlock startLabel = (BasicBlock) f.locals[0];
+					BasicBlock exitLabel = (BasicBlock) f.locals[2];
+
+					builder.br(startLabel);
+					builder.gap();
+
+					builder.place(exitLabel);
+
+					f.done(null);
+				}
+			}
+		}
 
-		String[] oobLabel = counters.nextOob();
-		emit('\t' + "br i1 " + oobCheck + ", label %" + oobLabel[0] + ", label %" + oobLabel[1]);
+		/**
+		 * f0 -> "System.out.println"
+		 * f1 -> "("
+		 * f2 -> Expression()
+		 * f3 -> ")"
+		 * f4 -> ";"
+		*/
+		@Override
+		public void visit(PrintStatement n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f2);
+				return;
+			}
+
+			Value expRegister = f.result;
+
+			builder.call(PRINT_INT.getType().getPointee(), LlvmType.VOID, PRINT_INT, expRegister);
+
+			f.done(null);
+		}
 
-		String exitLabel = counters.nextExit();
+		/* Expression Family */
+
+		/**
+		 * f0 -> AndExpression()
+		 *       | CompareExpression()
+		 *       | PlusExpression()
+		 *       | MinusExpression()
+		 *       | TimesExpression()
+		 *       | ArrayLookup()
+		 *       | ArrayLength()
+		 *       | MessageSend()
+		 *       | Clause()
+		*/
+		@Override
+		public void visit(Expression n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f0.choice);
+			else
+				f.done(f.result);
+		}
 
-		// Path 1: Correct indexing -> load
-		emit(oobLabel[0] + ':');
+		/**
+		 * f0 -> Clause()
+		 * f1 -> "&&"
+		 * f2 -> Clause()
+		*/
+		@Override
+		public void visit(AndExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			switch (f.state++) {
+				case 0: {
+					/* The helper label takes its number from the exit labels */
+					f.locals[0] = builder.block("clause", counters.nextClause());
+					f.locals[1] = builder.block("clause", counters.nextClause());
+					f.locals[2] = builder.block("exit", counters.nextExit());
+					f.locals[3] = builder.block("temp", counters.nextExit());
+					f.visit(n.f0);
+					break;
+				}
+
+				case 1: {
+					BasicBlock firstClause = (BasicBlock) f.locals[0];
+					BasicBlock secondClause = (BasicBlock) f.locals[1];
+					BasicBlock exitLabel = (BasicBlock) f.locals[2];
+
+					Value exprRegister = f.result;
+
+					// Previous basic block must end with branch
+					builder.br(firstClause);
+
+					builder.place(firstClause);
+					builder.br(exprRegister, secondClause, exitLabel);
+
+					builder.place(secondClause);
+					f.visit(n.f2);
+					break;
+				}
+
+				default: {
+					BasicBlock firstClause = (BasicBlock) f.locals[0];
+					BasicBlock exitLabel = (BasicBlock) f.locals[2];
+					BasicBlock helperLabel = (BasicBlock) f.locals[3];
+
+					Value exprRegister = f.result;
+					builder.br(helperLabel);
+					builder.gap();
+
+					// This fixes error with AND nesting.
+					// phi needs to check BBs that directly jumped to it
+					builder.place(helperLabel);
+					builder.br(exitLabel);
+					builder.gap();
+
+					builder.place(exitLabel);
+					Instruction resultRegister = builder.phi(LlvmType.I1, new Value[] { Constant.FALSE, exprRegister }, new BasicBlock[] { firstClause, helperLabel });
+
+					f.done(resultRegister);
+				}
+			}
+		}
 
-		// Because, as mentioned, the 0th element is the array length, and MiniJava arrays properly start at 0
-		String actualIndex = counters.nextRegister();
-		emit('\t' + actualIndex + " = add " + indexRegister + ", 1");
+		/* Both operands, then "resultRegister = <instruction> <left>, <right>" */
+		private void binary(Node left, Node right, Opcode instruction, Traversal.Frame<Value, Session> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(left);
+					break;
+
+				case 1:
+					f.locals[0] = f.result;
+					f.visit(right);
+					break;
+
+				default:
+					f.done(builder.binary(instruction, (Value) f.locals[0], f.result));
+			}
+		}
 
-		String elementPointer = counters.nextRegister();
-		emit('\t' + elementPointer + " = getelementptr i32, " + arrayRegister + ", i32 " + actualIndex);
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "<"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(CompareExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			binary(n.f0, n.f2, Opcode.ICMP_SLT, f);
+		}
 
-		String elementValue = counters.nextRegister();
-		emit('\t' + elementValue + " = load i32, i32* " + elementPointer);
-		emit("\tbr label %" + exitLabel);
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "+"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(PlusExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			binary(n.f0, n.f2, Opcode.ADD, f);
+		}
 
-		// Path 2: Ya dun goofed
-		emit(oobLabel[1] + ':');
-		emit("\tcall void @throw_oob()");
-		emit("\tunreachable\n");
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "-"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(MinusExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			binary(n.f0, n.f2, Opcode.SUB, f);
+		}
 
-		emit(exitLabel + ':');
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "*"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(TimesExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			binary(n.f0, n.f2, Opcode.MUL, f);
+		}
 
-		return "i32 " + elementValue;
-	}
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "["
+		 * f2 -> PrimaryExpression()
+		 * f3 -> "]"
+		*/
+		@Override
+		public void visit(ArrayLookup n, Traversal.Frame<Value, Session> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(n.f0);
+					return;
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "."
-	 * f2 -> "length"
-	*/
-	@Override
-	public String visit(ArrayLength n, Session argu) throws Exception {
-		String arrayRegister = n.f0.accept(this, argu);
+				case 1:
+					f.locals[0] = f.result;
+					f.visit(n.f2);
+					return;
+			}
 
-		String arrayLength = counters.nextRegister();
-		emit('\t' + arrayLength + " = load i32, " + arrayRegister);
+			Value arrayRegister = (Value) f.locals[0];
+			Value indexRegister = f.result;
 
-		return "i32 " + arrayLength;
-	}
+			// Check index compared to array length, if bad throw_oob()
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "."
-	 * f2 -> Identifier()
-	 * f3 -> "("
-	 * f4 -> ( ExpressionList() )?
-	 * f5 -> ")"
-	*/
-	@Override
-	public String visit(MessageSend n, Session argu) throws Exception {
-		String objRegister = n.f0.accept(this, argu);
+			// Convention: First "member" of array is actually its length, as an int
+			Instruction arrayLength = builder.load(arrayRegister);
 
-		ClassSymbol callClass = symbols.getClass(argu.getObjectType());
-		MethodSymbol callMethod = callClass.getMethod(n.f2.accept(this, argu));
-		int methodIndex = callMethod.getOffset() / 8;
+			Instruction oobCheck = builder.binary(Opcode.ICMP_ULT, indexRegister, arrayLength);
 
-		// Part 1: Acquire method offset
+			int oob = counters.nextOob();
+			BasicBlock inBounds = builder.block("not_oob", oob);
+			BasicBlock outOfBounds = builder.block("oob", oob);
+			builder.br(oobCheck, inBounds, outOfBounds);
 
-		emit("\t; " + callClass.getName() + "." + callMethod.getName() + "() : " + methodIndex);
+			BasicBlock exitLabel = builder.block("exit", counters.nextExit());
 
-		// Vtable is pointed to by the first 8 bytes of an object
-		String vTableAddr = counters.nextRegister();
-		emit('\t' + vTableAddr + " = bitcast " + objRegister + " to i8***");
+			// Path 1: Correct indexing -> load
+			builder.place(inBounds);
 
-		String vTablePointer = counters.nextRegister();
-		emit('\t' + vTablePointer + " = load i8**, i8*** " + vTableAddr);
+			// Because, as mentioned, the 0th element is the array length, and MiniJava arrays properly start at 0
+			Instruction actualIndex = builder.binary(Opcode.ADD, indexRegister, ONE);
 
-		// This is the pointer to the method pointer, in the vtable array (bruh)
-		String methodElementPointer = counters.nextRegister();
-		emit('\t' + methodElementPointer + " = getelementptr i8*, i8** " + vTablePointer + ", i32 " + methodIndex);
+			Instruction elementPointer = builder.getelementptr(LlvmType.I32_PTR, arrayRegister, actualIndex);
 
-		String methodAddr = counters.nextRegister();
-		emit('\t' + methodAddr + " = load i8*, i8** " + methodElementPointer);
+			Instruction elementValue = builder.load(elementPointer);
+			builder.br(exitLabel);
 
-		StringBuilder parameters = new StringBuilder("i8*");
-		for (Symbol parameter: callMethod.getParameters())
-			parameters.append(", " + llType(parameter.getType()));
+			// Path 2: Ya dun goofed
+			outOfBounds(outOfBounds);
 
-		// It took a while to get here, but here's the actual bitcasted method pointer...
-		String methodPointer = counters.nextRegister();
-		emit('\t' + methodPointer + " = bitcast i8* " + methodAddr + " to " + llType(callMethod.getType()) + " (" + parameters.toString() + ")*");
+			builder.place(exitLabel);
 
-		// Part 2: Call method with arg expressions (stored in virtual registers by the time we call)
+			f.done(elementValue);
+		}
 
-		StringBuilder arguments = new StringBuilder(objRegister);
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "."
+		 * f2 -> "length"
+		*/
+		@Override
+		public void visit(ArrayLength n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f0);
+				return;
+			}
+
+			f.done(builder.load(f.result));
+		}
 
-		// Get any additional arguments
-		n.f4.accept(this, argu);
-		for (String argumentRegister: argu.getCallArgs())
-			arguments.append(", " + argumentRegister);
-		argu.getCallArgs().clear();
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "."
+		 * f2 -> Identifier()
+		 * f3 -> "("
+		 * f4 -> ( ExpressionList() )?
+		 * f5 -> ")"
+		 *
+		 * ExpressionList():
+		 * f0 -> Expression()
+		 * f1 -> ( "," Expression() )*
+		*/
+		@Override
+		public void visit(MessageSend n, Traversal.Frame<Value, Session> f) throws Exception {
+			Session argu = f.argu;
+			int step = f.state++;
 
-		String methodCall = counters.nextRegister();
-		emit('\t' + methodCall + " = call " + llType(callMethod.getType()) + ' ' + methodPointer + '(' + arguments.toString() + ")\n");
+			if (step == 0) {
+				f.visit(n.f0);
+				return;
+			}
 
-		argu.setObjectType(callMethod.getType());
-		return llType(callMethod.getType()) + ' ' + methodCall;
-	}
+			if (step == 1) {
+				Value objRegister = f.result;
 
-	/**
-	 * f0 -> Expression()
-	 * f1 -> ExpressionTail()
-	*/
-	@Override
-	public String visit(ExpressionList n, Session argu) throws Exception {
-		argu.addCallArg(n.f0.accept(this, argu));
-		return n.f1.accept(this, argu);
-	}
+				ClassSymbol callClass = argu.getType(n.f0).getClassSymbol();
+				MethodSymbol callMethod = callClass.getMethod(n.f2.f0.toString());
+				int methodIndex = callMethod.getOffset() / 8;
 
-	/**
-	 * f0 -> ","
-	 * f1 -> Expression()
-	*/
-	@Override
-	public String visit(ExpressionTerm n, Session argu) throws Exception {
-		argu.addCallArg(n.f1.accept(this, argu));
-		return null;
-	}
+				// Part 1: Acquire method offset
 
-	/**
-	 * f0 -> IntegerLiteral()
-	 *       | TrueLiteral()
-	 *       | FalseLiteral()
-	 *       | Identifier()
-	 *       | ThisExpression()
-	 *       | ArrayAllocationExpression()
-	 *       | AllocationExpression()
-	 *       | BracketExpression()
-	*/
-	@Override
-	public String visit(PrimaryExpression n, Session argu) throws Exception {
-		String exprRegister = n.f0.accept(this, argu);
+				builder.comment(callClass.getName(), ".", callMethod.getName(), "() : ", methodIndex);
 
-		// If it's not an Identifier, then it will be a virtual register returned from another function.
-		// Return that unchanged
-		if (n.f0.which != 3)
-			return exprRegister;
+				// Vtable is pointed to by the first 8 bytes of an object
+				Instruction vTableAddr = builder.bitcast(objRegister, I8_PTR_PTR_PTR);
 
-		// It's an identifier. Find the register we need (AssignmentStatement vibes)
-		String idName = exprRegister;
+				Instruction vTablePointer = builder.load(vTableAddr);
 
-		ClassSymbol classSymbol = symbols.getClass(argu.getClassName());
-		MethodSymbol method = classSymbol.getMethod(argu.getMethodName());
-		Symbol variable;
+				// This is the pointer to the method pointer, in the vtable array (bruh)
+				Instruction methodElementPointer = builder.getelementptr(I8_PTR_PTR, vTablePointer, Constant.i32(methodIndex));
 
-		if ((variable = method.getParameter(idName)) != null ||
-		    (variable = method.getField(idName)) != null) {
-			// load value from alloc'd pointer
-			exprRegister = counters.nextRegister();
-			emit('\t' + exprRegister + " = load " + llType(variable.getType()) + ", " + llType(variable.getType()) + "* %" + idName);
-		} else { // We have a class member on our hands: Get field pointer, THEN load.
-			variable = classSymbol.getField(idName);
+				Instruction methodAddr = builder.load(methodElementPointer);
 
-			String fieldAddr = counters.nextRegister();
-			emit('\t' + fieldAddr + " = getelementptr i8, i8* %this, i32 " + (8 + variable.getOffset()));
+				// It took a while to get here, but here's the actual bitcasted method pointer...
+				Instruction methodPointer = builder.bitcast(methodAddr, llType(callMethod.getSignature()));
 
-			String fieldPointer = counters.nextRegister();
-			emit('\t' + fieldPointer + " = bitcast i8* " + fieldAddr + " to " + llType(variable.getType()) + "*");
+				// Part 2: Call method with arg expressions (stored in virtual registers by the time we call)
 
-			exprRegister = counters.nextRegister();
-			emit('\t' + exprRegister + " = load " + llType(variable.getType()) + ", " + llType(variable.getType()) + "* " + fieldPointer + '\n');
-		}
+				f.locals[0] = objRegister;
+				f.locals[1] = callMethod;
+				f.locals[2] = methodPointer;
 
-		argu.setObjectType(variable.getType());
-		return llType(variable.getType()) + ' ' + exprRegister;
-	}
+				// Get any additional arguments
+				if (n.f4.present())
+					f.visit(((ExpressionList) n.f4.node).f0);
+				else
+					call(0, f);
 
-	/**
-	 * f0 -> <INTEGER_LITERAL>
-	*/
-	@Override
-	public String visit(IntegerLiteral n, Session argu) throws Exception {
-		return "i32 " + n.f0.toString();
-	}
+				return;
+			}
 
-	/**
-	 * f0 -> "true"
-	*/
-	@Override
-	public String visit(TrueLiteral n, Session argu) throws Exception {
-		return "i1 true";
-	}
+			argu.addCallArg(f.result);
 
-	/**
-	 * f0 -> "false"
-	*/
-	@Override
-	public String visit(FalseLiteral n, Session argu) throws Exception {
-		return "i1 false";
-	}
-
-	/**
-	 * f0 -> "this"
-	*/
-	@Override
-	public String visit(ThisExpression n, Session argu) throws Exception {
-		argu.setObjectType(argu.getClassName());
-		return "i8* %this";
-	}
+			NodeListOptional rest = ((ExpressionList) n.f4.node).f1.f0;
+			int next = step - 2;
 
-	/**
-	 * f0 -> "new"
-	 * f1 -> "int"
-	 * f2 -> "["
-	 * f3 -> Expression()
-	 * f4 -> "]"
-	*/
-	@Override
-	public String visit(ArrayAllocationExpression n, Session argu) throws Exception {
-		String lengthRegister = n.f3.accept(this, argu);
+			if (next < rest.size())
+				f.visit(((ExpressionTerm) rest.elementAt(next)).f1);
+			else
+				call(1 + rest.size(), f);
+		}
 
-		String oobCheck = counters.nextRegister();
-		emit('\t' + oobCheck + " = icmp sge " + lengthRegister + ", 0");
+		/* MessageSend, its count arguments last in the Session's call arguments (after those of any call
+		 * it is an argument of, which are not done yet) */
+		private void call(int count, Traversal.Frame<Value, Session> f) throws Exception {
+			Session argu = f.argu;
+			MethodSymbol callMethod = (MethodSymbol) f.locals[1];
+			Value methodPointer = (Value) f.locals[2];
 
-		String[] oobLabel = counters.nextOob();
-		emit('\t' + "br i1 " + oobCheck + ", label %" + oobLabel[0] + ", label %" + oobLabel[1]);
+			List<Value> callArgs = argu.getCallArgs();
+			int from = callArgs.size() - count;
 
-		String exitLabel = counters.nextExit();
+			Value[] arguments = new Value[1 + count];
+			arguments[0] = (Value) f.locals[0];
+			for (int i = count - 1; i >= 0; --i)
+				arguments[1 + i] = callArgs.remove(from + i);
 
-		// Path 1: Correct indexing -> allocate space for array
-		emit(oobLabel[0] + ':');
+			Instruction methodCall = builder.call(llType(callMethod.getType()), methodPointer, arguments);
+			builder.gap();
 
- 		// Because, as mentioned, the 0th element is the array length,we'll actually store length + 1 elements
-		String actualLength = counters.nextRegister();
-		emit('\t' + actualLength + " = add " + lengthRegister + ", 1");
+			f.done(methodCall);
+		}
 
-		String arrayAddr = counters.nextRegister();
-		emit('\t' + arrayAddr + " = call i8* @calloc(i32 4, i32 " + actualLength + ")");
+		/**
+		 * f0 -> NotExpression()
+		 *       | PrimaryExpression()
+		*/
+		@Override
+		public void visit(Clause n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f0.choice);
+			else
+				f.done(f.result);
+		}
 
-		String arrayPointer = counters.nextRegister();
-		emit('\t' + arrayPointer + " = bitcast i8* " + arrayAddr + " to i32*");
+		/**
+		 * f0 -> IntegerLiteral()
+		 *       | TrueLiteral()
+		 *       | FalseLiteral()
+		 *       | Identifier()
+		 *       | ThisExpression()
+		 *       | ArrayAllocationExpression()
+		 *       | AllocationExpression()
+		 *       | BracketExpression()
+		*/
+		@Override
+		public void visit(PrimaryExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			// If it's not an Identifier, then it will be a virtual register returned from another function.
+			// Return that unchanged
+			if (n.f0.which != 3) {
+				if (f.state++ == 0)
+					f.visit(n.f0.choice);
+				else
+					f.done(f.result);
+
+				return;
+			}
+
+			// It's an identifier. Find the register we need (AssignmentStatement vibes)
+			Session argu = f.argu;
+			Slot variable = argu.getSlot((Identifier) n.f0.choice);
+			Instruction exprRegister;
+
+			if (!variable.isField()) {
+				// load value from alloc'd pointer
+				exprRegister = builder.load(variable(variable));
+			} else { // We have a class member on our hands: Get field pointer, THEN load.
+				exprRegister = builder.load(fieldPointer(variable, argu));
+				builder.gap();
+			}
+
+			f.done(exprRegister);
+		}
 
-		// Stick the length on it like a post-it note
-		emit("\tstore " + lengthRegister + ", i32* " + arrayPointer);
-		emit("\tbr label %" + exitLabel);
+		/**
+		 * f0 -> "new"
+		 * f1 -> "int"
+		 * f2 -> "["
+		 * f3 -> Expression()
+		 * f4 -> "]"
+		*/
+		@Override
+		public void visit(ArrayAllocationExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f3);
+				return;
+			}
 
-		// Path 2: Ya dun goofed
-		emit(oobLabel[1] + ':');
-		emit("\tcall void @throw_oob()");
-		emit("\tunreachable\n");
+			Value lengthRegister = f.result;
 
-		emit(exitLabel + ':');
+			Instruction oobCheck = builder.binary(Opcode.ICMP_SGE, lengthRegister, ZERO);
 
-		return "i32* " + arrayPointer;
-	}
+			int oob = counters.nextOob();
+			BasicBlock inBounds = builder.block("not_oob", oob);
+			BasicBlock outOfBounds = builder.block("oob", oob);
+			builder.br(oobCheck, inBounds, outOfBounds);
 
-	/**
-	 * f0 -> "new"
-	 * f1 -> Identifier()
-	 * f2 -> "("
-	 * f3 -> ")"
-	*/
-	@Override
-	public String visit(AllocationExpression n, Session argu) throws Exception {
-		String className = n.f1.accept(this, argu);
+			BasicBlock exitLabel = builder.block("exit", counters.nextExit());
 
-		ClassSymbol newClass = symbols.getClass(className);
+			// Path 1: Correct indexing -> allocate space for array
+			builder.place(inBounds);
 
-		// Part 1: Allocate space for class (zero initialized by calloc)
-		String objRegister = counters.nextRegister();
-		emit('\t' + objRegister + " = call i8* @calloc(i32 1, i32 " + (8 + newClass.getSize()) + ')');
+	 		// Because, as mentioned, the 0th element is the array length,we'll actually store length + 1 elements
+			Instruction actualLength = builder.binary(Opcode.ADD, lengthRegister, ONE);
 
-		// Part 2: Store V-Table address as first field
-		String objAddr = counters.nextRegister();
-		emit('\t' + objAddr + " = bitcast i8* " + objRegister + " to i8***");
+			Instruction arrayAddr = builder.call(LlvmType.I8_PTR, CALLOC, FOUR, actualLength);
 
-		String vTableAddr = counters.nextRegister();
-		emit('\t' + vTableAddr + " = getelementptr [" + newClass.getMethodsAmount() + " x i8*], [" + newClass.getMethodsAmount() + " x i8*]* @" + className + "_vtable, i32 0, i32 0");
+			Instruction arrayPointer = builder.bitcast(arrayAddr, LlvmType.I32_PTR);
 
-		// Store vtable address at start of object area (the fabled 8 bytes we keep adding to those offsets)
-		emit("\tstore i8** " + vTableAddr + ", i8*** " + objAddr + '\n');
+			// Stick the length on it like a post-it note
+			builder.store(lengthRegister, arrayPointer);
+			builder.br(exitLabel);
 
-		argu.setObjectType(className);
-		return "i8* " + objRegister;
-	}
+			// Path 2: Ya dun goofed
+			outOfBounds(outOfBounds);
 
-	/**
-	 * f0 -> "!"
-	 * f1 -> Clause()
-	*/
-	@Override
-	public String visit(NotExpression n, Session argu) throws Exception {
-		String exprRegister = n.f1.accept(this, argu);
+			builder.place(exitLabel);
 
-		String notRegister = counters.nextRegister();
- 		emit('\t' + notRegister + " = xor i1 1, " + exprRegister.split(" ")[1]);
+			f.done(arrayPointer);
+		}
 
-		return "i1 " + notRegister;
-	}
+		/**
+		 * f0 -> "!"
+		 * f1 -> Clause()
+		*/
+		@Override
+		public void visit(NotExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f1);
+				return;
+			}
+
+			f.done(builder.binary(Opcode.XOR, BIT, f.result));
+		}
 
-	/**
-	 * f0 -> "("
-	 * f1 -> Expression()
-	 * f2 -> ")"
-	*/
-	@Override
-	public String visit(BracketExpression n, Session argu) throws Exception {
-		return n.f1.accept(this, argu);
+		/**
+		 * f0 -> "("
+		 * f1 -> Expression()
+		 * f2 -> ")"
+		*/
+		@Override
+		public void visit(BracketExpression n, Traversal.Frame<Value, Session> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f1);
+			else
+				f.done(f.result);
+		}
 	}
 }
@@ -0,0 +1,460 @@
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/* Table-driven scanner for DescentParser: Tokenizes the whole source up front, into
+ * parallel primitive arrays (kind, start/end offset, line, column), instead of one
+ * Token object per token. Token kinds, images and positions are MiniJavaParserTokenManager's;
+ * comments and whitespace are dropped, like JTBToolkit drops special tokens anyway.
+ * A lexical error becomes a final ERROR token, so that it surfaces only if the parser
+ * gets that far (the generated token manager is just as lazy). */
+public class Lexer implements MiniJavaParserConstants {
+	public static final int ERROR = -1;
+
+	private static final int TAB_SIZE = 8;              /* As in JavaCharStream */
+
+	/* Character classes (ASCII only, the rest is looked up by range) */
+	private static final byte OTHER = 0, SPACE = 1, TAB = 2, LF = 3, CR = 4, LETTER = 5, DIGIT = 6, ZERO = 7,
+	                          PUNCT = 8, SLASH = 9, AMPERSAND = 10, UPPER_S = 11;
+
+	private static final byte[] classes = new byte[128];
+	private static final int[] punctuation = new int[128];
+
+	static {
+		classes[' '] = classes['\f'] = SPACE;
+		classes['\t'] = TAB;
+		classes['\n'] = LF;
+		classes['\r'] = CR;
+		classes['/'] = SLASH;
+		classes['&'] = AMPERSAND;
+		classes['0'] = ZERO;
+
+		for (char c = '1'; c <= '9'; ++c)
+			classes[c] = DIGIT;
+		for (char c = 'a'; c <= 'z'; ++c)
+			classes[c] = classes[Character.toUpperCase(c)] = LETTER;
+		classes['$'] = classes['_'] = LETTER;
+		classes['S'] = UPPER_S;                     /* Might start "System.out.println" */
+
+		String punct = "()[]{};.=<+-!,*";
+		int[] kinds = { LPAREN, RPAREN, LSQPAREN, RSQPAREN, LBRACE, RBRACE, SEMICOLON, DOT, ASSIGN, LT, PLUS, MINUS, NOT, 47, 48 };
+
+		for (int i = 0; i < punct.length(); ++i) {
+			classes[punct.charAt(i)] = PUNCT;
+			punctuation[punct.charAt(i)] = kinds[i];
+		}
+	}
+
+	/* Keywords, in an open-addressing table keyed by hash() of their characters */
+	private static final String[] keywordImages = new String[64];
+	private static final int[] keywordKinds = new int[64];
+
+	static {
+		int[] kinds = { BOOLEAN, CLASS, INTERFACE, ELSE, EXTENDS, FALSE, IF, WHILE, INTEGER, LENGTH, MAIN, NEW, PUBLIC, RETURN, STATIC, STRING, THIS, TRUE, VOID };
+
+		for (int kind: kinds) {
+			String image = tokenImage[kind].substring(1, tokenImage[kind].length() - 1);
+			int slot = hash(image.toCharArray(), 0, image.length()) & 63;
+
+			while (keywordImages[slot] != null)
+				slot = (slot + 1) & 63;
+
+			keywordImages[slot] = image;
+			keywordKinds[slot] = kind;
+		}
+	}
+
+	private static final String PRINT_IMAGE = "System.out.println";
+
+	/* Images of punctuation and keywords, by kind */
+	private static final String[] fixedImages = new String[tokenImage.length];
+
+	static {
+		for (int kind = LPAREN; kind < fixedImages.length; ++kind)
+			if (tokenImage[kind].startsWith("\""))
+				fixedImages[kind] = tokenImage[kind].substring(1, tokenImage[kind].length() - 1).intern();
+	}
+
+	private final char[] chars;
+	private final int length;
+
+	/* The tokens */
+	public int[] kinds = new int[1024];
+	public int[] starts = new int[1024];
+	public int[] ends = new int[1024];                  /* Exclusive */
+	public int[] lines = new int[1024];
+	public int[] columns = new int[1024];               /* Of the first character; tokens never span lines */
+	public int count = 0;
+
+	public TokenMgrError error;                         /* What the ERROR token stands for */
+
+	/* Identifier images, so that each distinct name becomes a String (and is interned) once */
+	private String[] names = new String[256];
+	private int namesCount = 0;
+
+	private Lexer(char[] chars, int length) {
+		this.chars = chars;
+		this.length = length;
+	}
+
+	/* Returns null if the source contains \\uXXXX escapes: Those are left to JavaCharStream */
+	public static Lexer of(byte[] source) {
+		char[] chars = new char[source.length];
+		boolean ascii = true;
+
+		for (int i = 0; i < source.length; ++i) {
+			byte b = source[i];
+
+			if (b == '\\')
+				return null;
+
+			ascii &= (b >= 0);
+			chars[i] = (char) b;
+		}
+
+		Lexer lexer;
+		if (ascii) {
+			lexer = new Lexer(chars, chars.length);
+		} else {
+			CharBuffer decoded = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(source));
+			lexer = new Lexer(decoded.array(), decoded.limit());
+		}
+
+		lexer.scan();
+		return lexer;
+	}
+
+	private static int hash(char[] chars, int start, int end) {
+		int h = end - start;
+
+		for (int i = start; i < end; ++i)
+			h = h * 31 + chars[i];
+
+		return h ^ (h >>> 7);
+	}
+
+	private static boolean isLetter(char c) {
+		if (c < 128)
+			return classes[c] == LETTER || classes[c] == UPPER_S;
+
+		return (c >= '\u00c0' && c <= '\u00d6') || (c >= '\u00d8' && c <= '\u00f6') || (c >= '\u00f8' && c <= '\u1fff')
+		    || (c >= '\u3040' && c <= '\u318f') || (c >= '\u3300' && c <= '\u337f') || (c >= '\u3400' && c <= '\u3d2d')
+		    || (c >= '\u4e00' && c <= '\u9fff') || (c >= '\uf900' && c <= '\ufaff');
+	}
+
+	private static boolean isDigit(char c) {
+		if (c < 128)
+			return c >= '0' && c <= '9';
+
+		return (c >= '\u0660' && c <= '\u0669') || (c >= '\u06f0' && c <= '\u06f9') || (c >= '\u0966' && c <= '\u096f')
+		    || (c >= '\u09e6' && c <= '\u09ef') || (c >= '\u0a66' && c <= '\u0a6f') || (c >= '\u0ae6' && c <= '\u0aef')
+		    || (c >= '\u0b66' && c <= '\u0b6f') || (c >= '\u0be7' && c <= '\u0bef') || (c >= '\u0c66' && c <= '\u0c6f')
+		    || (c >= '\u0ce6' && c <= '\u0cef') || (c >= '\u0d66' && c <= '\u0d6f') || (c >= '\u0e50' && c <= '\u0e59')
+		    || (c >= '\u0ed0' && c <= '\u0ed9') || (c >= '\u1040' && c <= '\u1049');
+	}
+
+	private void add(int kind, int start, int end, int line, int column) {
+		if (count == kinds.length) {
+			int size = count * 2;
+
+			kinds = Arrays.copyOf(kinds, size);
+			starts = Arrays.copyOf(starts, size);
+			ends = Arrays.copyOf(ends, size);
+			lines = Arrays.copyOf(lines, size);
+			columns = Arrays.copyOf(columns, size);
+		}
+
+		kinds[count] = kind;
+		starts[count] = start;
+		ends[count] = end;
+		lines[count] = line;
+		columns[count] = column;
+		++count;
+	}
+
+	private void scan() {
+		char[] chars = this.chars;
+		int i = 0;
+		int line = 1;
+		int column = 0;                                 /* Of the last character consumed */
+		int breakColumn = 0;                            /* Of the last line break */
+
+		while (i < length) {
+			char c = chars[i];
+			int start = i;
+
+			switch (c < 128 ? classes[c] : (isLetter(c) ? LETTER : OTHER)) {
+				case SPACE:
+					++i;
+					++column;
+					continue;
+
+				case TAB:
+					++i;
+					column += TAB_SIZE - (column % TAB_SIZE);
+					continue;
+
+				case LF:
+					++i;
+					++line;
+					breakColumn = column + 1;
+					column = 0;
+					continue;
+
+				case CR:
+					/* "\r\n" is a single line break (whose column is the "\n"'s) */
+					++i;
+					breakColumn = column + 1;
+					if (i < length && chars[i] == '\n') {
+						++i;
+						++breakColumn;
+					}
+					++line;
+					column = 0;
+					continue;
+
+				case SLASH:
+					if (i + 1 < length && chars[i + 1] == '/') {
+						/* Needs a line terminator: At end of file, it is a lexical error */
+						while (i < length && chars[i] != '\n' && chars[i] != '\r') {
+							column += (chars[i] == '\t') ? TAB_SIZE - (column % TAB_SIZE) : 1;
+							++i;
+						}
+
+						if (i == length) {
+							fail(start, length);
+							return;
+						}
+
+						continue;
+					}
+
+					if (i + 1 < length && chars[i + 1] == '*') {
+						i += 2;
+						column += 2;
+
+						/* Ends at the first star-slash (both comment kinds do) */
+						boolean closed = false;
+
+						while (i < length) {
+							char d = chars[i++];
+
+							if (d == '*' && i < length && chars[i] == '/') {
+								++i;
+								column += 2;
+								closed = true;
+								break;
+							}
+
+							if (d == '\n' || (d == '\r' && (i >= length || chars[i] != '\n'))) {
+								++line;
+								column = 0;
+							} else if (d == '\t') {
+								column += TAB_SIZE - (column % TAB_SIZE);
+							} else if (d != '\r') {
+								++column;
+							}
+						}
+
+						if (!closed) {
+							fail(start, length);
+							return;
+						}
+
+						continue;
+					}
+
+					fail(start, i + 1);
+					return;
+
+				case PUNCT:
+					add(punctuation[c], i, i + 1, line, ++column);
+					++i;
+					continue;
+
+				case AMPERSAND:
+					if (i + 1 < length && chars[i + 1] == '&') {
+						add(AND, i, i + 2, line, column + 1);
+						i += 2;
+						column += 2;
+						continue;
+					}
+
+					fail(start, i + 1);
+					return;
+
+				case ZERO:
+					add(INTEGER_LITERAL, i, i + 1, line, ++column);
+					++i;
+					continue;
+
+				case DIGIT:
+					do {
+						++i;
+					} while (i < length && chars[i] >= '0' && chars[i] <= '9');
+
+					add(INTEGER_LITERAL, start, i, line, column + 1);
+					column += i - start;
+					continue;
+
+				case UPPER_S:
+				case LETTER:
+					/* Longest match: "System.out.println" beats the identifier "System" */
+					if (c == 'S' && length - i >= PRINT_IMAGE.length() && matches(PRINT_IMAGE, i)) {
+						add(PRINT, i, i + PRINT_IMAGE.length(), line, column + 1);
+						i += PRINT_IMAGE.length();
+						column += PRINT_IMAGE.length();
+						continue;
+					}
+
+					do {
+						++i;
+					} while (i < length && (isLetter(chars[i]) || isDigit(chars[i])));
+
+					add(keywordKind(start, i), start, i, line, column + 1);
+					column += i - start;
+					continue;
+
+				default:
+					fail(start, start);
+					return;
+			}
+		}
+
+		/* <EOF>: Where the last character is (JTB adds one) */
+		if (length > 0 && (chars[length - 1] == '\n' || chars[length - 1] == '\r'))
+			add(EOF, length, length, line - 1, breakColumn);
+		else
+			add(EOF, length, length, line, column);
+	}
+
+	private int keywordKind(int start, int end) {
+		int len = end - start;
+
+		if (len < 2 || len > 9)
+			return IDENTIFIER;
+
+		for (int slot = hash(chars, start, end) & 63; keywordImages[slot] != null; slot = (slot + 1) & 63) {
+			String keyword = keywordImages[slot];
+
+			if (keyword.length() == len && matches(keyword, start))
+				return keywordKinds[slot];
+		}
+
+		return IDENTIFIER;
+	}
+
+	private boolean matches(String image, int start) {
+		for (int j = 0; j < image.length(); ++j)
+			if (chars[start + j] != image.charAt(j))
+				return false;
+
+		return true;
+	}
+
+	/* Image of token t. Punctuation and keywords have a fixed one */
+	public String image(int t) {
+		int kind = kinds[t];
+
+		switch (kind) {
+			case EOF:
+				return "";
+
+			case IDENTIFIER:
+				return name(starts[t], ends[t]);
+
+			case INTEGER_LITERAL:
+				return new String(chars, starts[t], ends[t] - starts[t]).intern();
+
+			default:
+				return fixedImages[kind];
+		}
+	}
+
+	private String name(int start, int end) {
+		int mask = names.length - 1;
+
+		for (int slot = hash(chars, start, end) & mask; ; slot = (slot + 1) & mask) {
+			String name = names[slot];
+
+			if (name == null) {
+				name = new String(chars, start, end - start).intern();
+				names[slot] = name;
+
+				if (++namesCount * 2 > names.length)
+					rehash();
+
+				return name;
+			}
+
+			if (name.length() == end - start && matches(name, start))
+				return name;
+		}
+	}
+
+	private void rehash() {
+		String[] old = names;
+		names = new String[old.length * 2];
+		int mask = names.length - 1;
+
+		for (String name: old) {
+			if (name == null)
+				continue;
+
+			int slot = hash(name.toCharArray(), 0, name.length()) & mask;
+			while (names[slot] != null)
+				slot = (slot + 1) & mask;
+
+			names[slot] = name;
+		}
+	}
+
+	/* No token matches from start on, and the character at stop (possibly end of file)
+	 * cannot continue one. Reported the way MiniJavaParserTokenManager does: At the
+	 * offending character, or just past the last one if the file ends before the next */
+	private void fail(int start, int stop) {
+		int last = Math.min(stop, length - 1);
+		boolean eofSeen = (last == length - 1);
+		int[] at = position(last);
+		String after;
+
+		if (eofSeen) {
+			if (chars[last] == '\n' || chars[last] == '\r') {
+				++at[0];
+				at[1] = 0;
+			} else {
+				++at[1];
+			}
+
+			after = (last == start) ? "" : new String(chars, start, last - start + 1);
+		} else {
+			after = (stop == start) ? "" : new String(chars, start, stop - start);
+		}
+
+		error = new TokenMgrError(eofSeen, 0, at[0], at[1], after, chars[last], TokenMgrError.LEXICAL_ERROR);
+		add(ERROR, length, length, at[0], at[1]);
+	}
+
+	/* Line and column of character i, counted from the start (errors only) */
+	private int[] position(int i) {
+		int line = 1, column = 0;
+
+		for (int j = 0; j < i; ++j) {
+			char c = chars[j];
+
+			if (c == '\n' || (c == '\r' && chars[j + 1] != '\n')) {
+				++line;
+				column = 0;
+			} else if (c == '\t') {
+				column += TAB_SIZE - (column % TAB_SIZE);
+			} else {
+				++column;
+			}
+		}
+
+		column += (chars[i] == '\t') ? TAB_SIZE - (column % TAB_SIZE) : 1;
+
+		return new int[] { line, column };
+	}
+}
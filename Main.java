@@ -1,56 +1,504 @@
-import java.io.BufferedWriter;
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import syntaxtree.*;
 import symbol.*;
+import ir.IRWriter;
+
+/* Records everything a compilation prints, so that parallel jobs can be
+ * replayed to the console in argument order (stdout/stderr interleaving kept) */
+class OrderedOutput {
+	private final List<Object[]> chunks = new ArrayList<>();
+
+	public final PrintStream out = new PrintStream(new Chunker(false), true);
+	public final PrintStream err = new PrintStream(new Chunker(true), true);
+
+	private class Chunker extends OutputStream {
+		private final boolean isErr;
+
+		public Chunker(boolean isErr) {
+			this.isErr = isErr;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			chunks.add(new Object[] { isErr, Arrays.copyOfRange(b, off, off + len) });
+		}
+	}
+
+	public void replay(PrintStream out, PrintStream err) {
+		for (Object[] chunk: chunks) {
+			PrintStream target = ((Boolean) chunk[0]) ? err : out;
+			byte[] bytes = (byte[]) chunk[1];
+
+			target.write(bytes, 0, bytes.length);
+			target.flush();
+		}
+	}
+}
+
+/* Command line flags */
+class Options {
+	public int jobs = 1;
+	public IRCache irCache;
+	public String statsFile;             /* "-" for stdout */
+	public String charStream = "mapped"; /* Parser input: "mapped" (MappedCharStream) or "java" (JavaCharStream) */
+	public String parser = "javacc";     /* "javacc" (MiniJavaParser) or "descent" (DescentParser) */
+	public boolean lazyBodies = false;   /* DescentParser: Parse method bodies on first visit */
+	public boolean parallelTypecheck = false; /* Check method bodies concurrently */
+	public boolean compactIr = false;    /* Leave comments and blank lines out of the IR */
+	public boolean memoryLocals = false; /* Keep variables in allocas, rather than promote them to SSA values */
+	public boolean allChecks = false;    /* Keep the bounds checks that can't fail */
+	public String[] filenames;
+
+	private static final String usage = "You need to pass arguments like so: [-j N] [--cache <dir>] [--cache-size <MiB>] [--stats <file>] [--charstream mapped|java] [--parser javacc|descent] [--bodies eager|lazy] [--typecheck sequential|parallel] [--ir full|compact] [--locals ssa|memory] [--bounds-checks needed|all] <inputFile1> <inputfile2> ... <inputFileN>";
+
+	/* Returns null on bad command line, after complaining to err */
+	public static Options parse(String[] args, Path workDir, PrintStream err) {
+		Options options = new Options();
+		String cacheDir = null;
+		long cacheSize = 256;
+
+		int i;
+		for (i = 0; i < args.length && args[i].startsWith("-"); ++i) {
+			String flag = args[i];
+
+			if (i + 1 >= args.length) {
+				err.println(flag + " expects a value");
+				return null;
+			}
+
+			String value = args[++i];
+
+			try {
+				switch (flag) {
+					case "-j":               /* Compile N files at a time */
+						options.jobs = Integer.parseInt(value);
+						break;
+
+					case "--cache":          /* Reuse IR of unchanged sources */
+						cacheDir = value;
+						break;
+
+					case "--cache-size":
+						cacheSize = Long.parseLong(value);
+						break;
+
+					case "--stats":          /* Per-phase statistics, as JSON lines */
+						options.statsFile = workDir.resolve(value).toString();
+						if (value.equals("-"))
+							options.statsFile = value;
+						break;
+
+					case "--charstream":
+						if (!value.equals("mapped") && !value.equals("java")) {
+							err.println("--charstream expects mapped or java");
+							return null;
+						}
+
+						options.charStream = value;
+						break;
+
+					case "--parser":
+						if (!value.equals("javacc") && !value.equals("descent")) {
+							err.println("--parser expects javacc or descent");
+							return null;
+						}
+
+						options.parser = value;
+						break;
+
+					case "--bodies":         /* Overlap parsing method bodies with semantic checks */
+						if (!value.equals("eager") && !value.equals("lazy")) {
+							err.println("--bodies expects eager or lazy");
+							return null;
+						}
+
+						options.lazyBodies = value.equals("lazy");
+						break;
+
+					case "--typecheck":      /* Check method bodies in the common ForkJoinPool */
+						if (!value.equals("sequential") && !value.equals("parallel")) {
+							err.println("--typecheck expects sequential or parallel");
+							return null;
+						}
+
+						options.parallelTypecheck = value.equals("parallel");
+						break;
+
+					case "--ir":             /* Smaller IR, for tools rather than people */
+						if (!value.equals("full") && !value.equals("compact")) {
+							err.println("--ir expects full or compact");
+							return null;
+						}
+
+						options.compactIr = value.equals("compact");
+						break;
+
+					case "--locals":         /* The IR as generated, each variable access a load or store */
+						if (!value.equals("ssa") && !value.equals("memory")) {
+							err.println("--locals expects ssa or memory");
+							return null;
+						}
+
+						options.memoryLocals = value.equals("memory");
+						break;
+
+					case "--bounds-checks":  /* Every array access checked, as generated */
+						if (!value.equals("needed") && !value.equals("all")) {
+							err.println("--bounds-checks expects needed or all");
+							return null;
+						}
+
+						options.allChecks = value.equals("all");
+						break;
+
+					default:
+						err.println("Unknown option " + flag);
+						err.println(usage);
+						return null;
+				}
+			} catch (NumberFormatException e) {
+				err.println(flag + " expects a number");
+				return null;
+			}
+		}
+
+		if (options.jobs < 1) {
+			err.println("-j expects a positive number of jobs");
+			return null;
+		}
+
+		if (i >= args.length) {
+			err.println(usage);
+			return null;
+		}
+
+		options.filenames = Arrays.copyOfRange(args, i, args.length);
+
+		if (cacheDir != null) {
+			try {
+				options.irCache = IRCache.open(workDir.resolve(cacheDir), cacheSize << 20);
+			} catch (Exception e) {
+				err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+				return null;
+			}
+		}
+
+		return options;
+	}
+
+	/* Flags that change the generated IR, and thus the IR cache key */
+	public String codegenFlags() {
+		String flags = compactIr ? "ir=compact" : "";
+
+		if (memoryLocals)
+			flags += (flags.isEmpty() ? "" : ",") + "locals=memory";
+		if (allChecks)
+			flags += (flags.isEmpty() ? "" : ",") + "checks=all";
+
+		return flags;
+	}
+}
 
 public class Main {
+	/* Part of the IR cache key: Bump whenever the generated IR changes */
+	public static final String VERSION = "3.5";
+
+	private static final String prettyLine = String.format("%080d", 0).replace('0', '-');
+
 	public static void main(String[] args) {
-		if (args.length < 1) {
-			System.err.println("You need to pass arguments like so: <inputFile1> <inputfile2> ... <inputFileN>");
-			System.exit(1);
+		/* --server [socket [cacheSize]]: Stay resident, see Server and Client */
+		if (args.length >= 1 && args[0].equals("--server")) {
+			try {
+				String socket = (args.length >= 2) ? args[1] : Server.DEFAULT_SOCKET;
+				int cacheSize = (args.length >= 3) ? Integer.parseInt(args[2]) : Server.DEFAULT_CACHE_SIZE;
+
+				new Server(cacheSize).serve(Paths.get(socket));
+			} catch (Exception e) {
+				System.err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+
+		int status = run(args, Paths.get(""), System.out, System.err, null);
+		if (status != 0)
+			System.exit(status);
+	}
+
+	/* Compile files as specified by the command line. Relative paths are resolved against workDir.
+	 * cache (may be null) is used to skip the front end for already seen sources.
+	 * Returns exit status */
+	public static int run(String[] args, Path workDir, PrintStream out, PrintStream err, FrontEndCache cache) {
+		Options options = Options.parse(args, workDir, err);
+		if (options == null)
+			return 1;
+
+		if (options.jobs == 1 || options.filenames.length == 1) {
+			for (String filename: options.filenames)
+				compile(filename, workDir, out, err, options, cache);
+		} else {
+			compileParallel(options, workDir, out, err, cache);
+		}
+
+		return 0;
+	}
+
+	private static void compileParallel(Options options, Path workDir, PrintStream out, PrintStream err, FrontEndCache cache) {
+		String[] filenames = options.filenames;
+		ForkJoinPool pool = new ForkJoinPool(options.jobs);
+		List<Future<OrderedOutput>> results = new ArrayList<>(Collections.nCopies(filenames.length, null));
+
+		/* Biggest files first, so a large straggler doesn't end up running alone at the end */
+		Integer[] order = new Integer[filenames.length];
+		for (int i = 0; i < order.length; ++i)
+			order[i] = i;
+
+		Arrays.sort(order, (a, b) -> Long.compare(workDir.resolve(filenames[b]).toFile().length(), workDir.resolve(filenames[a]).toFile().length()));
+
+		for (int i: order) {
+			String filename = filenames[i];
+
+			results.set(i, pool.submit(() -> {
+				OrderedOutput output = new OrderedOutput();
+				compile(filename, workDir, output.out, output.err, options, cache);
+				return output;
+			}));
+		}
+
+		/* Print in argument order, as soon as each file's turn comes up */
+		for (Future<OrderedOutput> result: results) {
+			try {
+				result.get().replay(out, err);
+			} catch (InterruptedException | ExecutionException e) {
+				err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+			}
 		}
 
-		String prettyLine = String.format("%080d", 0).replace('0', '-');
+		pool.shutdown();
+	}
+
+	private static void compile(String filename, Path workDir, PrintStream out, PrintStream err, Options options, FrontEndCache cache) {
+		/* Pretty-print file basename */
+		String basename = filename.substring(filename.lastIndexOf('/') + 1);
+		out.println(basename);
+		out.println(prettyLine);
+
+		/* Prepare output filename */
+		String outname = filename.replace(".java", ".ll");
+
+		Path outPath = workDir.resolve(outname);
+		String irKey = null;
+
+		Stats stats = new Stats(filename, options.statsFile != null);
+
+		Path sourcePath = workDir.resolve(filename);
+
+		try {
+			Node root;
+			SymbolTable symbols;
+			MethodTables tables;
+			byte[] bytes = null;
 
-		for (String filename: args) {
-			/* Pretty-print file basename */
-			String basename = filename.substring(filename.lastIndexOf('/') + 1);
-			System.out.println(basename);
-			System.out.println(prettyLine);
+			String key = null;
+			FrontEndCache.Entry cached = null;
 
-			/* Prepare output filename */
-			String outname = filename.replace(".java", ".ll");
+			if (cache != null || options.irCache != null) {
+				try (FileInputStream input = new FileInputStream(sourcePath.toFile())) {
+					bytes = input.readAllBytes();
+				}
 
-			try (FileInputStream input = new FileInputStream(filename);
-			     BufferedWriter output = new BufferedWriter(new FileWriter(outname))) {
+				if (options.irCache != null) {
+					irKey = IRCache.key(bytes, VERSION, options.codegenFlags());
+
+					/* Unchanged source: Serve stored IR, without even parsing */
+					if (options.irCache.get(irKey, outPath)) {
+						out.println("Generated LLVM IR: " + outname);
+						stats.count("cached", 1);
+						report(stats, options, out);
+						out.println();
+						return;
+					}
+				}
+
+				if (cache != null) {
+					key = FrontEndCache.key(bytes);
+					cached = cache.get(key);
+				}
+			}
+
+			if (cached != null) {
+				/* Same source already passed the front end */
+				root = cached.root;
+				symbols = cached.symbols;
+				tables = cached.tables;
+			} else {
 				/* Parsing: Make AST */
-				Goal root = new MiniJavaParser(input).Goal();
+				stats.begin();
+				CompilerEvents.PhaseEvent parseEvent = CompilerEvents.phase(filename, "parse");
+				root = parse(sourcePath, bytes, options);
+				CompilerEvents.commit(parseEvent);
+				stats.end("parse");
 
-				/* Semantic Checking Phase 1: Populate Symbol Table */
-				SymbolTable symbols = new SymbolTable();
-				root.accept(new SymbolVisitor(symbols), null);
+				try {
+					/* Semantic Checking Phase 1: Populate Symbol Table */
+					stats.begin();
+					CompilerEvents.PhaseEvent symbolsEvent = CompilerEvents.phase(filename, "symbols");
+					if (root instanceof DescentParser.LazyGoal)
+						stats.offThread();     /* Starts parsing the first bodies */
+					String symbolsKey = null;
+					symbols = null;
 
-				/* Semantic Checking Phase 2: Type checking, using Symbol Table */
-				root.accept(new TypeCheckVisitor(symbols), null);
+					/* Declarations as when last stored (only method bodies changed): Load their symbol table */
+					if (options.irCache != null) {
+						symbolsKey = HeaderHash.key(root, VERSION);
+						symbols = options.irCache.getSymbols(symbolsKey);
+					}
 
-				//DEBUG offset printing
-				//symbols.printOffsets();
+					if (symbols != null) {
+						stats.count("symbols_cached", 1);
+					} else {
+						symbols = new SymbolTable();
+						root.accept(new SymbolVisitor(symbols), null);
+						symbols.freeze();
 
-				/* LLVM IR Generation */
-				root.accept(new LLVMVisitor(symbols, output), null);
-				System.out.println("Generated LLVM IR: " + outname);
-			} catch (Exception e) {
-				//DEBUG whole stacktrace
-				//e.printStackTrace();
+						if (symbolsKey != null)
+							options.irCache.putSymbols(symbolsKey, symbols);
+					}
+					CompilerEvents.commit(symbolsEvent);
+					stats.end("symbols");
 
-				System.err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+					/* Semantic Checking Phase 2: Type checking, using Symbol Table */
+					stats.begin();
+					CompilerEvents.PhaseEvent typecheckEvent = CompilerEvents.phase(filename, "typecheck");
+					if (root instanceof DescentParser.LazyGoal || options.parallelTypecheck)
+						stats.offThread();
+					TypeCheckVisitor checker = new TypeCheckVisitor(symbols, options.parallelTypecheck);
+					root.accept(checker, null);
+					tables = checker.getTables();
+					CompilerEvents.commit(typecheckEvent);
+					stats.end("typecheck");
+				} catch (Exception e) {
+					/* A syntax error in a body not visited yet still comes first, as in a full parse */
+					if (root instanceof DescentParser.LazyGoal)
+						((DescentParser.LazyGoal) root).parseBodies();
+
+					throw e;
+				}
+
+				if (cache != null)
+					cache.put(key, root, symbols, tables);
 			}
 
-			System.out.println();
+			//DEBUG offset printing
+			//symbols.printOffsets();
+
+			/* LLVM IR Generation */
+			LLVMVisitor generator;
+
+			stats.begin();
+			CompilerEvents.PhaseEvent codegenEvent = CompilerEvents.phase(filename, "codegen");
+			try (IRWriter output = IRWriter.open(outPath, options.compactIr)) {
+				generator = new LLVMVisitor(symbols, tables, output, options.memoryLocals, options.allChecks);
+				root.accept(generator, null);
+			}
+			CompilerEvents.commit(codegenEvent);
+			stats.end("codegen");
+
+			if (stats.isEnabled()) {
+				int methods = 0;
+				for (ClassSymbol c: symbols.getClasses())
+					methods += c.getDeclaredMethodsAmount();
+
+				stats.count("ast_nodes", Stats.countNodes(root));
+				stats.count("classes", symbols.getClasses().size());
+				stats.count("methods", methods);
+				stats.count("registers", generator.getRegisterCount());
+				stats.count("labels", generator.getLabelCount());
+				stats.count("ir_bytes", Files.size(outPath));
+			}
+
+			if (options.irCache != null)
+				options.irCache.put(irKey, outPath);
+
+			out.println("Generated LLVM IR: " + outname);
+			report(stats, options, out);
+		} catch (Exception e) {
+			//DEBUG whole stacktrace
+			//e.printStackTrace();
+
+			err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+		}
+
+		out.println();
+	}
+
+	/* bytes: Source contents, if already read (null otherwise) */
+	private static Node parse(Path source, byte[] bytes, Options options) throws Exception {
+		if (options.parser.equals("descent")) {
+			if (bytes == null) {
+				try (FileInputStream input = new FileInputStream(source.toFile())) {
+					bytes = input.readAllBytes();
+				}
+			}
+
+			/* Sources with unicode escapes fall back to MiniJavaParser */
+			Lexer lexer = Lexer.of(bytes);
+			if (lexer != null)
+				return options.lazyBodies ? new DescentParser(lexer).LazyGoal() : new DescentParser(lexer).Goal();
+		}
+
+		Goal goal;
+
+		try {
+			goal = parseJavaCC(source, bytes, options);
+		} catch (StackOverflowError e) {
+			/* MiniJavaParser recurses per level of nesting; DescentParser keeps its own stack */
+			Lexer lexer = Lexer.of((bytes != null) ? bytes : Files.readAllBytes(source));
+			if (lexer == null)
+				throw e;
+
+			goal = new DescentParser(lexer).Goal();
+		}
+
+		return goal;
+	}
+
+	private static Goal parseJavaCC(Path source, byte[] bytes, Options options) throws Exception {
+		if (options.charStream.equals("java")) {
+			try (InputStream input = (bytes != null) ? new ByteArrayInputStream(bytes) : new FileInputStream(source.toFile())) {
+				return new MiniJavaParser(input).Goal();
+			}
+		}
+
+		JavaCharStream stream = (bytes != null) ? MappedCharStream.of(bytes) : MappedCharStream.open(source);
+		return new MiniJavaParser(new MiniJavaParserTokenManager(stream)).Goal();
+	}
+
+	private static void report(Stats stats, Options options, PrintStream out) throws Exception {
+		if (!stats.isEnabled())
+			return;
+
+		if (options.statsFile.equals("-")) {
+			out.println(stats.toJson());
+			return;
+		}
+
+		/* One line per file, even with -j */
+		synchronized (Stats.class) {
+			Files.write(Paths.get(options.statsFile), (stats.toJson() + '\n').getBytes("UTF-8"),
+			            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
 		}
 	}
 }
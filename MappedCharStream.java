@@ -0,0 +1,251 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/* Drop-in JavaCharStream over a whole file in memory (normally memory-mapped).
+ * JavaCharStream copies every character through small ring buffers and checks each
+ * one for \\uXXXX escapes; here an ASCII file is read straight from the mapping, a
+ * byte per character, and anything else is decoded from it once, in bulk, by the
+ * UTF-8 decoder. readChar() is an index bump. Line and column come from a per-line
+ * index, on demand. */
+public class MappedCharStream extends JavaCharStream {
+	/* One of them: The ASCII bytes, or the decoded characters */
+	private final ByteBuffer bytes;
+	private final char[] chars;
+	private final int length;
+
+	private int pos = -1;                /* Last character read */
+	private int tokenStart = 0;
+
+	private byte[] image = new byte[64]; /* Of an ASCII token, on its way to a String */
+
+	/* Per line: Where it starts, and its last tab along with that tab's (expanded) column.
+	 * Past the last tab, column is a subtraction away */
+	private int[] lineStarts = new int[64];
+	private int[] lastTabs = new int[64];
+	private int[] lastTabColumns = new int[64];
+	private int lines = 0;
+
+	/* Last position query (the token manager asks for line, then column);
+	 * queries come (nearly) in order */
+	private int cursorPos = -1;
+	private int cursorLine = 0;
+	private int cursorColumn = 0;
+
+	private MappedCharStream(ByteBuffer bytes, char[] chars, int length) {
+		/* Superclass buffers are unused: keep them tiny */
+		super(new StringReader(""), 1, 1, 1);
+
+		this.bytes = bytes;
+		this.chars = chars;
+		this.length = length;
+
+		indexLines();
+	}
+
+	public static JavaCharStream open(Path file) throws IOException {
+		/* RandomAccessFile, to report missing files like FileInputStream did */
+		try (FileChannel channel = new RandomAccessFile(file.toFile(), "r").getChannel()) {
+			return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static JavaCharStream of(byte[] source) {
+		return of(ByteBuffer.wrap(source));
+	}
+
+	public static JavaCharStream of(ByteBuffer source) {
+		int length = source.limit();
+		boolean ascii = true;
+
+		for (int i = 0; i < length; ++i) {
+			byte b = source.get(i);
+
+			/* Possible unicode escape: Leave it to the real thing */
+			if (b == '\\') {
+				byte[] copy = new byte[length];
+				source.get(0, copy);
+
+				return new JavaCharStream(new ByteArrayInputStream(copy));
+			}
+
+			ascii &= (b >= 0);
+		}
+
+		if (ascii)
+			return new MappedCharStream(source, null, length);
+
+		CharBuffer decoded = StandardCharsets.UTF_8.decode(source.duplicate());
+
+		/* The array may have slack past limit() */
+		return new MappedCharStream(null, decoded.array(), decoded.limit());
+	}
+
+	private char charAt(int i) {
+		return (chars != null) ? chars[i] : (char) bytes.get(i);
+	}
+
+	private void indexLines() {
+		int column = 0;
+
+		newLine(0);
+
+		for (int i = 0; i < length; ++i) {
+			char c = charAt(i);
+
+			++column;
+			if (c == '\t') {
+				column += (tabSize - ((column - 1) % tabSize)) - 1;
+
+				lastTabs[lines - 1] = i;
+				lastTabColumns[lines - 1] = column;
+			}
+
+			/* "\r\n" counts once, like JavaCharStream */
+			if (c == '\n' || (c == '\r' && (i + 1 >= length || charAt(i + 1) != '\n'))) {
+				newLine(i + 1);
+				column = 0;
+			}
+		}
+	}
+
+	private void newLine(int start) {
+		if (lines == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+			lastTabs = Arrays.copyOf(lastTabs, lines * 2);
+			lastTabColumns = Arrays.copyOf(lastTabColumns, lines * 2);
+		}
+
+		lineStarts[lines] = start;
+		lastTabs[lines] = -1;
+		++lines;
+	}
+
+	/* Point cursor to character i, working out its line and column (1-based, tabs expanded) */
+	private void locate(int i) {
+		i = Math.max(0, Math.min(i, length - 1));
+
+		if (i == cursorPos || length == 0)
+			return;
+
+		if (lineStarts[cursorLine] > i)
+			cursorLine = 0;
+
+		while (cursorLine + 1 < lines && lineStarts[cursorLine + 1] <= i)
+			++cursorLine;
+
+		int lastTab = lastTabs[cursorLine];
+
+		cursorPos = i;
+
+		if (lastTab < 0) {
+			cursorColumn = i - lineStarts[cursorLine] + 1;
+		} else if (i > lastTab) {
+			cursorColumn = lastTabColumns[cursorLine] + (i - lastTab);
+		} else {
+			/* Before a tab: Count it out */
+			cursorColumn = 0;
+
+			for (int j = lineStarts[cursorLine]; j <= i; ++j) {
+				++cursorColumn;
+				if (charAt(j) == '\t')
+					cursorColumn += (tabSize - ((cursorColumn - 1) % tabSize)) - 1;
+			}
+		}
+	}
+
+	@Override
+	public char BeginToken() throws IOException {
+		tokenStart = pos + 1;
+		return readChar();
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		if (pos + 1 >= length)
+			throw new IOException();
+
+		return charAt(++pos);
+	}
+
+	@Override
+	public void backup(int amount) {
+		pos -= amount;
+	}
+
+	@Override
+	public String GetImage() {
+		int len = pos - tokenStart + 1;
+
+		if (chars != null)
+			return new String(chars, tokenStart, len);
+
+		if (len > image.length)
+			image = new byte[Math.max(len, image.length * 2)];
+
+		bytes.get(tokenStart, image, 0, len);
+
+		return new String(image, 0, len, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public char[] GetSuffix(int len) {
+		char[] suffix = new char[len];
+
+		if (chars != null) {
+			System.arraycopy(chars, pos - len + 1, suffix, 0, len);
+		} else {
+			for (int i = 0; i < len; ++i)
+				suffix[i] = (char) bytes.get(pos - len + 1 + i);
+		}
+
+		return suffix;
+	}
+
+	@Override
+	public int getBeginLine() {
+		locate(tokenStart);
+		return cursorLine + 1;
+	}
+
+	@Override
+	public int getBeginColumn() {
+		locate(tokenStart);
+		return cursorColumn;
+	}
+
+	@Override
+	public int getEndLine() {
+		locate(pos);
+		return cursorLine + 1;
+	}
+
+	@Override
+	public int getEndColumn() {
+		locate(pos);
+		return cursorColumn;
+	}
+
+	@Override
+	@Deprecated
+	public int getLine() {
+		return getEndLine();
+	}
+
+	@Override
+	@Deprecated
+	public int getColumn() {
+		return getEndColumn();
+	}
+
+	@Override
+	public void Done() {
+	}
+}
@@ -0,0 +1,72 @@
+import java.util.*;
+
+import syntaxtree.*;
+import symbol.*;
+import symbol.Type;                  /* Not syntaxtree.Type */
+
+/* What the type checker found in method bodies, kept for the code generator: Apart from the symbols,
+ * which are frozen by then (and may be shared between compilations).
+ * Nodes and methods are told apart by identity, as MethodSymbol.equals() compares signatures only */
+public class MethodTables {
+	private final Map<MethodSymbol, Map<Identifier, Slot>> slots = new IdentityHashMap<>();
+	private final Map<MethodSymbol, Map<Node, Type>> types = new IdentityHashMap<>();
+
+	public void put(MethodSymbol method, Map<Identifier, Slot> slots, Map<Node, Type> types) {
+		this.slots.put(method, slots);
+		this.types.put(method, types);
+	}
+
+	public void putAll(MethodTables other) {
+		slots.putAll(other.slots);
+		types.putAll(other.types);
+	}
+
+	/* What each variable use in the body resolved to, by its Identifier (of a PrimaryExpression,
+	 * or the one assigned to). Not to be modified */
+	public Map<Identifier, Slot> getSlots(MethodSymbol method) {
+		return slots.get(method);
+	}
+
+	/* The static types of the body's expressions that aren't fixed by their kind or variable (see typeOf()):
+	 * Of each MessageSend, and each PrimaryExpression that is "this", "new C()" or a class name.
+	 * Not to be modified */
+	public Map<Node, Type> getTypes(MethodSymbol method) {
+		return types.get(method);
+	}
+
+	/* The static type of any expression node of a method, from its slots and types */
+	public static Type typeOf(Map<Identifier, Slot> slots, Map<Node, Type> types, Node expression) {
+		while (true) {
+			if (expression instanceof Expression) {
+				expression = ((Expression) expression).f0.choice;
+			} else if (expression instanceof Clause) {
+				expression = ((Clause) expression).f0.choice;
+			} else if (expression instanceof BracketExpression) {
+				expression = ((BracketExpression) expression).f1;
+			} else if (expression instanceof PrimaryExpression) {
+				Type type = types.get(expression);
+				if (type != null)
+					return type;
+
+				expression = ((PrimaryExpression) expression).f0.choice;
+			} else if (expression instanceof Identifier) {
+				return slots.get(expression).getType();
+			} else if (expression instanceof MessageSend) {
+				return types.get(expression);
+			} else if (expression instanceof AndExpression || expression instanceof CompareExpression
+			           || expression instanceof NotExpression || expression instanceof TrueLiteral
+			           || expression instanceof FalseLiteral) {
+				return Type.BOOLEAN;
+			} else if (expression instanceof PlusExpression || expression instanceof MinusExpression
+			           || expression instanceof TimesExpression || expression instanceof ArrayLookup
+			           || expression instanceof ArrayLength || expression instanceof IntegerLiteral) {
+				return Type.INT;
+			} else if (expression instanceof ArrayAllocationExpression) {
+				return Type.INT_ARRAY;
+			} else {
+				/* "this" and "new C()" are typed as the PrimaryExpression around them */
+				throw new IllegalArgumentException("No type kept for " + expression.getClass().getSimpleName());
+			}
+		}
+	}
+}
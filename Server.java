@@ -0,0 +1,99 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/* Long-lived compile server, listening on a Unix domain socket.
+ *
+ * Request:  UTF working directory, int argc, argc x UTF argument (same CLI as Main)
+ * Response: (byte stream, int length, bytes)* chunks of console output,
+ *           where stream is STDOUT or STDERR, terminated by (END, int exit status) */
+public class Server {
+	public static final byte END = 0;
+	public static final byte STDOUT = 1;
+	public static final byte STDERR = 2;
+
+	public static final String DEFAULT_SOCKET = Paths.get(System.getProperty("java.io.tmpdir"), "minijava.sock").toString();
+	public static final int DEFAULT_CACHE_SIZE = 64;
+
+	private final FrontEndCache cache;
+	private final ExecutorService workers = Executors.newCachedThreadPool();
+
+	public Server(int cacheSize) {
+		cache = new FrontEndCache(cacheSize);
+	}
+
+	/* Writes every write() as one framed chunk of the response */
+	private static class FramedOutput extends OutputStream {
+		private final DataOutputStream response;
+		private final byte stream;
+
+		public FramedOutput(DataOutputStream response, byte stream) {
+			this.response = response;
+			this.stream = stream;
+		}
+
+		@Override
+		public void write(int b) throws java.io.IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws java.io.IOException {
+			/* Both streams share one socket */
+			synchronized (response) {
+				response.writeByte(stream);
+				response.writeInt(len);
+				response.write(b, off, len);
+			}
+		}
+	}
+
+	public void serve(Path socket) throws Exception {
+		Files.deleteIfExists(socket);
+
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> socket.toFile().delete()));
+
+			System.out.println("Listening on " + socket);
+
+			while (true) {
+				SocketChannel client = server.accept();
+				workers.submit(() -> handle(client));
+			}
+		}
+	}
+
+	private void handle(SocketChannel client) {
+		try (SocketChannel channel = client) {
+			DataInputStream request = new DataInputStream(Channels.newInputStream(channel));
+			DataOutputStream response = new DataOutputStream(Channels.newOutputStream(channel));
+
+			Path workDir = Paths.get(request.readUTF());
+			String[] args = new String[request.readInt()];
+			for (int i = 0; i < args.length; ++i)
+				args[i] = request.readUTF();
+
+			PrintStream out = new PrintStream(new FramedOutput(response, STDOUT), true);
+			PrintStream err = new PrintStream(new FramedOutput(response, STDERR), true);
+
+			int status = Main.run(args, workDir, out, err, cache);
+
+			synchronized (response) {
+				response.writeByte(END);
+				response.writeInt(status);
+				response.flush();
+			}
+		} catch (Exception e) {
+			System.err.println("\033[1;31m" + e.getClass().getSimpleName() + "\033[0m: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,126 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.*;
+
+import syntaxtree.*;
+
+/* Per-file compilation statistics (--stats): wall time and allocated bytes of
+ * each phase, plus the sizes that drive their cost. Reported as one JSON object. */
+public class Stats {
+	private static final com.sun.management.ThreadMXBean threads =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final String file;
+	private final boolean enabled;
+
+	/* Insertion order = report order */
+	private final Map<String, long[]> phases = new LinkedHashMap<>();   /* { nanoseconds, bytes } */
+	private final Map<String, Long> counts = new LinkedHashMap<>();
+
+	private long phaseStart;
+	private long phaseAllocStart;
+	private boolean phaseOffThread;
+
+	/* A disabled Stats ignores everything, so callers need not check */
+	public Stats(String file, boolean enabled) {
+		this.file = file;
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void begin() {
+		if (!enabled)
+			return;
+
+		phaseAllocStart = allocatedBytes();
+		phaseOffThread = false;
+		phaseStart = System.nanoTime();
+	}
+
+	/* Some of the current phase's work runs on ForkJoinPool workers (--bodies lazy, --typecheck
+	 * parallel), which other files may be using at the same time: Its allocations can't be told
+	 * apart, so the phase reports none */
+	public void offThread() {
+		phaseOffThread = true;
+	}
+
+	public void end(String phase) {
+		if (!enabled)
+			return;
+
+		long elapsed = System.nanoTime() - phaseStart;
+		phases.put(phase, new long[] { elapsed, phaseOffThread ? -1 : allocatedBytes() - phaseAllocStart });
+	}
+
+	public void count(String name, long value) {
+		if (enabled)
+			counts.put(name, value);
+	}
+
+	private static long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/* Every node of the JTB tree, tokens included. Walks the public fields
+	 * (f0, f1, ..., node, nodes, choice), so no visitor needs to know about it */
+	public static long countNodes(Node root) throws Exception {
+		long count = 0;
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.push(root);
+
+		while (!pending.isEmpty()) {
+			Node n = pending.pop();
+			++count;
+
+			if (n instanceof NodeListInterface) {
+				for (Enumeration<Node> e = ((NodeListInterface) n).elements(); e.hasMoreElements(); )
+					pending.push(e.nextElement());
+
+				continue;
+			}
+
+			for (Field f: n.getClass().getFields()) {
+				Object child = f.get(n);
+
+				if (child instanceof Node)
+					pending.push((Node) child);
+			}
+		}
+
+		return count;
+	}
+
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{\"file\":\"");
+
+		for (char c: file.toCharArray()) {
+			if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+				continue;
+			}
+
+			if (c == '"' || c == '\\')
+				json.append('\\');
+			json.append(c);
+		}
+		json.append("\",\"phases\":{");
+
+		String separator = "";
+		for (Map.Entry<String, long[]> phase: phases.entrySet()) {
+			json.append(separator).append('"').append(phase.getKey()).append("\":{\"ns\":").append(phase.getValue()[0]);
+			if (phase.getValue()[1] >= 0)
+				json.append(",\"allocated_bytes\":").append(phase.getValue()[1]);
+			json.append('}');
+			separator = ",";
+		}
+		json.append('}');
+
+		for (Map.Entry<String, Long> count: counts.entrySet())
+			json.append(",\"").append(count.getKey()).append("\":").append(count.getValue());
+
+		return json.append('}').toString();
+	}
+}
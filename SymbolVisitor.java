@@ -1,6 +1,7 @@
 import syntaxtree.*;
 import visitor.*;
 import symbol.*;
+import symbol.Type;                  /* Not syntaxtree.Type */
 
 public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 	private final SymbolTable symbols;
@@ -32,14 +33,15 @@ public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 	@Override
 	public String visit(MainClass n, Symbol argu) throws Exception {
 		String className = n.f1.accept(this, argu);
-		ClassSymbol mainClass = new ClassSymbol(className);
+		ClassSymbol mainClass = new ClassSymbol(symbols.getClassType(className));
 
-		MethodSymbol mainMethod = new MethodSymbol("static void", "main");
+		MethodSymbol mainMethod = new MethodSymbol(Type.STATIC_VOID, "main");
 
 		String paramName = n.f11.accept(this, argu);
-		Symbol mainParam = new Symbol("String[]", paramName);
+		Symbol mainParam = new Symbol(Type.STRING_ARRAY, paramName);
 
 		mainMethod.addParameter(mainParam);
+		mainMethod.setSignature(symbols.getMethodType(mainMethod));
 
 		n.f14.accept(this, mainMethod);
 
@@ -64,7 +66,7 @@ public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 		if (symbols.hasClass(className))
 			throw new TypeCheckException(className, "Redefinition of existing class");
 
-		ClassSymbol newClass = new ClassSymbol(className);
+		ClassSymbol newClass = new ClassSymbol(symbols.getClassType(className));
 
 		if (n.f3.present())
 			n.f3.accept(this, newClass);
@@ -101,7 +103,7 @@ public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 			throw new TypeCheckException(className, "Parent class " + parentName + " has not been defined");
 
 		ClassSymbol parentClass = symbols.getClass(parentName);
-		ClassSymbol newClass = new ClassSymbol(className, parentClass);
+		ClassSymbol newClass = new ClassSymbol(symbols.getClassType(className), parentClass);
 
 		if (n.f5.present())
 			n.f5.accept(this, newClass);
@@ -124,7 +126,7 @@ public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 		String varType = n.f0.accept(this, argu);
 		String varName = n.f1.accept(this, argu);
 
-		Symbol newVar = new Symbol(varType, varName);
+		Symbol newVar = new Symbol(symbols.getType(varType), varName);
 
 		/* Abstraction ContainerSymbol covers Classes AND Methods */
 		if (!(argu instanceof FieldContainerSymbol))
@@ -169,11 +171,13 @@ public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 		String methodType = n.f1.accept(this, argu);
 		String methodName = n.f2.accept(this, argu);
 
-		MethodSymbol newMethod = new MethodSymbol(methodType, methodName);
+		MethodSymbol newMethod = new MethodSymbol(symbols.getType(methodType), methodName);
 
 		if (n.f4.present())
 			n.f4.accept(this, newMethod);
 
+		newMethod.setSignature(symbols.getMethodType(newMethod));
+
 		if (n.f7.present())
 			n.f7.accept(this, newMethod);
 
@@ -199,7 +203,7 @@ public class SymbolVisitor extends GJDepthFirst<String, Symbol> {
 		String paramType = n.f0.accept(this, argu);
 		String paramName = n.f1.accept(this, argu);
 
-		Symbol newParam = new Symbol(paramType, paramName);
+		Symbol newParam = new Symbol(symbols.getType(paramType), paramName);
 
 		if (!(argu instanceof MethodSymbol))
 			throw new TypeCheckException("Trying to visit FormalParameter outside of MethodSymbol");
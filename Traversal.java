@@ -0,0 +1,136 @@
+import java.util.*;
+
+import syntaxtree.*;
+import visitor.*;
+
+/* Runs the Statement and Expression part of a GJ visitor off an explicit stack.
+ * A plain JTB visitor recurses through accept(), a handful of Java frames per level of
+ * nesting (Expression -> Clause -> PrimaryExpression -> BracketExpression -> Expression ...),
+ * and a few thousand levels of brackets, blocks or "!" overflow the thread stack.
+ * Here nesting costs one Frame on the heap per node instead, reused once the node is done.
+ *
+ * A visit is split into steps: The visitor supplies a GJVoidVisitor ("steps") whose visit(n, frame)
+ * takes the next step of n. A step either asks for a child to be visited, frame.visit(child), whose
+ * result is in frame.result by the next step, or ends the visit with frame.done(result).
+ * Locals needed across steps go in frame.locals. Children outside of the nesting families
+ * (identifiers, literals, "new C()", types) are handed to the visitor itself, as usual. */
+public class Traversal<R, A> {
+	/* Node classes that may contain Statements or Expressions: The steps visitor must handle them all */
+	private static final Set<Class<?>> nesting = new HashSet<>(Arrays.asList(
+		Statement.class, Block.class, AssignmentStatement.class, ArrayAssignmentStatement.class,
+		IfStatement.class, WhileStatement.class, PrintStatement.class,
+		Expression.class, AndExpression.class, CompareExpression.class, PlusExpression.class,
+		MinusExpression.class, TimesExpression.class, ArrayLookup.class, ArrayLength.class,
+		MessageSend.class, Clause.class, PrimaryExpression.class, ArrayAllocationExpression.class,
+		NotExpression.class, BracketExpression.class
+	));
+
+	public static class Frame<R, A> {
+		public A argu;
+		public int state;                                /* Steps taken so far: Up to the steps visitor */
+		public R result;                                 /* Of the child last visited */
+		public final Object[] locals = new Object[4];
+
+		private Node node;
+		private Node child;
+		private A childArgu;
+		private boolean done;
+		private R value;
+
+		/* Visit child next, with argu */
+		public void visit(Node child, A argu) {
+			this.child = child;
+			this.childArgu = argu;
+		}
+
+		public void visit(Node child) {
+			visit(child, argu);
+		}
+
+		public void done(R value) {
+			this.done = true;
+			this.value = value;
+		}
+
+		/* The node being visited */
+		public Node getNode() {
+			return node;
+		}
+	}
+
+	private final GJVisitor<R, A> visitor;
+	private final GJVoidVisitor<Frame<R, A>> steps;
+
+	@SuppressWarnings("unchecked")
+	private Frame<R, A>[] stack = (Frame<R, A>[]) new Frame<?, ?>[64];
+	private int depth = 0;
+
+	public Traversal(GJVisitor<R, A> visitor, GJVoidVisitor<Frame<R, A>> steps) {
+		this.visitor = visitor;
+		this.steps = steps;
+	}
+
+	/* n.accept(visitor, argu), as far as the result and side effects go */
+	public R visit(Node n, A argu) throws Exception {
+		if (!nesting.contains(n.getClass()))
+			return n.accept(visitor, argu);
+
+		int base = depth;
+
+		try {
+			push(n, argu);
+
+			while (true) {
+				Frame<R, A> frame = stack[depth - 1];
+
+				frame.child = null;
+				frame.node.accept(steps, frame);
+
+				if (frame.done) {
+					R value = frame.value;
+					pop();
+
+					if (depth == base)
+						return value;
+
+					stack[depth - 1].result = value;
+				} else if (frame.child == null) {
+					throw new IllegalStateException("No step taken by " + frame.node.getClass().getSimpleName());
+				} else if (nesting.contains(frame.child.getClass())) {
+					push(frame.child, frame.childArgu);
+				} else {
+					frame.result = frame.child.accept(visitor, frame.childArgu);
+				}
+			}
+		} finally {
+			/* Thrown out of (a step of) a nested node: Let go of the frames in between */
+			while (depth > base)
+				pop();
+		}
+	}
+
+	private void push(Node n, A argu) {
+		if (depth == stack.length)
+			stack = Arrays.copyOf(stack, depth * 2);
+
+		Frame<R, A> frame = stack[depth];
+		if (frame == null)
+			frame = stack[depth] = new Frame<>();
+
+		frame.node = n;
+		frame.argu = argu;
+		frame.state = 0;
+		frame.done = false;
+
+		++depth;
+	}
+
+	private void pop() {
+		Frame<R, A> frame = stack[--depth];
+
+		frame.node = frame.child = null;
+		frame.argu = frame.childArgu = null;
+		frame.result = frame.value = null;
+		Arrays.fill(frame.locals, null);
+	}
+}
@@ -1,14 +1,178 @@
-import java.util.StringTokenizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import syntaxtree.*;
 import visitor.*;
 import symbol.*;
+import symbol.Type;                  /* Not syntaxtree.Type */
 
-public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
+public class TypeCheckVisitor extends GJDepthFirst<Type, String[]> {
 	private final SymbolTable symbols;
+	private final boolean parallel;
+	private final Traversal<Type, String[]> traversal = new Traversal<>(this, new Steps());
+
+	/* The method being checked, what the variable uses in its body resolve to so far, and the static
+	 * types of its expressions: Kept for the code generator, in tables of every method checked */
+	private MethodSymbol method;
+	private Map<Identifier, Slot> slots;
+	private Map<Node, Type> types;
+	private final MethodTables tables = new MethodTables();
+
+	/* Argument types of the calls being checked, innermost call's on top (see visit(MessageSend)) */
+	private Type[] arguments = new Type[16];
+	private int argumentCount = 0;
 
 	public TypeCheckVisitor(SymbolTable symbols) {
+		this(symbols, false);
+	}
+
+	/* parallel: Check method bodies concurrently, in the common ForkJoinPool (see visit(Goal)) */
+	public TypeCheckVisitor(SymbolTable symbols, boolean parallel) {
+		if (!symbols.isFrozen())
+			throw new IllegalStateException("Symbol table is not frozen");
+
 		this.symbols = symbols;
+		this.parallel = parallel;
+	}
+
+	/* A variable use: Resolved once, here, and kept for the code generator (see MethodTables.getSlots()) */
+	private Slot resolve(Identifier use) {
+		Slot slot = method.resolve(use.f0.toString());
+		if (slot != null)
+			slots.put(use, slot);
+
+		return slot;
+	}
+
+	/* An expression done checking, whose static type isn't fixed by its kind or variable: Kept for the code
+	 * generator (see MethodTables.typeOf()) */
+	private void typed(Traversal.Frame<Type, String[]> f, Type type) {
+		types.put(f.getNode(), type);
+		f.done(type);
+	}
+
+	private void beginMethod(String className, String methodName) {
+		method = symbols.getClass(className).getMethod(methodName);
+		slots = new IdentityHashMap<>();
+		types = new IdentityHashMap<>();
+		argumentCount = 0;
+	}
+
+	private void endMethod() {
+		tables.put(method, slots, types);
+	}
+
+	/* Once the program is checked: What was found in each method's body */
+	public MethodTables getTables() {
+		return tables;
+	}
+
+	/**
+	 * f0 -> MainClass()
+	 * f1 -> ( TypeDeclaration() )*
+	 * f2 -> <EOF>
+	*/
+	@Override
+	public Type visit(Goal n, String[] argu) throws Exception {
+		if (!parallel)
+			return super.visit(n, argu);
+
+		/* Units that depend on the (frozen) symbol table only, not on each other, in source order:
+		 * The main class, then the fields and each method of every class. No class events, then */
+		List<Node> units = new ArrayList<>();
+		List<String> owners = new ArrayList<>();
+
+		units.add(n.f0);
+		owners.add(n.f0.f1.f0.toString());
+
+		for (Enumeration<Node> e = n.f1.elements(); e.hasMoreElements(); ) {
+			Node declaration = ((TypeDeclaration) e.nextElement()).f0.choice;
+			String className;
+			NodeListOptional fields, methods;
+
+			if (declaration instanceof ClassDeclaration) {
+				ClassDeclaration c = (ClassDeclaration) declaration;
+				className = c.f1.f0.toString();
+				fields = c.f3;
+				methods = c.f4;
+			} else {
+				ClassExtendsDeclaration c = (ClassExtendsDeclaration) declaration;
+				className = c.f1.f0.toString();
+				fields = c.f5;
+				methods = c.f6;
+			}
+
+			units.add(fields);
+			owners.add(className);
+
+			for (Enumeration<Node> m = methods.elements(); m.hasMoreElements(); ) {
+				units.add(m.nextElement());
+				owners.add(className);
+			}
+		}
+
+		Check check = new Check(units, owners);
+		ForkJoinPool.commonPool().invoke(check.range(0, units.size()));
+
+		/* Joined, so the workers' tables are all in */
+		for (MethodTables checked: check.tables)
+			tables.putAll(checked);
+
+		/* As a sequential check would have it: The error of the earliest unit */
+		for (Exception error: check.errors) {
+			if (error != null)
+				throw error;
+		}
+
+		return null;
+	}
+
+	/* Checks units in ranges split across the pool, a visitor (and so a Traversal stack) per range.
+	 * Once a unit fails, none after it is checked any further: Its error comes first either way */
+	private class Check {
+		private final List<Node> units;
+		private final List<String> owners;
+		private final Exception[] errors;
+		private final Queue<MethodTables> tables = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger firstError;
+		private final int grain;
+
+		Check(List<Node> units, List<String> owners) {
+			this.units = units;
+			this.owners = owners;
+			this.errors = new Exception[units.size()];
+			this.firstError = new AtomicInteger(units.size());
+			this.grain = Math.max(1, units.size() / (8 * ForkJoinPool.getCommonPoolParallelism()));
+		}
+
+		RecursiveAction range(int from, int to) {
+			return new RecursiveAction() {
+				@Override
+				protected void compute() {
+					if (to - from > grain) {
+						int middle = (from + to) >>> 1;
+						invokeAll(range(from, middle), range(middle, to));
+						return;
+					}
+
+					TypeCheckVisitor visitor = new TypeCheckVisitor(symbols);
+					tables.add(visitor.tables);
+
+					for (int i = from; i < to && i < firstError.get(); ++i) {
+						try {
+							units.get(i).accept(visitor, new String[] { owners.get(i), null });
+						} catch (Exception e) {
+							errors[i] = e;
+							firstError.accumulateAndGet(i, Math::min);
+							return;
+						}
+					}
+				}
+			};
+		}
 	}
 
 	/**
@@ -32,15 +196,24 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f17 -> "}"
 	*/
 	@Override
-	public String visit(MainClass n, String[] argu) throws Exception {
+	public Type visit(MainClass n, String[] argu) throws Exception {
 		// Names of class and main method (only one method in the main class), so we can include it here
-		String className = n.f1.accept(this, argu);
+		CompilerEvents.MethodEvent event = new CompilerEvents.MethodEvent();
+		event.begin();
+
+		String className = n.f1.f0.toString();
 		String[] names = new String[] { className, "main" };
 
+		beginMethod(className, "main");
+
 		n.f14.accept(this, names);
 
 		n.f15.accept(this, names);
 
+		endMethod();
+
+		CompilerEvents.commit(event, "typecheck", className, "main", n.f15, 0);
+
 		return null;
 	}
 
@@ -53,14 +226,19 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f5 -> "}"
 	*/
 	@Override
-	public String visit(ClassDeclaration n, String[] argu) throws Exception {
+	public Type visit(ClassDeclaration n, String[] argu) throws Exception {
+		CompilerEvents.ClassEvent event = new CompilerEvents.ClassEvent();
+		event.begin();
+
 		String[] names = new String[2];
 
-		names[0] = n.f1.accept(this, names);
+		names[0] = n.f1.f0.toString();
 
 		n.f3.accept(this, names);
 		n.f4.accept(this, names);
 
+		CompilerEvents.commit(event, "typecheck", names[0], n.f4, 0);
+
 		return null;
 	}
 
@@ -75,14 +253,19 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f7 -> "}"
 	*/
 	@Override
-	public String visit(ClassExtendsDeclaration n, String[] argu) throws Exception {
+	public Type visit(ClassExtendsDeclaration n, String[] argu) throws Exception {
+		CompilerEvents.ClassEvent event = new CompilerEvents.ClassEvent();
+		event.begin();
+
 		String[] names = new String[2];
 
-		names[0] = n.f1.accept(this, names);
+		names[0] = n.f1.f0.toString();
 
 		n.f5.accept(this, names);
 		n.f6.accept(this, names);
 
+		CompilerEvents.commit(event, "typecheck", names[0], n.f6, 0);
+
 		return null;
 	}
 
@@ -92,11 +275,11 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f2 -> ";"
 	*/
 	@Override
-	public String visit(VarDeclaration n, String[] argu) throws Exception {
-		String varType = n.f0.accept(this, argu);
-		String varName = n.f1.accept(this, argu);
+	public Type visit(VarDeclaration n, String[] argu) throws Exception {
+		Type varType = n.f0.accept(this, argu);
+		String varName = n.f1.f0.toString();
 
-		if (!symbols.isValidType(varType))
+		if (!varType.isValid())
 			throw new TypeCheckException(argu, "Type " + varType + " of variable " + varName + " is not a basic type or a defined class");
 
 		return null;
@@ -118,12 +301,17 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f12 -> "}"
 	*/
 	@Override
-	public String visit(MethodDeclaration n, String[] argu) throws Exception {
+	public Type visit(MethodDeclaration n, String[] argu) throws Exception {
+		CompilerEvents.MethodEvent event = new CompilerEvents.MethodEvent();
+		event.begin();
+
 		/* Declared method return type */
-		String methodType = n.f1.accept(this, argu);
+		Type methodType = n.f1.accept(this, argu);
 
 		/* add function name to array passed from Class Declaration */
-		argu[1] = n.f2.accept(this, argu);
+		argu[1] = n.f2.f0.toString();
+
+		beginMethod(argu[0], argu[1]);
 
 		n.f4.accept(this, argu); // Method parameters
 		n.f7.accept(this, argu); // Method variables
@@ -131,12 +319,16 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 		n.f8.accept(this, argu); // Method body
 
 		/* Return type of final expression */
-		String exprType = n.f10.accept(this, argu);
+		Type exprType = n.f10.accept(this, argu);
 
 		// Check if expression return type matched expected function signature
 		if (!symbols.typesMatch(exprType, methodType))
 			throw new TypeCheckException(argu, "Return type mismatch (Expected " + methodType + ", got " + exprType + ')');
 
+		endMethod();
+
+		CompilerEvents.commit(event, "typecheck", argu[0], argu[1], n.f8, 0);
+
 		return null;
 	}
 
@@ -145,11 +337,11 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f1 -> Identifier()
 	*/
 	@Override
-	public String visit(FormalParameter n, String[] argu) throws Exception {
-		String paramType = n.f0.accept(this, argu);
-		String paramName = n.f1.accept(this, argu);
+	public Type visit(FormalParameter n, String[] argu) throws Exception {
+		Type paramType = n.f0.accept(this, argu);
+		String paramName = n.f1.f0.toString();
 
-		if (!symbols.isValidType(paramType))
+		if (!paramType.isValid())
 			throw new TypeCheckException(argu, "Type " + paramType + " of parameter " + paramName + " is not a basic type or a defined class");
 
 		return null;
@@ -161,469 +353,625 @@ public class TypeCheckVisitor extends GJDepthFirst<String, String[]> {
 	 * f2 -> "]"
 	*/
 	@Override
-	public String visit(ArrayType n, String[] argu) throws Exception {
-		return n.f0.toString() + n.f1.toString() + n.f2.toString();
+	public Type visit(ArrayType n, String[] argu) throws Exception {
+		return Type.INT_ARRAY;
 	}
 
 	/**
 	 * f0 -> "boolean"
 	*/
 	@Override
-	public String visit(BooleanType n, String[] argu) throws Exception {
-		return n.f0.toString();
+	public Type visit(BooleanType n, String[] argu) throws Exception {
+		return Type.BOOLEAN;
 	}
 
 	/**
 	 * f0 -> "int"
 	*/
 	@Override
-	public String visit(IntegerType n, String[] argu) throws Exception {
-		return n.f0.toString();
+	public Type visit(IntegerType n, String[] argu) throws Exception {
+		return Type.INT;
 	}
 
 	/**
 	 * f0 -> <IDENTIFIER>
 	*/
 	@Override
-	public String visit(Identifier n, String[] argu) throws Exception {
-		return n.f0.toString();
+	public Type visit(Identifier n, String[] argu) throws Exception {
+		/* Visited as a Type only (names are read off f0): The class type it names */
+		return symbols.getClassType(n.f0.toString());
 	}
 
-	/* Statement Family */
-
 	/**
-	 * f0 -> Identifier()
-	 * f1 -> "="
-	 * f2 -> Expression()
-	 * f3 -> ";"
+	 * f0 -> <INTEGER_LITERAL>
 	*/
 	@Override
-	public String visit(AssignmentStatement n, String[] argu) throws Exception {
-		String idName = n.f0.accept(this, argu);
-
-		String idType = symbols.getFieldType(argu[0], argu[1], idName);
-		if (idType == null)
-			throw new TypeCheckException(argu, "Identifier " + idName + " is undefined");
-
-		String exprType = n.f2.accept(this, argu);
-		if (!symbols.typesMatch(exprType, idType))
-			throw new TypeCheckException(argu, "Type mismatch in assignment (" + exprType + " cannot be assigned to " + idType + ')');
-
-		return null;
+	public Type visit(IntegerLiteral n, String[] argu) throws Exception {
+		return Type.INT;
 	}
 
 	/**
-	 * f0 -> Identifier()
-	 * f1 -> "["
-	 * f2 -> Expression()
-	 * f3 -> "]"
-	 * f4 -> "="
-	 * f5 -> Expression()
-	 * f6 -> ";"
+	 * f0 -> "true"
 	*/
 	@Override
-	public String visit(ArrayAssignmentStatement n, String[] argu) throws Exception {
-		String idName = n.f0.accept(this, argu);
-
-		String idType = symbols.getFieldType(argu[0], argu[1], idName);
-		if (!idType.equals("int[]"))
-			throw new TypeCheckException(argu, "Identifier " + idName + " is not of type int[]");
-
-		String indexType = n.f2.accept(this, argu);
-		if (!indexType.equals("int"))
-			throw new TypeCheckException(argu, "Indexing expression for array " + idName + "[] is not of type int");
-
-		String exprType = n.f5.accept(this, argu);
-		if (!exprType.equals("int"))
-			throw new TypeCheckException(argu, "Expression assigned to member of array " + idName + "[] is not of type int");
-
-		return null;
+	public Type visit(TrueLiteral n, String[] argu) throws Exception {
+		return Type.BOOLEAN;
 	}
 
 	/**
-	 * f0 -> "if"
-	 * f1 -> "("
-	 * f2 -> Expression()
-	 * f3 -> ")"
-	 * f4 -> Statement()
-	 * f5 -> "else"
-	 * f6 -> Statement()
+	 * f0 -> "false"
 	*/
 	@Override
-	public String visit(IfStatement n, String[] argu) throws Exception {
-		String exprType = n.f2.accept(this, argu);
-		if (!exprType.equals("boolean"))
-			throw new TypeCheckException(argu, "Expression used as \"if\" condition is not of type boolean");
-
-		n.f4.accept(this, argu);
-		n.f6.accept(this, argu);
-
-		return null;
+	public Type visit(FalseLiteral n, String[] argu) throws Exception {
+		return Type.BOOLEAN;
 	}
 
 	/**
-	 * f0 -> "while"
-	 * f1 -> "("
-	 * f2 -> Expression()
-	 * f3 -> ")"
-	 * f4 -> Statement()
+	 * f0 -> "this"
 	*/
 	@Override
-	public String visit(WhileStatement n, String[] argu) throws Exception {
-		String exprType = n.f2.accept(this, argu);
-		if (!exprType.equals("boolean"))
-			throw new TypeCheckException(argu, "Expression used as \"while\" condition is not of type boolean");
-
-		n.f4.accept(this, argu);
-
-		return null;
+	public Type visit(ThisExpression n, String[] argu) throws Exception {
+		return symbols.getClassType(argu[0]);
 	}
 
 	/**
-	 * f0 -> "System.out.println"
-	 * f1 -> "("
-	 * f2 -> Expression()
+	 * f0 -> "new"
+	 * f1 -> Identifier()
+	 * f2 -> "("
 	 * f3 -> ")"
-	 * f4 -> ";"
 	*/
 	@Override
-	public String visit(PrintStatement n, String[] argu) throws Exception {
-		String exprType = n.f2.accept(this, argu);
-		if (!exprType.equals("int"))
-			throw new TypeCheckException(argu, "Expression to be printed is not of type int");
+	public Type visit(AllocationExpression n, String[] argu) throws Exception {
+		String className = n.f1.f0.toString();
 
-		return null;
+		ClassSymbol newClass = symbols.getClass(className);
+		if (newClass == null)
+			throw new TypeCheckException(argu, "Type " + className + "is not a defined class");
+
+		return newClass.getType();
 	}
 
-	/* Expression Family */
+	/* Statements and Expressions nest without bound: They are checked off Traversal's stack */
 
-	/**
-	 * f0 -> Clause()
-	 * f1 -> "&&"
-	 * f2 -> Clause()
-	*/
 	@Override
-	public String visit(AndExpression n, String[] argu) throws Exception {
-		String exprType1 = n.f0.accept(this, argu);
-
-		if (!exprType1.equals("boolean"))
-			throw new TypeCheckException(argu, "Expression on left side of && is not of type boolean");
-
-		String exprType2 = n.f2.accept(this, argu);
-
-		if (!exprType2.equals("boolean"))
-			throw new TypeCheckException(argu, "Expression on right side of && is not of type boolean");
-
-		return "boolean";
+	public Type visit(Statement n, String[] argu) throws Exception {
+		return traversal.visit(n, argu);
 	}
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "<"
-	 * f2 -> PrimaryExpression()
-	*/
 	@Override
-	public String visit(CompareExpression n, String[] argu) throws Exception {
-		String exprType1 = n.f0.accept(this, argu);
+	public Type visit(Expression n, String[] argu) throws Exception {
+		return traversal.visit(n, argu);
+	}
 
-		if (!exprType1.equals("int"))
- 			throw new TypeCheckException(argu, "Expression on left side of < is not of type int");
+	/* The checks on each Statement and Expression, a child at a time:
+	 * f.result is the type of the child visited last, f.argu holds class and method names */
+	private class Steps extends GJVoidDepthFirst<Traversal.Frame<Type, String[]>> {
+		/**
+		 * f0 -> Block()
+		 *       | AssignmentStatement()
+		 *       | ArrayAssignmentStatement()
+		 *       | IfStatement()
+		 *       | WhileStatement()
+		 *       | PrintStatement()
+		*/
+		@Override
+		public void visit(Statement n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f0.choice);
+			else
+				f.done(f.result);
+		}
 
-		String exprType2 = n.f2.accept(this, argu);
+		/* Statement Family */
+
+		/**
+		 * f0 -> "{"
+		 * f1 -> ( Statement() )*
+		 * f2 -> "}"
+		*/
+		@Override
+		public void visit(Block n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state < n.f1.size())
+				f.visit(n.f1.elementAt(f.state++));
+			else
+				f.done(null);
+		}
 
-		if (!exprType2.equals("int"))
-			throw new TypeCheckException(argu, "Expression on right side of < is not of type int");
+		/**
+		 * f0 -> Identifier()
+		 * f1 -> "="
+		 * f2 -> Expression()
+		 * f3 -> ";"
+		*/
+		@Override
+		public void visit(AssignmentStatement n, Traversal.Frame<Type, String[]> f) throws Exception {
+			String[] argu = f.argu;
+
+			if (f.state++ == 0) {
+				String idName = n.f0.f0.toString();
+
+				Slot idSlot = resolve(n.f0);
+				if (idSlot == null)
+					throw new TypeCheckException(argu, "Identifier " + idName + " is undefined");
+
+				f.locals[0] = idSlot.getType();
+				f.visit(n.f2);
+				return;
+			}
 
-		return "boolean";
-	}
+			Type idType = (Type) f.locals[0];
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "+"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(PlusExpression n, String[] argu) throws Exception {
-		String exprType1 = n.f0.accept(this, argu);
+			Type exprType = f.result;
+			if (!symbols.typesMatch(exprType, idType))
+				throw new TypeCheckException(argu, "Type mismatch in assignment (" + exprType + " cannot be assigned to " + idType + ')');
 
-		if (!exprType1.equals("int"))
-			throw new TypeCheckException(argu, "Expression on left side of + is not of type int");
+			f.done(null);
+		}
 
-		String exprType2 = n.f2.accept(this, argu);
+		/**
+		 * f0 -> Identifier()
+		 * f1 -> "["
+		 * f2 -> Expression()
+		 * f3 -> "]"
+		 * f4 -> "="
+		 * f5 -> Expression()
+		 * f6 -> ";"
+		*/
+		@Override
+		public void visit(ArrayAssignmentStatement n, Traversal.Frame<Type, String[]> f) throws Exception {
+			String[] argu = f.argu;
+
+			switch (f.state++) {
+				case 0: {
+					String idName = n.f0.f0.toString();
+
+					Slot idSlot = resolve(n.f0);
+					if (idSlot == null || idSlot.getType() != Type.INT_ARRAY)
+						throw new TypeCheckException(argu, "Identifier " + idName + " is not of type int[]");
+
+					f.locals[0] = idName;
+					f.visit(n.f2);
+					break;
+				}
+
+				case 1: {
+					Type indexType = f.result;
+					if (indexType != Type.INT)
+						throw new TypeCheckException(argu, "Indexing expression for array " + f.locals[0] + "[] is not of type int");
+
+					f.visit(n.f5);
+					break;
+				}
+
+				default: {
+					Type exprType = f.result;
+					if (exprType != Type.INT)
+						throw new TypeCheckException(argu, "Expression assigned to member of array " + f.locals[0] + "[] is not of type int");
+
+					f.done(null);
+				}
+			}
+		}
 
-		if (!exprType2.equals("int"))
-			throw new TypeCheckException(argu, "Expression on right side of + is not of type int");
+		/**
+		 * f0 -> "if"
+		 * f1 -> "("
+		 * f2 -> Expression()
+		 * f3 -> ")"
+		 * f4 -> Statement()
+		 * f5 -> "else"
+		 * f6 -> Statement()
+		*/
+		@Override
+		public void visit(IfStatement n, Traversal.Frame<Type, String[]> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(n.f2);
+					break;
+
+				case 1: {
+					Type exprType = f.result;
+					if (exprType != Type.BOOLEAN)
+						throw new TypeCheckException(f.argu, "Expression used as \"if\" condition is not of type boolean");
+
+					f.visit(n.f4);
+					break;
+				}
+
+				case 2:
+					f.visit(n.f6);
+					break;
+
+				default:
+					f.done(null);
+			}
+		}
 
-		return "int";
-	}
+		/**
+		 * f0 -> "while"
+		 * f1 -> "("
+		 * f2 -> Expression()
+		 * f3 -> ")"
+		 * f4 -> Statement()
+		*/
+		@Override
+		public void visit(WhileStatement n, Traversal.Frame<Type, String[]> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(n.f2);
+					break;
+
+				case 1: {
+					Type exprType = f.result;
+					if (exprType != Type.BOOLEAN)
+						throw new TypeCheckException(f.argu, "Expression used as \"while\" condition is not of type boolean");
+
+					f.visit(n.f4);
+					break;
+				}
+
+				default:
+					f.done(null);
+			}
+		}
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "-"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(MinusExpression n, String[] argu) throws Exception {
-		String exprType1 = n.f0.accept(this, argu);
+		/**
+		 * f0 -> "System.out.println"
+		 * f1 -> "("
+		 * f2 -> Expression()
+		 * f3 -> ")"
+		 * f4 -> ";"
+		*/
+		@Override
+		public void visit(PrintStatement n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f2);
+				return;
+			}
 
-		if (!exprType1.equals("int"))
-			throw new TypeCheckException(argu, "Expression on left side of - is not of type int");
+			Type exprType = f.result;
+			if (exprType != Type.INT)
+				throw new TypeCheckException(f.argu, "Expression to be printed is not of type int");
 
-		String exprType2 = n.f2.accept(this, argu);
+			f.done(null);
+		}
 
-		if (!exprType2.equals("int"))
-			throw new TypeCheckException(argu, "Expression on right side of - is not of type int");
+		/* Expression Family */
+
+		/**
+		 * f0 -> AndExpression()
+		 *       | CompareExpression()
+		 *       | PlusExpression()
+		 *       | MinusExpression()
+		 *       | TimesExpression()
+		 *       | ArrayLookup()
+		 *       | ArrayLength()
+		 *       | MessageSend()
+		 *       | Clause()
+		*/
+		@Override
+		public void visit(Expression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f0.choice);
+			else
+				f.done(f.result);
+		}
 
-		return "int";
-	}
+		/* Both operands of a binary operator must be of type operandType. Result is of type resultType */
+		private void binary(Node left, Node right, String operator, Type operandType, Type resultType,
+		                    Traversal.Frame<Type, String[]> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(left);
+					break;
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "*"
-	 * f2 -> PrimaryExpression()
-	*/
-	@Override
-	public String visit(TimesExpression n, String[] argu) throws Exception {
-		String exprType1 = n.f0.accept(this, argu);
+				case 1: {
+					Type exprType1 = f.result;
 
-		if (!exprType1.equals("int"))
-			throw new TypeCheckException(argu, "Expression on left side of * is not of type int");
+					if (exprType1 != operandType)
+						throw new TypeCheckException(f.argu, "Expression on left side of " + operator + " is not of type " + operandType);
 
-		String exprType2 = n.f2.accept(this, argu);
+					f.visit(right);
+					break;
+				}
 
-		if (!exprType2.equals("int"))
-			throw new TypeCheckException(argu, "Expression on right side of * is not of type int");
+				default: {
+					Type exprType2 = f.result;
 
-		return "int";
-	}
+					if (exprType2 != operandType)
+						throw new TypeCheckException(f.argu, "Expression on right side of " + operator + " is not of type " + operandType);
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "["
-	 * f2 -> PrimaryExpression()
-	 * f3 -> "]"
-	*/
-	@Override
-	public String visit(ArrayLookup n, String[] argu) throws Exception {
-		String exprType1 = n.f0.accept(this, argu);
+					f.done(resultType);
+				}
+			}
+		}
 
-		if (!exprType1.equals("int[]"))
-			throw new TypeCheckException(argu, "Expression on left side of [] is not of type int[]");
+		/**
+		 * f0 -> Clause()
+		 * f1 -> "&&"
+		 * f2 -> Clause()
+		*/
+		@Override
+		public void visit(AndExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			binary(n.f0, n.f2, "&&", Type.BOOLEAN, Type.BOOLEAN, f);
+		}
 
-		String exprType2 = n.f2.accept(this, argu);
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "<"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(CompareExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			binary(n.f0, n.f2, "<", Type.INT, Type.BOOLEAN, f);
+		}
 
-		if (!exprType2.equals("int"))
-			throw new TypeCheckException(argu, "Expression inside [] is not of type int");
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "+"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(PlusExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			binary(n.f0, n.f2, "+", Type.INT, Type.INT, f);
+		}
 
-		return "int";
-	}
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "-"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(MinusExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			binary(n.f0, n.f2, "-", Type.INT, Type.INT, f);
+		}
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "."
-	 * f2 -> "length"
-	*/
-	@Override
-	public String visit(ArrayLength n, String[] argu) throws Exception {
-		String exprType = n.f0.accept(this, argu);
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "*"
+		 * f2 -> PrimaryExpression()
+		*/
+		@Override
+		public void visit(TimesExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			binary(n.f0, n.f2, "*", Type.INT, Type.INT, f);
+		}
 
-		if (!exprType.equals("int[]"))
-			throw new TypeCheckException(argu, "Expression on left side of array.length is not of type int[]");
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "["
+		 * f2 -> PrimaryExpression()
+		 * f3 -> "]"
+		*/
+		@Override
+		public void visit(ArrayLookup n, Traversal.Frame<Type, String[]> f) throws Exception {
+			switch (f.state++) {
+				case 0:
+					f.visit(n.f0);
+					break;
+
+				case 1: {
+					Type exprType1 = f.result;
+
+					if (exprType1 != Type.INT_ARRAY)
+						throw new TypeCheckException(f.argu, "Expression on left side of [] is not of type int[]");
+
+					f.visit(n.f2);
+					break;
+				}
+
+				default: {
+					Type exprType2 = f.result;
+
+					if (exprType2 != Type.INT)
+						throw new TypeCheckException(f.argu, "Expression inside [] is not of type int");
+
+					f.done(Type.INT);
+				}
+			}
+		}
 
-		return "int";
-	}
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "."
+		 * f2 -> "length"
+		*/
+		@Override
+		public void visit(ArrayLength n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f0);
+				return;
+			}
 
-	/**
-	 * f0 -> PrimaryExpression()
-	 * f1 -> "."
-	 * f2 -> Identifier()
-	 * f3 -> "("
-	 * f4 -> ( ExpressionList() )?
-	 * f5 -> ")"
-	*/
-	@Override
-	public String visit(MessageSend n, String[] argu) throws Exception {
-		// Class name
-		String exprType = n.f0.accept(this, argu);
+			Type exprType = f.result;
 
-		ClassSymbol callClass = symbols.getClass(exprType);
-		if (callClass == null)
-			throw new TypeCheckException(argu, "Attempt to call method on non-class (" + exprType + ')');
+			if (exprType != Type.INT_ARRAY)
+				throw new TypeCheckException(f.argu, "Expression on left side of array.length is not of type int[]");
 
-		// Method name
-		String idName = n.f2.accept(this, argu);
+			f.done(Type.INT);
+		}
 
-		// Pick up arguments
-		String argList = null;
-		if (n.f4.present())
-			argList = n.f4.accept(this, argu);
+		/**
+		 * f0 -> PrimaryExpression()
+		 * f1 -> "."
+		 * f2 -> Identifier()
+		 * f3 -> "("
+		 * f4 -> ( ExpressionList() )?
+		 * f5 -> ")"
+		 *
+		 * ExpressionList():
+		 * f0 -> Expression()
+		 * f1 -> ( "," Expression() )*
+		*/
+		@Override
+		public void visit(MessageSend n, Traversal.Frame<Type, String[]> f) throws Exception {
+			String[] argu = f.argu;
+			int step = f.state++;
+
+			if (step == 0) {
+				f.visit(n.f0);
+				return;
+			}
 
-		MethodSymbol classMethod = callClass.getMethod(idName);
-		if (classMethod == null)
-			throw new TypeCheckException(argu, "class " + callClass.getName() + " has no method named " + idName + "()");
+			if (step == 1) {
+				// Class name
+				Type exprType = f.result;
 
-		// Compare temporary method construct with signature of normal class method
-		MethodSymbol callMethod = new MethodSymbol(classMethod.getType(), idName);
+				ClassSymbol callClass = exprType.getClassSymbol();
+				if (callClass == null)
+					throw new TypeCheckException(argu, "Attempt to call method on non-class (" + exprType + ')');
 
-		if (argList != null) {
-			StringTokenizer args = new StringTokenizer(argList, ",");
-			int counter = 0;       /* Used to get hashing to work */
+				f.locals[0] = callClass;
 
-			while (args.hasMoreTokens()) {
-				String argType = args.nextToken();
-				callMethod.addParameter(new Symbol(argType, "a" + counter++));
-			}
-		}
+				// Method name
+				f.locals[1] = n.f2.f0.toString();
 
-		if (!symbols.compatibleCall(classMethod, callMethod))
-			throw new TypeCheckException(argu, "Incorrect use of method " + callClass.getName() + '.' + callMethod.getName() + "()");
+				if (n.f4.present())
+					f.visit(((ExpressionList) n.f4.node).f0);
+				else
+					call(0, f);
 
-		return callMethod.getType();
-	}
+				return;
+			}
 
-	/**
-	 * f0 -> Expression()
-	 * f1 -> ExpressionTail()
-	*/
-	@Override
-	public String visit(ExpressionList n, String[] argu) throws Exception {
-		String[] argList = new String[3];
+			/* Collect argument types from expressions: Pushed, as calls in arguments push (and pop) theirs on top */
+			if (argumentCount == arguments.length)
+				arguments = Arrays.copyOf(arguments, argumentCount * 2);
 
-		/* Carry class and method names to lowe levels of recursion as normal */
-		argList[0] = argu[0];
-		argList[1] = argu[1];
+			arguments[argumentCount++] = f.result;
 
-		/* Append arguments types from expressions */
-		argList[2] = n.f0.accept(this, argList);
-		n.f1.accept(this, argList);
+			NodeListOptional rest = ((ExpressionList) n.f4.node).f1.f0;
+			int next = step - 2;
 
-		return argList[2];
-	}
+			if (next < rest.size())
+				f.visit(((ExpressionTerm) rest.elementAt(next)).f1);
+			else
+				call(1 + rest.size(), f);
+		}
 
-	/**
-	 * f0 -> ","
-	 * f1 -> Expression()
-	*/
-	@Override
-	public String visit(ExpressionTerm n, String[] argu) throws Exception {
-		argu[2] += "," + n.f1.accept(this, argu);
-		return null;
-	}
+		/* MessageSend, the types of its count arguments on top of the stack */
+		private void call(int count, Traversal.Frame<Type, String[]> f) throws Exception {
+			String[] argu = f.argu;
+			ClassSymbol callClass = (ClassSymbol) f.locals[0];
+			String idName = (String) f.locals[1];
 
-	/**
-	 * f0 -> IntegerLiteral()
-	 *       | TrueLiteral()
-	 *       | FalseLiteral()
-	 *       | Identifier()
-	 *       | ThisExpression()
-	 *       | ArrayAllocationExpression()
-	 *       | AllocationExpression()
-	 *       | BracketExpression()
-	*/
-	@Override
-	public String visit(PrimaryExpression n, String[] argu) throws Exception {
-		String exprType = n.f0.accept(this, argu);
+			int from = argumentCount -= count;
 
-		if (symbols.isValidType(exprType))
-			return exprType;
+			MethodSymbol classMethod = callClass.getMethod(idName);
+			if (classMethod == null)
+				throw new TypeCheckException(argu, "class " + callClass.getName() + " has no method named " + idName + "()");
 
-		if (exprType.equals("this"))
-			return argu[0];                     /* The class name */
+			if (!symbols.compatibleCall(classMethod, arguments, from, count))
+				throw new TypeCheckException(argu, "Incorrect use of method " + callClass.getName() + '.' + idName + "()");
 
-		/* At this point, exprType is an identifier */
-		String idType = symbols.getFieldType(argu[0], argu[1], exprType);
-		if (idType == null)
-			throw new TypeCheckException(argu, "Identifier " + exprType + " is undefined");
+			typed(f, classMethod.getType());
+		}
 
-		return idType;
-	}
+		/**
+		 * f0 -> NotExpression()
+		 *       | PrimaryExpression()
+		*/
+		@Override
+		public void visit(Clause n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f0.choice);
+			else
+				f.done(f.result);
+		}
 
-	/**
-	 * f0 -> <INTEGER_LITERAL>
-	*/
-	@Override
-	public String visit(IntegerLiteral n, String[] argu) throws Exception {
-		return "int";
-	}
+		/**
+		 * f0 -> IntegerLiteral()
+		 *       | TrueLiteral()
+		 *       | FalseLiteral()
+		 *       | Identifier()
+		 *       | ThisExpression()
+		 *       | ArrayAllocationExpression()
+		 *       | AllocationExpression()
+		 *       | BracketExpression()
+		*/
+		@Override
+		public void visit(PrimaryExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			/* All but identifiers have a type of their own: Kept for those of no fixed type, "this" and "new C()" */
+			if (n.f0.which != 3) {
+				if (f.state++ == 0)
+					f.visit(n.f0.choice);
+				else if (n.f0.choice instanceof ThisExpression || n.f0.choice instanceof AllocationExpression)
+					typed(f, f.result);
+				else
+					f.done(f.result);
+
+				return;
+			}
 
-	/**
-	 * f0 -> "true"
-	*/
-	@Override
-	public String visit(TrueLiteral n, String[] argu) throws Exception {
-		return "boolean";
-	}
+			String[] argu = f.argu;
+			Identifier id = (Identifier) n.f0.choice;
+			String idName = id.f0.toString();
+			Slot idSlot = resolve(id);
 
-	/**
-	 * f0 -> "false"
-	*/
-	@Override
-	public String visit(FalseLiteral n, String[] argu) throws Exception {
-		return "boolean";
-	}
+			/* A class name stands for its type */
+			ClassSymbol idClass = symbols.getClass(idName);
+			if (idClass != null) {
+				typed(f, idClass.getType());
+				return;
+			}
 
-	/**
-	 * f0 -> "this"
-	*/
-	@Override
-	public String visit(ThisExpression n, String[] argu) throws Exception {
-		return "this";
-	}
+			if (idSlot == null)
+				throw new TypeCheckException(argu, "Identifier " + idName + " is undefined");
 
-	/**
-	 * f0 -> "new"
-	 * f1 -> "int"
-	 * f2 -> "["
-	 * f3 -> Expression()
-	 * f4 -> "]"
-	*/
-	@Override
-	public String visit(ArrayAllocationExpression n, String[] argu) throws Exception {
-		String exprType = n.f3.accept(this, argu);
+			f.done(idSlot.getType());
+		}
 
-		if (!exprType.equals("int"))
-			throw new TypeCheckException(argu, "Expression used for size of array allocation must be int");
+		/**
+		 * f0 -> "new"
+		 * f1 -> "int"
+		 * f2 -> "["
+		 * f3 -> Expression()
+		 * f4 -> "]"
+		*/
+		@Override
+		public void visit(ArrayAllocationExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f3);
+				return;
+			}
 
-		return "int[]";
-	}
+			Type exprType = f.result;
 
-	/**
-	 * f0 -> "new"
-	 * f1 -> Identifier()
-	 * f2 -> "("
-	 * f3 -> ")"
-	*/
-	@Override
-	public String visit(AllocationExpression n, String[] argu) throws Exception {
-		String className = n.f1.accept(this, argu);
+			if (exprType != Type.INT)
+				throw new TypeCheckException(f.argu, "Expression used for size of array allocation must be int");
 
-		if (!symbols.hasClass(className))
-			throw new TypeCheckException(argu, "Type " + className + "is not a defined class");
+			f.done(Type.INT_ARRAY);
+		}
 
-		return className;
-	}
+		/**
+		 * f0 -> "!"
+		 * f1 -> Clause()
+		*/
+		@Override
+		public void visit(NotExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0) {
+				f.visit(n.f1);
+				return;
+			}
 
-	/**
-	 * f0 -> "!"
-	 * f1 -> Clause()
-	*/
-	@Override
-	public String visit(NotExpression n, String[] argu) throws Exception {
-		String exprType = n.f1.accept(this, argu);
+			Type exprType = f.result;
 
-		if (!exprType.equals("boolean"))
-			throw new TypeCheckException(argu, "Expression used in logical \"not\" is not of type boolean");
+			if (exprType != Type.BOOLEAN)
+				throw new TypeCheckException(f.argu, "Expression used in logical \"not\" is not of type boolean");
 
-		return "boolean";
-	}
+			f.done(Type.BOOLEAN);
+		}
 
-	/**
-	 * f0 -> "("
-	 * f1 -> Expression()
-	 * f2 -> ")"
-	*/
-	@Override
-	public String visit(BracketExpression n, String[] argu) throws Exception {
-		return n.f1.accept(this, argu);
+		/**
+		 * f0 -> "("
+		 * f1 -> Expression()
+		 * f2 -> ")"
+		*/
+		@Override
+		public void visit(BracketExpression n, Traversal.Frame<Type, String[]> f) throws Exception {
+			if (f.state++ == 0)
+				f.visit(n.f1);
+			else
+				f.done(f.result);
+		}
 	}
 }
@@ -0,0 +1,72 @@
+#!/bin/bash
+
+# Compile programs of C classes in chains D deep (C/D chains), with a subtype check
+# (assignment and argument) against the chain's root for every class, and print the
+# --stats line of each. The type check time should not depend on D.
+# Usage: ./hierarchy.sh [C:D ...]  (default: 10000:10 10000:100 10000:1000)
+# Extra flags for the JVM or Main go in JAVA_OPTS / MAIN_OPTS.
+
+SHAPES=("$@")
+[[ ${#SHAPES[@]} -eq 0 ]] && SHAPES=(10000:10 10000:100 10000:1000)
+
+JAVA_OPTS=${JAVA_OPTS:-"-Xmx4g"}
+MAIN_OPTS=${MAIN_OPTS:-"--parser descent"}
+
+DIR=$(mktemp -d)
+trap 'rm -rf "$DIR"' EXIT
+
+generate() {
+	awk -v classes="$1" -v depth="$2" '
+	BEGIN {
+		chains = int(classes / depth)
+
+		print "class Hierarchy {"
+		print "\tpublic static void main(String[] a) {"
+		print "\t\tSystem.out.println(new Check().run());"
+		print "\t}"
+		print "}"
+
+		for (k = 0; k < chains; ++k) {
+			print "class C" k "_0 {"
+			print "\tpublic int s(C" k "_0 p) {"
+			print "\t\treturn 0;"
+			print "\t}"
+			print "}"
+
+			for (l = 1; l < depth; ++l)
+				print "class C" k "_" l " extends C" k "_" (l - 1) " {}"
+		}
+
+		print "class Check {"
+		print "\tpublic int run() {"
+		print "\t\tint r;"
+		for (k = 0; k < chains; ++k)
+			print "\t\tC" k "_0 b" k ";"
+		print "\t\tr = 0;"
+
+		for (k = 0; k < chains; ++k) {
+			for (l = 0; l < depth; ++l) {
+				print "\t\tb" k " = new C" k "_" l "();"
+				print "\t\tr = b" k ".s(new C" k "_" l "());"
+			}
+		}
+
+		print "\t\treturn r;"
+		print "\t}"
+		print "}"
+	}'
+}
+
+for SHAPE in "${SHAPES[@]}"; do
+	C=${SHAPE%:*}
+	D=${SHAPE#*:}
+	FILE="$DIR/hierarchy_${C}_$D.java"
+	generate "$C" "$D" > "$FILE"
+
+	START=$(date +%s%N)
+	STATS=$(java $JAVA_OPTS Main $MAIN_OPTS --stats - "$FILE" 2>&1 | grep '^{')
+	END=$(date +%s%N)
+
+	printf '%6d x %-5d  %6d ms  %s\n' "$C" "$D" $(( (END - START) / 1000000 )) "${STATS:-FAILED}"
+	rm -f "$DIR"/*.ll
+done
@@ -0,0 +1,15 @@
+package ir;
+
+/* A function's argument, %name */
+public class Argument extends Value {
+	private final String name;
+
+	Argument(LlvmType type, String name) {
+		super(type);
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
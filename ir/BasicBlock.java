@@ -0,0 +1,112 @@
+package ir;
+
+import java.util.*;
+
+/* A basic block: Instructions up to (and including) a terminator. Labelled prefix + number
+ * ("not_oob3"), except for the entry block of a function ("entry", if a phi needs a label) */
+public class BasicBlock {
+	private final String prefix;
+	private final int number;
+
+	private final List<Instruction> instructions = new ArrayList<>();
+	private final List<Instruction> view = Collections.unmodifiableList(instructions);
+
+	private Function parent;
+
+	int order;                           /* Scratch, for passes: The block's place in their orderings */
+
+	BasicBlock(String prefix, int number) {
+		this.prefix = prefix;
+		this.number = number;
+	}
+
+	/* Null for the entry block */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public List<Instruction> getInstructions() {
+		return view;
+	}
+
+	/* Null while the block is still being built */
+	public Instruction getTerminator() {
+		Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+
+		return (last != null && last.isTerminator()) ? last : null;
+	}
+
+	void append(Instruction instruction) {
+		instructions.add(instruction);
+		instruction.setParent(this);
+	}
+
+	/* Just before the terminator */
+	void insertBeforeTerminator(Instruction instruction) {
+		instructions.add(instructions.size() - 1, instruction);
+		instruction.setParent(this);
+	}
+
+	/* In place of the terminator, which is erased (and so no longer a user of its operands) */
+	void setTerminator(Instruction terminator) {
+		Instruction old = instructions.set(instructions.size() - 1, terminator);
+		old.erase();
+		terminator.setParent(this);
+
+		if (parent != null)
+			parent.dominators = null;
+
+		if (old.getComment() != null && terminator.getComment() == null)
+			terminator.setComment(old.getComment());
+		if (old.hasGap())
+			terminator.setGap();
+	}
+
+	/* Before all the others, in order (phis) */
+	void prepend(List<Instruction> first) {
+		instructions.addAll(0, first);
+
+		for (Instruction instruction: first)
+			instruction.setParent(this);
+	}
+
+	/* Drop the instructions erased from the block. The comment of an erased one goes on to the
+	 * next one kept, unless a blank line came after it (the end of what it was about) */
+	void sweep() {
+		Object[] comment = null;
+		int kept = 0;
+
+		for (int i = 0; i < instructions.size(); ++i) {
+			Instruction instruction = instructions.get(i);
+
+			if (instruction.getParent() != this) {
+				if (instruction.getComment() != null)
+					comment = instruction.getComment();
+				if (instruction.hasGap())
+					comment = null;
+
+				continue;
+			}
+
+			if (comment != null && instruction.getComment() == null)
+				instruction.setComment(comment);
+			comment = null;
+
+			instructions.set(kept++, instruction);
+		}
+
+		instructions.subList(kept, instructions.size()).clear();
+	}
+
+	public Function getParent() {
+		return parent;
+	}
+
+	void setParent(Function parent) {
+		this.parent = parent;
+	}
+}
@@ -0,0 +1,1039 @@
+package ir;
+
+import java.util.*;
+
+import ir.Instruction.Opcode;
+
+/* Takes out the bounds checks of array accesses that can't fail, once Mem2Reg has made variables
+ * SSA values. A check, as the LLVMVisitor generates it, is a branch on "icmp ult index, length"
+ * (the length loaded from the array) to the access, or to a block calling @throw_oob.
+ *
+ * A check goes if the branches leading to it already compared the index to the length of the same
+ * array: With "icmp ult" (an earlier check), or with "icmp slt" ("i < a.length") for an index that
+ * is never negative. Constants and lengths aren't, nor are phis of such values, or such values plus
+ * one where a comparison keeps them below some int (counters of loops).
+ *
+ * Other checks, in innermost loops "while (i < n)" where i starts at s and goes up by one, may be
+ * of a[i + k] (in the body, so i < n there). If a and n stay the same all through the loop, none of
+ * them fails as long as s + k >= 0 and n + k <= a.length. Such a loop is versioned: A guard before
+ * it tests that, once, and goes on either to a copy of the loop without these checks (blocks
+ * "unchecked_..."), or to the loop as it was. Fields (arrays, or ints in n) stay the same in loops
+ * that don't call methods or store to them. Arrays that may be null are tested before their
+ * lengths are loaded.
+ *
+ * Code nests without bound, so walks keep their own stacks: Only the expressions computed again
+ * for guards recurse, to a small depth */
+public class BoundsChecks {
+	private static final int FACTS = 16;           /* Looked at, of those on a value */
+	private static final int DEPTH = 8;            /* Of the expressions computed for a guard */
+	private static final int OFFSET = 1 << 20;     /* Of indices from a loop's counter, either way */
+
+	/* A comparison known to hold (or, if !truth, to fail) where the walk is: Of some value with
+	 * right. Those of the same value are chained, the latest first */
+	private static class Fact {
+		final Opcode opcode;
+		final Value right;
+		final boolean truth;
+		final Fact next;
+
+		Fact(Opcode opcode, Value right, boolean truth, Fact next) {
+			this.opcode = opcode;
+			this.right = right;
+			this.truth = truth;
+			this.next = next;
+		}
+	}
+
+	private final Function function;
+
+	/* The blocks, in reverse postorder (BasicBlock.order is the index here), and the dominator
+	 * tree. Whether each block ends in a check, and how many do */
+	private Dominators dominators;
+	private BasicBlock[] blocks;
+	private boolean[] checks;
+	private int remaining;
+
+	/* While walking the tree: The facts on each value, and the values given facts (the latest
+	 * last), to forget them on leaving a block */
+	private final Map<Value, Fact> facts = new IdentityHashMap<>();
+	private Value[] undo = new Value[16];
+	private int undoSize;
+
+	/* For walk(): The blocks still to be entered or left, and undoSize on entering each */
+	private int[] stack;
+	private int[] marks;
+
+	/* Adds of one that can't overflow, values never negative, and the blocks whose checks pass */
+	private final Set<Instruction> bounded = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+	private final Set<Value> nonNegative = Collections.newSetFromMap(new IdentityHashMap<Value, Boolean>());
+	private final List<BasicBlock> passing = new ArrayList<>();
+
+	/* Of the loop being versioned: Its blocks (member[b] is its header's order + 1 for them, as
+	 * stamp), in the function's order of blocks. Whether it calls any methods, and the fields it
+	 * stores to (by offset) */
+	private int[] member;
+	private int stamp;
+	private int[] loop;
+	private int loopSize;
+	private boolean calls;
+	private Set<Integer> stored;
+
+	/* For its guard: Values computed again (fields by offset, lengths by array), the instructions
+	 * that do it before any array is known not to be null, and those after. The arrays to test.
+	 * The maps, like those below, are made only if some checks are left for versionLoops() */
+	private Map<Value, Value> again;
+	private Map<Integer, Value> fields;
+	private Map<Value, Value> lengths;
+	private final List<Instruction> early = new ArrayList<>();
+	private final List<Instruction> late = new ArrayList<>();
+	private final List<Value> nullable = new ArrayList<>();
+
+	/* The instructions of the loop, and their copies */
+	private final List<Instruction> originals = new ArrayList<>();
+	private final List<Instruction> made = new ArrayList<>();
+
+	/* Blocks made, to go before or after some block in the function, and those that throw but are
+	 * no longer branched to */
+	private Map<BasicBlock, List<BasicBlock>> before;
+	private Map<BasicBlock, List<BasicBlock>> after;
+	private final List<BasicBlock> dead = new ArrayList<>();
+
+	private BoundsChecks(Function function) {
+		this.function = function;
+	}
+
+	public static void run(Function function) {
+		new BoundsChecks(function).eliminate();
+	}
+
+	private void eliminate() {
+		/* Code generation leaves no block unreachable. Should one be, the function stays as is */
+		if (!order())
+			return;
+
+		walk(false);
+		findNonNegative();
+		walk(true);
+
+		for (BasicBlock block: passing)
+			uncheck(block);
+
+		/* Blocks that throw branch nowhere, so the tree (and other blocks' predecessors) stays
+		 * as it was without the branches to them */
+		if (remaining > 0)
+			versionLoops();
+
+		finish();
+	}
+
+	/* The dominator tree, and the checks. False if there are none (or some block is unreachable) */
+	private boolean order() {
+		dominators = Dominators.of(function);
+		if (dominators == null)
+			return false;
+
+		blocks = dominators.blocks;
+		checks = new boolean[blocks.length];
+
+		for (int b = 0; b < blocks.length; ++b) {
+			if (isCheck(blocks[b])) {
+				checks[b] = true;
+				++remaining;
+			}
+		}
+
+		return remaining > 0;
+	}
+
+	/* Put the blocks in order again, with those made, and without those no longer branched to */
+	private void finish() {
+		boolean versioned = before != null && !(before.isEmpty() && after.isEmpty());
+		if (dead.isEmpty() && !versioned)
+			return;
+
+		for (BasicBlock block: dead) {
+			block.order = -1;
+
+			List<Instruction> instructions = block.getInstructions();
+			for (int j = 0; j < instructions.size(); ++j)
+				instructions.get(j).erase();
+		}
+
+		List<BasicBlock> all = function.getBlocks();
+		List<BasicBlock> kept = new ArrayList<>(all.size());
+
+		for (int i = 0; i < all.size(); ++i) {
+			BasicBlock block = all.get(i);
+
+			if (versioned && before.containsKey(block))
+				kept.addAll(before.get(block));
+
+			if (block.order >= 0)
+				kept.add(block);
+
+			if (versioned && after.containsKey(block))
+				kept.addAll(after.get(block));
+		}
+
+		function.setBlocks(kept);
+	}
+
+	/* Down the dominator tree, knowing the comparisons on the way there: Finds the adds that
+	 * can't overflow (first), or the checks that pass (then) */
+	private void walk(boolean prove) {
+		int n = blocks.length;
+
+		/* Preorder: A block is pushed once more (as ~b) to be left, after its children */
+		if (stack == null) {
+			stack = new int[2 * n];
+			marks = new int[n];
+		}
+
+		int depth = 0;
+
+		stack[depth++] = 0;
+
+		while (depth > 0) {
+			int b = stack[--depth];
+
+			if (b < 0) {
+				forget(marks[~b]);
+				continue;
+			}
+
+			marks[b] = undoSize;
+			stack[depth++] = ~b;
+
+			learn(b);
+
+			if (!prove && undoSize > 0)
+				findBounded(blocks[b]);
+			else if (checks[b] && passes(blocks[b]))
+				passing.add(blocks[b]);
+
+			for (int c = dominators.child[b]; c >= 0; c = dominators.sibling[c])
+				stack[depth++] = c;
+		}
+	}
+
+	/* What the branch to a block tells, if it is the only way there */
+	private void learn(int b) {
+		int[] predecessors = dominators.predecessors[b];
+		if (predecessors.length != 1)
+			return;
+
+		Instruction branch = blocks[predecessors[0]].getTerminator();
+		if (branch.getOpcode() != Opcode.BR || branch.getOperandCount() != 1 || branch.getBlock(0) == branch.getBlock(1))
+			return;
+
+		Value condition = branch.getOperand(0);
+		if (!(condition instanceof Instruction) || !((Instruction) condition).getOpcode().isComparison())
+			return;
+
+		Instruction comparison = (Instruction) condition;
+		Value left = comparison.getOperand(0);
+
+		facts.put(left, new Fact(comparison.getOpcode(), comparison.getOperand(1), branch.getBlock(0) == blocks[b], facts.get(left)));
+
+		if (undoSize == undo.length)
+			undo = Arrays.copyOf(undo, undoSize * 2);
+
+		undo[undoSize++] = left;
+	}
+
+	private void forget(int mark) {
+		while (undoSize > mark) {
+			Value left = undo[--undoSize];
+			Fact next = facts.get(left).next;
+
+			if (next != null)
+				facts.put(left, next);
+			else
+				facts.remove(left);
+
+			undo[undoSize] = null;
+		}
+	}
+
+	/* Adds of one to a value known to be less than some other: They can't overflow */
+	private void findBounded(BasicBlock block) {
+		List<Instruction> instructions = block.getInstructions();
+
+		for (int j = 0; j < instructions.size(); ++j) {
+			Instruction instruction = instructions.get(j);
+
+			if (instruction.getOpcode() != Opcode.ADD)
+				continue;
+
+			Value value = incremented(instruction);
+			if (value != null && isBelow(value))
+				bounded.add(instruction);
+		}
+	}
+
+	private boolean isBelow(Value value) {
+		int i = 0;
+
+		for (Fact fact = facts.get(value); fact != null && i < FACTS; fact = fact.next, ++i) {
+			if (fact.truth && (fact.opcode == Opcode.ICMP_SLT || (fact.opcode == Opcode.ICMP_ULT && isLength(fact.right))))
+				return true;
+			if (!fact.truth && fact.opcode == Opcode.ICMP_SGE)
+				return true;
+		}
+
+		return false;
+	}
+
+	/* Optimistically: Phis and bounded adds are taken to be never negative, until some value they
+	 * take may be */
+	private void findNonNegative() {
+		List<Instruction> worklist = new ArrayList<>(bounded);
+
+		for (BasicBlock block: blocks) {
+			List<Instruction> instructions = block.getInstructions();
+
+			for (int j = 0; j < instructions.size() && instructions.get(j).getOpcode() == Opcode.PHI; ++j) {
+				if (instructions.get(j).getType() == LlvmType.I32)
+					worklist.add(instructions.get(j));
+			}
+		}
+
+		nonNegative.addAll(worklist);
+
+		while (!worklist.isEmpty()) {
+			Instruction instruction = worklist.remove(worklist.size() - 1);
+
+			if (!nonNegative.contains(instruction) || holds(instruction))
+				continue;
+
+			nonNegative.remove(instruction);
+
+			for (int i = 0; i < instruction.getUserCount(); ++i) {
+				if (nonNegative.contains(instruction.getUser(i)))
+					worklist.add(instruction.getUser(i));
+			}
+		}
+	}
+
+	private boolean holds(Instruction instruction) {
+		if (instruction.getOpcode() != Opcode.PHI)
+			return isNonNegative(incremented(instruction));
+
+		for (int i = 0; i < instruction.getOperandCount(); ++i) {
+			if (!isNonNegative(instruction.getOperand(i)))
+				return false;
+		}
+
+		return true;
+	}
+
+	private boolean isNonNegative(Value value) {
+		Integer constant = intValue(value);
+
+		return (constant != null) ? constant >= 0 : nonNegative.contains(value) || isLength(value);
+	}
+
+	/* Whether the check ending a block can't fail: An earlier check of the index against the same
+	 * array passed, or the index is less than the array's length, and not negative */
+	private boolean passes(BasicBlock block) {
+		Value index = index(block);
+		Value array = array(block);
+		int i = 0;
+
+		for (Fact fact = facts.get(index); fact != null && i < FACTS; fact = fact.next, ++i) {
+			if (!fact.truth || !isLengthOf(fact.right, array))
+				continue;
+
+			if (fact.opcode == Opcode.ICMP_ULT || (fact.opcode == Opcode.ICMP_SLT && isNonNegative(index)))
+				return true;
+		}
+
+		return false;
+	}
+
+	/* The check ending a block passes: It branches straight to the access, and the comparison
+	 * (and length) go, unless something else uses them. So does the block that throws, if this
+	 * (not a copy) was the only way there */
+	private void uncheck(BasicBlock block) {
+		Instruction branch = block.getTerminator();
+		Instruction comparison = (Instruction) branch.getOperand(0);
+		Instruction length = (Instruction) comparison.getOperand(1);
+		BasicBlock oob = branch.getBlock(1);
+
+		Instruction jump = new Instruction(Opcode.BR, LlvmType.VOID, -1);
+		jump.setBlocks(branch.getBlock(0));
+		block.setTerminator(jump);
+
+		if (block.order >= 0) {
+			checks[block.order] = false;
+			--remaining;
+
+			if (dominators.predecessors[oob.order].length == 1)
+				dead.add(oob);
+		}
+
+		if (comparison.getUserCount() == 0) {
+			BasicBlock parent = comparison.getParent();
+			comparison.erase();
+			parent.sweep();
+
+			if (length.getUserCount() == 0) {
+				parent = length.getParent();
+				length.erase();
+				parent.sweep();
+			}
+		}
+	}
+
+	private void versionLoops() {
+		int n = blocks.length;
+
+		/* The block branching back to each loop header (-2 if several), -1 for other blocks */
+		int[] latches = new int[n];
+		Arrays.fill(latches, -1);
+
+		for (int b = 0; b < n; ++b) {
+			for (int i = 0; i < Dominators.successorCount(blocks[b]); ++i) {
+				int header = Dominators.successor(blocks[b], i).order;
+
+				if (dominators.dominates(header, b))
+					latches[header] = (latches[header] == -1) ? b : -2;
+			}
+		}
+
+		/* Where each block is in the function */
+		int[] positions = new int[n];
+		List<BasicBlock> all = function.getBlocks();
+		for (int i = 0; i < all.size(); ++i)
+			positions[all.get(i).order] = i;
+
+		member = new int[n];
+		loop = new int[n];
+		stored = new HashSet<>();
+
+		again = new IdentityHashMap<>();
+		fields = new HashMap<>();
+		lengths = new IdentityHashMap<>();
+		before = new IdentityHashMap<>();
+		after = new IdentityHashMap<>();
+
+		for (int h = 0; h < n; ++h) {
+			if (latches[h] >= 0 && collect(h, latches, positions))
+				version(h, latches[h]);
+		}
+	}
+
+	/* The blocks of the loop headed by h: Those from which its latch can be reached without
+	 * passing h. False if it has another loop in it */
+	private boolean collect(int h, int[] latches, int[] positions) {
+		stamp = h + 1;
+		loopSize = 0;
+
+		member[h] = stamp;
+		loop[loopSize++] = h;
+
+		int latch = latches[h];
+		if (member[latch] != stamp) {
+			member[latch] = stamp;
+			loop[loopSize++] = latch;
+		}
+
+		/* Those in loop from here on are still to be looked at */
+		for (int next = 1; next < loopSize; ++next) {
+			int b = loop[next];
+
+			if (b != h && latches[b] != -1)
+				return false;
+
+			for (int p: dominators.predecessors[b]) {
+				if (member[p] != stamp) {
+					member[p] = stamp;
+					loop[loopSize++] = p;
+				}
+			}
+		}
+
+		/* In the function's order: Sorted by position (as longs, to keep with the block) */
+		long[] sorted = new long[loopSize];
+		for (int i = 0; i < loopSize; ++i)
+			sorted[i] = ((long) positions[loop[i]] << 32) | loop[i];
+
+		Arrays.sort(sorted);
+		for (int i = 0; i < loopSize; ++i)
+			loop[i] = (int) sorted[i];
+
+		return true;
+	}
+
+	private boolean inLoop(BasicBlock block) {
+		return block.order >= 0 && member[block.order] == stamp;
+	}
+
+	private boolean inLoop(Value value) {
+		return value instanceof Instruction && inLoop(((Instruction) value).getParent());
+	}
+
+	/* The loop headed by h, if it counts up by one to some n that stays the same: Versioned, should
+	 * the guard allow taking out any of its checks */
+	private void version(int h, int latch) {
+		BasicBlock header = blocks[h];
+		if (!"loop_start".equals(header.getPrefix()))
+			return;
+
+		/* Entered from a single block (the preheader), that goes nowhere else */
+		int[] predecessors = dominators.predecessors[h];
+		if (predecessors.length != 2)
+			return;
+
+		int p = (predecessors[0] == latch) ? predecessors[1] : predecessors[0];
+		BasicBlock preheader = blocks[p];
+		Instruction entry = preheader.getTerminator();
+
+		if (inLoop(preheader) || entry.getOpcode() != Opcode.BR || entry.getOperandCount() != 0)
+			return;
+
+		/* Left only by a single branch (or by throwing) */
+		BasicBlock exiting = null;
+		BasicBlock exit = null;
+
+		calls = false;
+		stored.clear();
+
+		for (int i = 0; i < loopSize; ++i) {
+			BasicBlock block = blocks[loop[i]];
+
+			for (int j = 0; j < Dominators.successorCount(block); ++j) {
+				BasicBlock successor = Dominators.successor(block, j);
+
+				if (inLoop(successor) || throwsOob(successor))
+					continue;
+				if (exiting != null)
+					return;
+
+				exiting = block;
+				exit = successor;
+			}
+
+			List<Instruction> instructions = block.getInstructions();
+			for (int j = 0; j < instructions.size(); ++j) {
+				Instruction instruction = instructions.get(j);
+
+				if (instruction.getOpcode() == Opcode.CALL && !(instruction.getOperand(0) instanceof Global))
+					calls = true;
+				else if (instruction.getOpcode() == Opcode.STORE && fieldOffset(instruction.getOperand(1)) != null)
+					stored.add(fieldOffset(instruction.getOperand(1)));
+			}
+		}
+
+		if (exiting == null)
+			return;
+
+		/* That branch is on "counter < bound", to the body, the only way there */
+		Instruction branch = exiting.getTerminator();
+		if (branch.getOperandCount() != 1 || branch.getBlock(1) != exit || !is(branch.getOperand(0), Opcode.ICMP_SLT))
+			return;
+
+		BasicBlock body = branch.getBlock(0);
+		if (!inLoop(body) || dominators.predecessors[body.order].length != 1 || dominators.predecessors[exit.order].length != 1 ||
+		    !dominators.dominates(body.order, latch))
+			return;
+
+		Instruction condition = (Instruction) branch.getOperand(0);
+		Value bound = condition.getOperand(1);
+
+		if (!is(condition.getOperand(0), Opcode.PHI) || condition.getOperand(0).getType() != LlvmType.I32)
+			return;
+
+		Instruction counter = (Instruction) condition.getOperand(0);
+		if (counter.getParent() != header || counter.getOperandCount() != 2)
+			return;
+
+		int fromPreheader = (counter.getBlock(0) == preheader) ? 0 : 1;
+		Value start = counter.getOperand(fromPreheader);
+		Value next = counter.getOperand(1 - fromPreheader);
+
+		if (!is(next, Opcode.ADD) || incremented((Instruction) next) != counter || !invariant(bound, 0))
+			return;
+
+		/* The checks in the body of an index (counter + k), on an array that stays the same */
+		List<BasicBlock> covered = new ArrayList<>();
+		List<Integer> offsets = new ArrayList<>();
+
+		for (int i = 0; i < loopSize; ++i) {
+			int b = loop[i];
+			if (!checks[b] || !dominators.dominates(body.order, b))
+				continue;
+
+			Integer offset = offset(index(blocks[b]), counter);
+			if (offset != null && invariant(array(blocks[b]), 0)) {
+				covered.add(blocks[b]);
+				offsets.add(offset);
+			}
+		}
+
+		if (covered.isEmpty())
+			return;
+
+		/* The guard: The lowest k and s, and for each array the highest k and n */
+		again.clear();
+		fields.clear();
+		lengths.clear();
+		early.clear();
+		late.clear();
+		nullable.clear();
+
+		Value limit = materialize(bound);
+
+		List<Value> arrays = new ArrayList<>();
+		List<Integer> highest = new ArrayList<>();
+		int lowest = Integer.MAX_VALUE;
+
+		for (int i = 0; i < covered.size(); ++i) {
+			Value array = materialize(array(covered.get(i)));
+			int offset = offsets.get(i);
+			int a = 0;
+
+			while (a < arrays.size() && arrays.get(a) != array)
+				++a;
+
+			if (a == arrays.size()) {
+				arrays.add(array);
+				highest.add(offset);
+			} else {
+				highest.set(a, Math.max(highest.get(a), offset));
+			}
+
+			lowest = Math.min(lowest, offset);
+		}
+
+		Value fits = null;
+		for (int a = 0; a < arrays.size(); ++a) {
+			Value length = length(arrays.get(a));
+			int offset = highest.get(a);
+
+			/* As for "i < a.length" (with a in a field, reloaded) */
+			if (length == limit && offset <= 0)
+				continue;
+
+			if (offset >= 0)
+				fits = and(late, fits, binary(late, Opcode.ICMP_SGE, (offset > 0) ? binary(late, Opcode.SUB, length, Constant.i32(offset)) : length, limit));
+			else
+				fits = and(late, fits, binary(late, Opcode.ICMP_SGE, length, binary(late, Opcode.SUB, limit, Constant.i32(-offset))));
+		}
+
+		prune(late, fits);
+
+		Value safe = null;
+		Integer first = intValue(start);
+		if (first == null || first < -lowest)
+			safe = binary(early, Opcode.ICMP_SGE, start, Constant.i32(-lowest));
+
+		/* Arrays whose lengths the guard loads (not those only the loop does) */
+		for (Value array: nullable) {
+			if (late.contains(lengths.get(array)))
+				safe = and(early, safe, binary(early, Opcode.ICMP_NE, array, new Constant(array.getType(), "null")));
+		}
+
+		prune(early, safe);
+
+		/* Nothing to test: The checks go from the loop itself */
+		if (safe == null && fits == null) {
+			for (BasicBlock block: covered)
+				uncheck(block);
+
+			return;
+		}
+
+		BasicBlock guard = (safe != null && fits != null) ? new BasicBlock("guard", header.getNumber()) : preheader;
+
+		/* The copy, and its way out */
+		Map<BasicBlock, BasicBlock> copies = copy(preheader, guard);
+		BasicBlock unchecked = copies.get(header);
+
+		exit.prepend(exitPhis(exiting, copies.get(exiting)));
+
+		for (BasicBlock block: covered)
+			uncheck(copies.get(block));
+
+		/* The way in */
+		for (Instruction instruction: early)
+			preheader.insertBeforeTerminator(instruction);
+
+		if (guard != preheader) {
+			for (Instruction instruction: late)
+				guard.append(instruction);
+
+			guard.append(branch(fits, unchecked, header));
+			guard.order = -1;
+			preheader.setTerminator(branch(safe, guard, header));
+
+			List<Instruction> instructions = header.getInstructions();
+			for (int j = 0; j < instructions.size() && instructions.get(j).getOpcode() == Opcode.PHI; ++j) {
+				Instruction phi = instructions.get(j);
+				phi.addIncoming(phi.getOperand((phi.getBlock(0) == preheader) ? 0 : 1), guard);
+			}
+
+			before.put(header, Collections.singletonList(guard));
+		} else {
+			for (Instruction instruction: late)
+				preheader.insertBeforeTerminator(instruction);
+
+			preheader.setTerminator(branch((fits != null) ? fits : safe, unchecked, header));
+		}
+
+		List<BasicBlock> placed = new ArrayList<>();
+		for (int i = 0; i < loopSize; ++i)
+			placed.add(copies.get(blocks[loop[i]]));
+
+		after.put(blocks[loop[loopSize - 1]], placed);
+	}
+
+	/* The blocks of the loop again, with their instructions (made[i] for originals[i]): Values of
+	 * the loop are taken for their copies, and the preheader (in the header's phis) for the guard */
+	private Map<BasicBlock, BasicBlock> copy(BasicBlock preheader, BasicBlock guard) {
+		Map<BasicBlock, BasicBlock> copies = new IdentityHashMap<>();
+
+		originals.clear();
+		made.clear();
+
+		for (int i = 0; i < loopSize; ++i) {
+			BasicBlock block = blocks[loop[i]];
+			BasicBlock copy = new BasicBlock("unchecked_" + block.getPrefix(), block.getNumber());
+			copy.order = -1;
+			copies.put(block, copy);
+
+			List<Instruction> instructions = block.getInstructions();
+			for (int j = 0; j < instructions.size(); ++j) {
+				Instruction instruction = instructions.get(j);
+
+				instruction.index = made.size();
+				originals.add(instruction);
+				made.add(instruction.copy());
+				copy.append(made.get(made.size() - 1));
+			}
+		}
+
+		for (Instruction instruction: made) {
+			for (int i = 0; i < instruction.getOperandCount(); ++i) {
+				Value operand = instruction.getOperand(i);
+
+				if (inLoop(operand))
+					instruction.setOperand(i, made.get(((Instruction) operand).index));
+			}
+
+			for (int i = 0; i < instruction.getBlockCount(); ++i) {
+				BasicBlock block = instruction.getBlock(i);
+
+				if (copies.containsKey(block))
+					instruction.setBlock(i, copies.get(block));
+				else if (block == preheader && instruction.getOpcode() == Opcode.PHI)
+					instruction.setBlock(i, guard);
+			}
+
+			Object[] comment = instruction.getComment();
+			for (int i = 0; comment != null && i < comment.length; ++i) {
+				if (comment[i] instanceof Value && inLoop((Value) comment[i]))
+					comment[i] = made.get(((Instruction) comment[i]).index);
+			}
+		}
+
+		for (Instruction instruction: originals)
+			instruction.index = -1;
+
+		return copies;
+	}
+
+	/* Values of the loop used after it come from either copy, by where the exit was taken from */
+	private List<Instruction> exitPhis(BasicBlock exiting, BasicBlock exitingCopy) {
+		List<Instruction> phis = new ArrayList<>();
+		List<Instruction> users = new ArrayList<>();
+		Map<Object, Instruction> stale = new IdentityHashMap<>();
+
+		for (int i = 0; i < originals.size(); ++i) {
+			Instruction original = originals.get(i);
+
+			users.clear();
+			for (int u = 0; u < original.getUserCount(); ++u) {
+				Instruction user = original.getUser(u);
+
+				if (!inLoop(user.getParent()) && !users.contains(user))
+					users.add(user);
+			}
+
+			if (users.isEmpty())
+				continue;
+
+			Instruction phi = new Instruction(Opcode.PHI, original.getType(), -1, original, made.get(i));
+			phi.setBlocks(exiting, exitingCopy);
+
+			for (Instruction user: users)
+				user.replaceUsesOf(original, phi);
+
+			phis.add(phi);
+			stale.put(original, phi);
+		}
+
+		if (stale.isEmpty())
+			return phis;
+
+		/* Comments after the loop showing one of those values show its phi instead */
+		for (BasicBlock block: function.getBlocks()) {
+			if (inLoop(block))
+				continue;
+
+			for (Instruction instruction: block.getInstructions()) {
+				Object[] comment = instruction.getComment();
+
+				for (int i = 0; comment != null && i < comment.length; ++i) {
+					Instruction phi = stale.get(comment[i]);
+
+					if (phi != null) {
+						if (comment == instruction.getComment()) {
+							comment = comment.clone();     /* Shared by instructions a comment moved between (see BasicBlock.sweep()) */
+							instruction.setComment(comment);
+						}
+
+						comment[i] = phi;
+					}
+				}
+			}
+		}
+
+		return phis;
+	}
+
+	/* Whether a value stays the same all through the loop, and can be computed again before it */
+	private boolean invariant(Value value, int depth) {
+		if (!inLoop(value))
+			return true;
+		if (depth == DEPTH)
+			return false;
+
+		Instruction instruction = (Instruction) value;
+
+		switch (instruction.getOpcode()) {
+			case LOAD: {
+				Integer field = fieldOffset(instruction.getOperand(0));
+
+				if (field != null)
+					return !calls && !stored.contains(field);
+
+				return isLength(instruction) && invariant(instruction.getOperand(0), depth + 1);
+			}
+
+			case ADD:
+			case SUB:
+			case MUL:
+				return invariant(instruction.getOperand(0), depth + 1) && invariant(instruction.getOperand(1), depth + 1);
+
+			default:
+				return false;
+		}
+	}
+
+	/* The value, before the loop: Computed again there if it is in the loop (as invariant() allows) */
+	private Value materialize(Value value) {
+		if (!inLoop(value))
+			return value;
+
+		Value result = again.get(value);
+		if (result != null)
+			return result;
+
+		Instruction instruction = (Instruction) value;
+
+		if (instruction.getOpcode() != Opcode.LOAD) {
+			result = binary(late, instruction.getOpcode(), materialize(instruction.getOperand(0)), materialize(instruction.getOperand(1)));
+		} else if (fieldOffset(instruction.getOperand(0)) == null) {
+			result = length(materialize(instruction.getOperand(0)));
+		} else {
+			Integer field = fieldOffset(instruction.getOperand(0));
+			result = fields.get(field);
+
+			if (result == null) {
+				Instruction cast = (Instruction) instruction.getOperand(0);
+				Instruction address = (Instruction) cast.getOperand(0);
+
+				Instruction copy = new Instruction(Opcode.GETELEMENTPTR, address.getType(), -1, address.getOperand(0), address.getOperand(1));
+				Instruction pointer = new Instruction(Opcode.BITCAST, cast.getType(), -1, copy);
+				Instruction load = new Instruction(Opcode.LOAD, instruction.getType(), -1, pointer);
+
+				early.add(copy);
+				early.add(pointer);
+				early.add(load);
+
+				fields.put(field, result = load);
+			}
+		}
+
+		again.put(value, result);
+
+		return result;
+	}
+
+	/* Of an array, loaded once it is known not to be null */
+	private Value length(Value array) {
+		Value length = lengths.get(array);
+
+		if (length == null) {
+			if (!isAllocated(array) && !nullable.contains(array))
+				nullable.add(array);
+
+			late.add((Instruction) (length = new Instruction(Opcode.LOAD, LlvmType.I32, -1, array)));
+			lengths.put(array, length);
+		}
+
+		return length;
+	}
+
+	private static Instruction binary(List<Instruction> into, Opcode opcode, Value left, Value right) {
+		LlvmType type = (opcode.isComparison() || opcode == Opcode.AND) ? LlvmType.I1 : LlvmType.I32;
+		Instruction instruction = new Instruction(opcode, type, -1, left, right);
+
+		into.add(instruction);
+
+		return instruction;
+	}
+
+	/* Take out (from the last) the instructions made that nothing uses, but for keep */
+	private static void prune(List<Instruction> instructions, Value keep) {
+		for (int j = instructions.size() - 1; j >= 0; --j) {
+			Instruction instruction = instructions.get(j);
+
+			if (instruction != keep && instruction.getUserCount() == 0) {
+				instruction.erase();
+				instructions.remove(j);
+			}
+		}
+	}
+
+	/* Both tests, or the second alone */
+	private static Value and(List<Instruction> into, Value first, Value second) {
+		return (first != null) ? binary(into, Opcode.AND, first, second) : second;
+	}
+
+	private static Instruction branch(Value condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+		Instruction branch = new Instruction(Opcode.BR, LlvmType.VOID, -1, condition);
+		branch.setBlocks(ifTrue, ifFalse);
+
+		return branch;
+	}
+
+	/* A branch on "icmp ult index, length" (a load), to the access or to a block that throws */
+	private static boolean isCheck(BasicBlock block) {
+		Instruction branch = block.getTerminator();
+
+		if (branch.getOpcode() != Opcode.BR || branch.getOperandCount() != 1 || !is(branch.getOperand(0), Opcode.ICMP_ULT))
+			return false;
+
+		return is(((Instruction) branch.getOperand(0)).getOperand(1), Opcode.LOAD) && throwsOob(branch.getBlock(1));
+	}
+
+	/* Calls @throw_oob first thing */
+	private static boolean throwsOob(BasicBlock block) {
+		Instruction first = block.getInstructions().get(0);
+
+		return first.getOpcode() == Opcode.CALL && first.getOperand(0) instanceof Global &&
+		       ((Global) first.getOperand(0)).getName().equals("throw_oob");
+	}
+
+	/* Of the check ending a block */
+	private static Value index(BasicBlock block) {
+		return ((Instruction) block.getTerminator().getOperand(0)).getOperand(0);
+	}
+
+	private static Value array(BasicBlock block) {
+		Instruction length = (Instruction) ((Instruction) block.getTerminator().getOperand(0)).getOperand(1);
+
+		return length.getOperand(0);
+	}
+
+	private static boolean is(Value value, Opcode opcode) {
+		return value instanceof Instruction && ((Instruction) value).getOpcode() == opcode;
+	}
+
+	/* Of an int constant, or null */
+	private static Integer intValue(Value value) {
+		if (!(value instanceof Constant) || value.getType() != LlvmType.I32)
+			return null;
+
+		try {
+			return Integer.valueOf(((Constant) value).getText());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/* What an add adds one to, or null */
+	private static Value incremented(Instruction add) {
+		if (Integer.valueOf(1).equals(intValue(add.getOperand(1))))
+			return add.getOperand(0);
+		if (Integer.valueOf(1).equals(intValue(add.getOperand(0))))
+			return add.getOperand(1);
+
+		return null;
+	}
+
+	/* k, for an index counter + k (or counter - k), or null */
+	private static Integer offset(Value index, Value counter) {
+		if (index == counter)
+			return 0;
+		if (!is(index, Opcode.ADD) && !is(index, Opcode.SUB))
+			return null;
+
+		Instruction instruction = (Instruction) index;
+		Integer k = null;
+
+		if (instruction.getOperand(0) == counter)
+			k = intValue(instruction.getOperand(1));
+		else if (instruction.getOpcode() == Opcode.ADD && instruction.getOperand(1) == counter)
+			k = intValue(instruction.getOperand(0));
+
+		if (k == null || k <= -OFFSET || k >= OFFSET)
+			return null;
+
+		return (instruction.getOpcode() == Opcode.ADD) ? k : -k;
+	}
+
+	/* Whether a pointer is to an array (its length, then its elements): Any i32*, but those to
+	 * elements and to int fields, and allocas */
+	private static boolean isArray(Value pointer) {
+		if (pointer.getType() != LlvmType.I32_PTR || pointer instanceof Constant)
+			return false;
+
+		return !is(pointer, Opcode.GETELEMENTPTR) && !is(pointer, Opcode.ALLOCA) && fieldOffset(pointer) == null;
+	}
+
+	/* The length of some array */
+	private static boolean isLength(Value value) {
+		return is(value, Opcode.LOAD) && value.getType() == LlvmType.I32 && isArray(((Instruction) value).getOperand(0));
+	}
+
+	private static boolean isLengthOf(Value value, Value array) {
+		return is(value, Opcode.LOAD) && value.getType() == LlvmType.I32 && ((Instruction) value).getOperand(0) == array;
+	}
+
+	/* Just allocated, so not null: A bitcast of what @calloc returned */
+	private static boolean isAllocated(Value array) {
+		if (!is(array, Opcode.BITCAST) || !is(((Instruction) array).getOperand(0), Opcode.CALL))
+			return false;
+
+		Value callee = ((Instruction) ((Instruction) array).getOperand(0)).getOperand(0);
+
+		return callee instanceof Global && ((Global) callee).getName().equals("calloc");
+	}
+
+	/* Of a pointer to a field of this (a bitcast of "getelementptr i8, i8* %this, i32 offset"), or null */
+	private static Integer fieldOffset(Value pointer) {
+		if (!is(pointer, Opcode.BITCAST) || !is(((Instruction) pointer).getOperand(0), Opcode.GETELEMENTPTR))
+			return null;
+
+		Instruction address = (Instruction) ((Instruction) pointer).getOperand(0);
+		Value base = address.getOperand(0);
+
+		if (address.getOperandCount() != 2 || !(base instanceof Argument) || !((Argument) base).getName().equals("this"))
+			return null;
+
+		return intValue(address.getOperand(1));
+	}
+}
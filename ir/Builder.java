@@ -0,0 +1,182 @@
+package ir;
+
+import java.util.List;
+
+import ir.Instruction.Opcode;
+
+/* Builds a function an instruction at a time, at the end of the block placed last.
+ * Results are numbered by the builder, on from one function to the next until resetRegisters() */
+public class Builder {
+	private final boolean comments;
+
+	private Function function;
+	private BasicBlock block;
+	private int registers = 0;
+	private int first;                   /* The function's first number */
+	private Object[] comment;            /* For the next instruction */
+
+	/* Without comments, comment() does nothing */
+	public Builder(boolean comments) {
+		this.comments = comments;
+	}
+
+	/* A new function, with an entry block to build (unlabelled, unless a phi comes from it) */
+	public Function begin(LlvmType returnType, String name) {
+		function = new Function(returnType, name);
+		first = registers;
+		place(new BasicBlock(null, 0));
+
+		return function;
+	}
+
+	public Function getFunction() {
+		return function;
+	}
+
+	public Argument argument(LlvmType type, String name) {
+		return function.addArgument(type, name);
+	}
+
+	/* Numbered results so far */
+	public int getRegisters() {
+		return registers;
+	}
+
+	/* Start numbering from 0 again. Returns the results numbered until now */
+	public int resetRegisters() {
+		int numbered = registers;
+		registers = 0;
+
+		return numbered;
+	}
+
+	/* Number the function's results again, in order and from where it began: After a pass
+	 * took some out (or put some in) */
+	public void renumber() {
+		registers = first;
+
+		List<BasicBlock> blocks = function.getBlocks();
+
+		for (int i = 0; i < blocks.size(); ++i) {
+			List<Instruction> instructions = blocks.get(i).getInstructions();
+
+			for (int j = 0; j < instructions.size(); ++j) {
+				if (instructions.get(j).isNumbered())
+					instructions.get(j).setNumber(registers++);
+			}
+		}
+	}
+
+	/* A block, to branch to: Not part of the function until placed */
+	public BasicBlock block(String prefix, int number) {
+		return new BasicBlock(prefix, number);
+	}
+
+	/* Next in the function: Instructions go there from now on */
+	public void place(BasicBlock block) {
+		function.addBlock(block);
+		this.block = block;
+	}
+
+	/* A line of strings and values (printed typed: "i32 %_3") before the next instruction */
+	public void comment(Object... parts) {
+		if (comments)
+			comment = parts;
+	}
+
+	/* A blank line after the last instruction */
+	public void gap() {
+		block.getInstructions().get(block.getInstructions().size() - 1).setGap();
+	}
+
+	private Instruction add(Instruction instruction) {
+		if (comment != null) {
+			instruction.setComment(comment);
+			comment = null;
+		}
+
+		block.append(instruction);
+		return instruction;
+	}
+
+	public Instruction alloca(LlvmType type, String name) {
+		Instruction alloca = new Instruction(Opcode.ALLOCA, type.pointer(), -1);
+		alloca.setName(name);
+
+		return add(alloca);
+	}
+
+	public Instruction store(Value value, Value pointer) {
+		return add(new Instruction(Opcode.STORE, LlvmType.VOID, -1, value, pointer));
+	}
+
+	public Instruction load(Value pointer) {
+		return add(new Instruction(Opcode.LOAD, pointer.getType().getPointee(), registers++, pointer));
+	}
+
+	/* Pointer into what pointer points to, of type */
+	public Instruction getelementptr(LlvmType type, Value pointer, Value index) {
+		return add(new Instruction(Opcode.GETELEMENTPTR, type, registers++, pointer, index));
+	}
+
+	public Instruction getelementptr(LlvmType type, Value pointer, Value index, Value field) {
+		return add(new Instruction(Opcode.GETELEMENTPTR, type, registers++, pointer, index, field));
+	}
+
+	public Instruction bitcast(Value value, LlvmType type) {
+		return add(new Instruction(Opcode.BITCAST, type, registers++, value));
+	}
+
+	/* Arithmetic (of the operands' type) or comparison (i1) */
+	public Instruction binary(Opcode opcode, Value left, Value right) {
+		LlvmType type = opcode.isComparison() ? LlvmType.I1 : left.getType();
+
+		return add(new Instruction(opcode, type, registers++, left, right));
+	}
+
+	/* callType is written after "call": The return type, or the whole function type (for varargs) */
+	public Instruction call(LlvmType callType, LlvmType returnType, Value callee, Value... arguments) {
+		Value[] operands = new Value[1 + arguments.length];
+		operands[0] = callee;
+		System.arraycopy(arguments, 0, operands, 1, arguments.length);
+
+		Instruction call = new Instruction(Opcode.CALL, returnType, (returnType != LlvmType.VOID) ? registers++ : -1, operands);
+		call.setCallType(callType);
+
+		return add(call);
+	}
+
+	public Instruction call(LlvmType returnType, Value callee, Value... arguments) {
+		return call(returnType, returnType, callee, arguments);
+	}
+
+	/* values[i] if coming from blocks[i] */
+	public Instruction phi(LlvmType type, Value[] values, BasicBlock[] blocks) {
+		Instruction phi = new Instruction(Opcode.PHI, type, registers++, values);
+		phi.setBlocks(blocks);
+
+		return add(phi);
+	}
+
+	public Instruction br(BasicBlock target) {
+		Instruction br = new Instruction(Opcode.BR, LlvmType.VOID, -1);
+		br.setBlocks(target);
+
+		return add(br);
+	}
+
+	public Instruction br(Value condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+		Instruction br = new Instruction(Opcode.BR, LlvmType.VOID, -1, condition);
+		br.setBlocks(ifTrue, ifFalse);
+
+		return add(br);
+	}
+
+	public Instruction ret(Value value) {
+		return add(new Instruction(Opcode.RET, LlvmType.VOID, -1, value));
+	}
+
+	public Instruction unreachable() {
+		return add(new Instruction(Opcode.UNREACHABLE, LlvmType.VOID, -1));
+	}
+}
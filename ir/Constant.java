@@ -0,0 +1,41 @@
+package ir;
+
+/* A constant, as it is written: "5", "true", "null", or a constant expression
+ * such as a bitcast of a function (in a vtable) */
+public class Constant extends Value {
+	public static final Constant TRUE = new Constant(LlvmType.I1, "true");
+	public static final Constant FALSE = new Constant(LlvmType.I1, "false");
+
+	/* Small ints (offsets, sizes, vtable indices) are made once */
+	private static final Constant[] ints = new Constant[1024];
+
+	static {
+		for (int i = 0; i < ints.length; ++i)
+			ints[i] = new Constant(LlvmType.I32, Integer.toString(i));
+	}
+
+	private final String text;
+
+	public Constant(LlvmType type, String text) {
+		super(type);
+		this.text = text;
+	}
+
+	public static Constant i32(int value) {
+		return (value >= 0 && value < ints.length) ? ints[value] : new Constant(LlvmType.I32, Integer.toString(value));
+	}
+
+	/* Any value of the type: What a variable holds before it is first assigned */
+	public static Constant undef(LlvmType type) {
+		return new Constant(type, "undef");
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	boolean tracksUsers() {
+		return false;
+	}
+}
@@ -0,0 +1,176 @@
+package ir;
+
+import java.util.*;
+
+/* The blocks of a function in reverse postorder (BasicBlock.order is the index here): The entry
+ * first, and each block after its immediate dominator. With each block's predecessors, and the
+ * dominator tree, by Cooper, Harvey and Kennedy ("A Simple, Fast Dominance Algorithm").
+ * Good until a pass changes the branches */
+class Dominators {
+	final BasicBlock[] blocks;
+	final int[][] predecessors;
+	final int[] idom;
+
+	/* The dominator tree, as first child and next sibling (-1 for none) */
+	final int[] child;
+	final int[] sibling;
+
+	private Dominators(BasicBlock[] blocks) {
+		this.blocks = blocks;
+
+		int n = blocks.length;
+
+		predecessors = predecessors(blocks);
+
+		idom = new int[n];
+		Arrays.fill(idom, -1);
+		idom[0] = 0;
+
+		/* In reverse postorder, a block's first processed predecessor always comes before it */
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+
+			for (int b = 1; b < n; ++b) {
+				int dominator = -1;
+
+				for (int p: predecessors[b]) {
+					if (idom[p] >= 0)
+						dominator = (dominator < 0) ? p : intersect(p, dominator);
+				}
+
+				if (idom[b] != dominator) {
+					idom[b] = dominator;
+					changed = true;
+				}
+			}
+		}
+
+		child = new int[n];
+		sibling = new int[n];
+		Arrays.fill(child, -1);
+		for (int b = n - 1; b > 0; --b) {
+			sibling[b] = child[idom[b]];
+			child[idom[b]] = b;
+		}
+	}
+
+	/* Null if some block can't be reached from the entry. Passes that take it after another (that
+	 * changed no branches, nor BasicBlock.order) find it made already */
+	static Dominators of(Function function) {
+		if (function.dominators != null)
+			return function.dominators;
+
+		List<BasicBlock> all = function.getBlocks();
+		int n = all.size();
+
+		BasicBlock[] postorder = reachable(function);
+		if (postorder.length < n)
+			return null;
+
+		BasicBlock[] blocks = new BasicBlock[n];
+		for (int i = 0; i < n; ++i) {
+			blocks[i] = postorder[n - 1 - i];
+			blocks[i].order = i;
+		}
+
+		return function.dominators = new Dominators(blocks);
+	}
+
+	/* The blocks that can be reached from the entry, in postorder. The others have order -1 */
+	static BasicBlock[] reachable(Function function) {
+		List<BasicBlock> all = function.getBlocks();
+		int n = all.size();
+
+		for (int i = 0; i < n; ++i)
+			all.get(i).order = -1;
+
+		BasicBlock[] postorder = new BasicBlock[n];
+		int count = 0;
+
+		/* Depth-first, each block with the index of its next successor to visit */
+		BasicBlock[] stack = new BasicBlock[n];
+		int[] next = new int[n];
+		int depth = 0;
+
+		stack[depth++] = function.getEntry();
+		function.getEntry().order = 0;
+
+		while (depth > 0) {
+			BasicBlock block = stack[depth - 1];
+			int i = next[depth - 1]++;
+
+			if (i < successorCount(block)) {
+				BasicBlock successor = successor(block, i);
+
+				if (successor.order < 0) {
+					successor.order = 0;
+					stack[depth] = successor;
+					next[depth] = 0;
+					++depth;
+				}
+			} else {
+				postorder[count++] = block;
+				--depth;
+			}
+		}
+
+		return Arrays.copyOf(postorder, count);
+	}
+
+	/* Counted first, then filled */
+	private static int[][] predecessors(BasicBlock[] blocks) {
+		int n = blocks.length;
+
+		int[] counts = new int[n];
+		for (BasicBlock block: blocks) {
+			for (int i = 0; i < successorCount(block); ++i)
+				++counts[successor(block, i).order];
+		}
+
+		int[][] predecessors = new int[n][];
+		for (int b = 0; b < n; ++b)
+			predecessors[b] = new int[counts[b]];
+
+		Arrays.fill(counts, 0);
+		for (int p = 0; p < n; ++p) {
+			for (int i = 0; i < successorCount(blocks[p]); ++i) {
+				int s = successor(blocks[p], i).order;
+				predecessors[s][counts[s]++] = p;
+			}
+		}
+
+		return predecessors;
+	}
+
+	/* The nearest common dominator of a and b */
+	private int intersect(int a, int b) {
+		while (a != b) {
+			while (a > b)
+				a = idom[a];
+			while (b > a)
+				b = idom[b];
+		}
+
+		return a;
+	}
+
+	/* Whether every path to b goes through a: a is b, or above it in the tree */
+	boolean dominates(int a, int b) {
+		while (b > a)
+			b = idom[b];
+
+		return a == b;
+	}
+
+	/* The successors of a block: Targets of its terminator */
+	static int successorCount(BasicBlock block) {
+		Instruction terminator = block.getTerminator();
+
+		return (terminator != null) ? terminator.getBlockCount() : 0;
+	}
+
+	static BasicBlock successor(BasicBlock block, int i) {
+		return block.getTerminator().getBlock(i);
+	}
+}
@@ -0,0 +1,64 @@
+package ir;
+
+import java.util.*;
+
+/* A function definition: @name(arguments), and its basic blocks, the entry block first */
+public class Function {
+	private final LlvmType returnType;
+	private final String name;
+
+	private final List<Argument> arguments = new ArrayList<>();
+	private final List<BasicBlock> blocks = new ArrayList<>();
+	private final List<BasicBlock> view = Collections.unmodifiableList(blocks);
+
+	/* Scratch, for passes: The dominator tree, as the last to build one left it (see Dominators.of) */
+	Dominators dominators;
+
+	Function(LlvmType returnType, String name) {
+		this.returnType = returnType;
+		this.name = name;
+	}
+
+	public LlvmType getReturnType() {
+		return returnType;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<Argument> getArguments() {
+		return Collections.unmodifiableList(arguments);
+	}
+
+	public List<BasicBlock> getBlocks() {
+		return view;
+	}
+
+	public BasicBlock getEntry() {
+		return blocks.get(0);
+	}
+
+	Argument addArgument(LlvmType type, String name) {
+		Argument argument = new Argument(type, name);
+		arguments.add(argument);
+
+		return argument;
+	}
+
+	void addBlock(BasicBlock block) {
+		dominators = null;
+		blocks.add(block);
+		block.setParent(this);
+	}
+
+	/* All of them again, in a new order: After a pass took some out (or put some in) */
+	void setBlocks(List<BasicBlock> newBlocks) {
+		for (BasicBlock block: blocks)
+			block.setParent(null);
+
+		blocks.clear();
+		for (BasicBlock block: newBlocks)
+			addBlock(block);
+	}
+}
@@ -0,0 +1,42 @@
+package ir;
+
+import java.util.*;
+
+/* A global, @name: A function (declared or defined elsewhere), or a variable.
+ * Its type is always a pointer, to the function or to the variable's contents.
+ * Variables defined here (vtables) have their contents in elements, for the printer */
+public class Global extends Value {
+	private final String name;
+	private final List<Constant> elements;
+
+	/* Declared elsewhere */
+	public Global(LlvmType type, String name) {
+		this(type, name, null);
+	}
+
+	/* An array of elements: The type is worked out from them */
+	public Global(String name, LlvmType elementType, List<Constant> elements) {
+		this(LlvmType.of("[" + elements.size() + " x " + elementType + ']').pointer(), name, elements);
+	}
+
+	private Global(LlvmType type, String name, List<Constant> elements) {
+		super(type);
+
+		this.name = name;
+		this.elements = (elements != null) ? Collections.unmodifiableList(elements) : null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/* Null for a global declared elsewhere */
+	public List<Constant> getElements() {
+		return elements;
+	}
+
+	@Override
+	boolean tracksUsers() {
+		return false;
+	}
+}
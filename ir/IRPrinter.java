@@ -0,0 +1,213 @@
+package ir;
+
+import java.io.IOException;
+
+import ir.Instruction.Opcode;
+
+/* Writes functions and global variables out as LLVM IR text, a line per instruction */
+public class IRPrinter {
+	private final IRWriter out;
+
+	public IRPrinter(IRWriter out) {
+		this.out = out;
+	}
+
+	/* A global variable defined here: An array, an element per line */
+	public void print(Global global) throws IOException {
+		out.append('@').append(global.getName()).append(" = global ").append(global.getType().getPointee().getName()).append(" [").newLine();
+
+		boolean first = true;
+		for (Constant element: global.getElements()) {
+			/* No trailing comma */
+			if (!first)
+				out.append(',').newLine();
+			first = false;
+
+			typed(out.append('\t'), element);
+		}
+
+		out.newLine();
+		out.append("]\n").newLine();
+	}
+
+	public void print(Function function) throws IOException {
+		out.append("define ").append(function.getReturnType().getName()).append(" @").append(function.getName()).append('(');
+
+		boolean first = true;
+		for (Argument argument: function.getArguments()) {
+			if (!first)
+				out.append(", ");
+			first = false;
+
+			typed(out, argument);
+		}
+
+		out.append(") {").newLine();
+
+		/* The entry block can't be branched to, but a phi may come from it */
+		boolean entryLabel = fromEntry(function);
+
+		for (BasicBlock block: function.getBlocks()) {
+			if (block.getPrefix() != null || entryLabel)
+				label(out, block).append(':').newLine();
+
+			for (Instruction instruction: block.getInstructions()) {
+				if (instruction.getComment() != null)
+					comment(instruction.getComment());
+
+				out.append('\t');
+				print(instruction);
+				out.newLine();
+
+				if (instruction.hasGap())
+					out.newLine();
+			}
+		}
+
+		out.append("}\n").newLine();
+	}
+
+	/* Whether a phi has the entry block as an incoming block. Phis come first in their blocks */
+	private static boolean fromEntry(Function function) {
+		BasicBlock entry = function.getEntry();
+
+		for (BasicBlock block: function.getBlocks()) {
+			for (Instruction instruction: block.getInstructions()) {
+				if (instruction.getOpcode() != Opcode.PHI)
+					break;
+
+				for (int i = 0; i < instruction.getBlockCount(); ++i) {
+					if (instruction.getBlock(i) == entry)
+						return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private void comment(Object[] parts) throws IOException {
+		out.append("\t; ");
+
+		for (Object part: parts) {
+			if (part instanceof Value)
+				typed(out, (Value) part);
+			else
+				out.append(part.toString());
+		}
+
+		out.newLine();
+	}
+
+	private void print(Instruction instruction) throws IOException {
+		Opcode opcode = instruction.getOpcode();
+
+		if (instruction.getNumber() >= 0 || instruction.getName() != null)
+			name(out, instruction).append(" = ");
+
+		out.append(opcode.getKeyword());
+
+		switch (opcode) {
+			case ALLOCA:
+				out.append(' ').append(instruction.getType().getPointee().getName());
+				break;
+
+			case LOAD:
+				out.append(' ').append(instruction.getType().getName()).append(", ");
+				typed(out, instruction.getOperand(0));
+				break;
+
+			case STORE:
+				typed(out.append(' '), instruction.getOperand(0)).append(", ");
+				typed(out, instruction.getOperand(1));
+				break;
+
+			case GETELEMENTPTR: {
+				Value pointer = instruction.getOperand(0);
+				out.append(' ').append(pointer.getType().getPointee().getName()).append(", ");
+				typed(out, pointer);
+
+				for (int i = 1; i < instruction.getOperandCount(); ++i)
+					typed(out.append(", "), instruction.getOperand(i));
+
+				break;
+			}
+
+			case BITCAST:
+				typed(out.append(' '), instruction.getOperand(0)).append(" to ").append(instruction.getType().getName());
+				break;
+
+			case PHI:
+				out.append(' ').append(instruction.getType().getName());
+
+				for (int i = 0; i < instruction.getOperandCount(); ++i) {
+					out.append((i > 0) ? ", [ " : " [ ");
+					name(out, instruction.getOperand(i)).append(", %");
+					label(out, instruction.getBlock(i)).append(" ]");
+				}
+
+				break;
+
+			case CALL:
+				out.append(' ').append(instruction.getCallType().getName()).append(' ');
+				name(out, instruction.getOperand(0)).append('(');
+
+				for (int i = 1; i < instruction.getOperandCount(); ++i) {
+					if (i > 1)
+						out.append(", ");
+
+					typed(out, instruction.getOperand(i));
+				}
+
+				out.append(')');
+				break;
+
+			case BR:
+				if (instruction.getOperandCount() > 0) {
+					typed(out.append(' '), instruction.getOperand(0)).append(", label %");
+					label(out, instruction.getBlock(0)).append(", label %");
+					label(out, instruction.getBlock(1));
+				} else {
+					label(out.append(" label %"), instruction.getBlock(0));
+				}
+
+				break;
+
+			case RET:
+				typed(out.append(' '), instruction.getOperand(0));
+				break;
+
+			case UNREACHABLE:
+				break;
+
+			default:                     /* Arithmetic and comparisons */
+				typed(out.append(' '), instruction.getOperand(0)).append(", ");
+				name(out, instruction.getOperand(1));
+		}
+	}
+
+	/* "i32 %_3" */
+	private static IRWriter typed(IRWriter out, Value value) throws IOException {
+		return name(out.append(value.getType().getName()).append(' '), value);
+	}
+
+	/* "%_3", "%x", "@A_vtable", "5" */
+	private static IRWriter name(IRWriter out, Value value) throws IOException {
+		if (value instanceof Instruction) {
+			Instruction instruction = (Instruction) value;
+
+			return (instruction.getNumber() >= 0) ? out.register(instruction.getNumber()) : out.append('%').append(instruction.getName());
+		} else if (value instanceof Argument) {
+			return out.append('%').append(((Argument) value).getName());
+		} else if (value instanceof Global) {
+			return out.append('@').append(((Global) value).getName());
+		} else {
+			return out.append(((Constant) value).getText());
+		}
+	}
+
+	/* "if3", or "entry" */
+	private static IRWriter label(IRWriter out, BasicBlock block) throws IOException {
+		return (block.getPrefix() != null) ? out.append(block.getPrefix()).append(block.getNumber()) : out.append("entry");
+	}
+}
@@ -0,0 +1,209 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/* Output of IRPrinter (and LLVMVisitor). Text is encoded straight into a large byte buffer (ASCII
+ * a byte per char, anything else as UTF-8), numbers are formatted in place, and whole lines go out
+ * through a FileChannel in big writes: No Writer, encoder or intermediate Strings in between.
+ * The buffer belongs to the thread and is reused from one file to the next.
+ *
+ * In compact mode, comment lines (";" after any indentation) and blank lines are left out */
+public class IRWriter implements Closeable {
+	private static final int CAPACITY = 1 << 20;
+
+	/* Taken by open(), given back by close() */
+	private static final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+	private final FileChannel channel;
+	private final boolean compact;
+
+	private byte[] buffer;
+	private int length = 0;              /* Bytes in the buffer */
+	private int lineStart = 0;           /* Where the line being appended starts in it */
+	private long written = 0;            /* Bytes already written to the channel */
+
+	private IRWriter(FileChannel channel, boolean compact) {
+		this.channel = channel;
+		this.compact = compact;
+
+		buffer = buffers.get();
+		buffers.set(null);
+
+		if (buffer == null)
+			buffer = new byte[CAPACITY];
+	}
+
+	public static IRWriter open(Path path, boolean compact) throws IOException {
+		return new IRWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), compact);
+	}
+
+	/* Comments and blank lines are dropped anyway: No need to make them */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/* Bytes of IR so far */
+	public long size() {
+		return written + length;
+	}
+
+	public IRWriter append(String s) throws IOException {
+		return append(s, 0, s.length());
+	}
+
+	/* Line breaks in s end lines, as newLine() does */
+	public IRWriter append(String s, int from, int to) throws IOException {
+		ensure(to - from);
+
+		for (int i = from; i < to; ++i) {
+			char c = s.charAt(i);
+
+			if (c == '\n')
+				newLine();
+			else if (c < 0x80)
+				buffer[length++] = (byte) c;
+			else
+				i = encode(s, i, to);
+		}
+
+		return this;
+	}
+
+	public IRWriter append(char c) throws IOException {
+		if (c == '\n')
+			return newLine();
+		else if (c >= 0x80)
+			return append(String.valueOf(c));
+
+		ensure(1);
+		buffer[length++] = (byte) c;
+
+		return this;
+	}
+
+	public IRWriter append(int value) throws IOException {
+		if (value == Integer.MIN_VALUE)
+			return append(Integer.toString(value));
+
+		ensure(11);
+
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		for (int rest = value / 10; rest != 0; rest /= 10)
+			++digits;
+
+		length += digits;
+		for (int i = length - 1; i >= length - digits; --i, value /= 10)
+			buffer[i] = (byte) ('0' + value % 10);
+
+		return this;
+	}
+
+	/* LLVMVisitor's numbered registers: %_n */
+	public IRWriter register(int n) throws IOException {
+		ensure(2);
+		buffer[length++] = '%';
+		buffer[length++] = '_';
+
+		return append(n);
+	}
+
+	public IRWriter newLine() throws IOException {
+		if (compact && droppable()) {
+			length = lineStart;
+			return this;
+		}
+
+		ensure(1);
+		buffer[length++] = '\n';
+		lineStart = length;
+
+		return this;
+	}
+
+	/* Blank, or a comment */
+	private boolean droppable() {
+		int i = lineStart;
+
+		while (i < length && (buffer[i] == ' ' || buffer[i] == '\t'))
+			++i;
+
+		return i == length || buffer[i] == ';';
+	}
+
+	/* The non-ASCII char at s[i] (and the low surrogate after it, if any) as UTF-8,
+	 * the way String.getBytes() would. Returns the index of the last char encoded */
+	private int encode(String s, int i, int to) throws IOException {
+		ensure(3 * (to - i));
+
+		char c = s.charAt(i);
+
+		if (c < 0x800) {
+			buffer[length++] = (byte) (0xC0 | (c >> 6));
+			buffer[length++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+			int codePoint = Character.toCodePoint(c, s.charAt(++i));
+
+			buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+		} else if (Character.isSurrogate(c)) {
+			buffer[length++] = '?';
+		} else {
+			buffer[length++] = (byte) (0xE0 | (c >> 12));
+			buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[length++] = (byte) (0x80 | (c & 0x3F));
+		}
+
+		return i;
+	}
+
+	/* Room for bytes more: Finished lines are written out first, and the buffer only grows
+	 * for a line that does not fit in it by itself */
+	private void ensure(int bytes) throws IOException {
+		if (length + bytes <= buffer.length)
+			return;
+
+		write(lineStart);
+
+		System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+		length -= lineStart;
+		lineStart = 0;
+
+		if (length + bytes > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+	}
+
+	private void write(int bytes) throws IOException {
+		ByteBuffer out = ByteBuffer.wrap(buffer, 0, bytes);
+
+		while (out.hasRemaining())
+			channel.write(out);
+
+		written += bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			write(length);
+			length = lineStart = 0;
+		} finally {
+			channel.close();
+
+			/* A buffer grown for some huge line is not worth keeping around */
+			if (buffer.length == CAPACITY)
+				buffers.set(buffer);
+		}
+	}
+}
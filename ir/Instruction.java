@@ -0,0 +1,202 @@
+package ir;
+
+import java.util.Arrays;
+
+/* An instruction, and the value it results in (if it has one). Results are numbered (%_n) as they
+ * are made, except for allocas, which are named after their variable instead (%name).
+ * Besides its operands, a branch keeps its targets and a phi its incoming blocks (one per operand).
+ * Comments and blank lines after an instruction are carried along, for the printer */
+public class Instruction extends Value {
+	public enum Opcode {
+		ALLOCA("alloca"), LOAD("load"), STORE("store"), GETELEMENTPTR("getelementptr"), BITCAST("bitcast"),
+		ADD("add"), SUB("sub"), MUL("mul"), XOR("xor"), AND("and"),
+		ICMP_SLT("icmp slt"), ICMP_ULT("icmp ult"), ICMP_SGE("icmp sge"), ICMP_NE("icmp ne"),
+		PHI("phi"), CALL("call"),
+		BR("br"), RET("ret"), UNREACHABLE("unreachable");
+
+		private final String keyword;
+
+		Opcode(String keyword) {
+			this.keyword = keyword;
+		}
+
+		/* As written: "icmp slt" */
+		public String getKeyword() {
+			return keyword;
+		}
+
+		public boolean isComparison() {
+			return this == ICMP_SLT || this == ICMP_ULT || this == ICMP_SGE || this == ICMP_NE;
+		}
+	}
+
+	private static final BasicBlock[] NO_BLOCKS = new BasicBlock[0];
+
+	private final Opcode opcode;
+	private Value[] operands;
+	private int number;                  /* -1 if named, or without a result */
+
+	private BasicBlock[] blocks = NO_BLOCKS;
+	private String name;                 /* Of an alloca */
+	private LlvmType callType;           /* Of a call: What is written after "call", return or function type */
+
+	private BasicBlock parent;
+
+	private Object[] comment;            /* Strings and values, in the line before */
+	private boolean gap;                 /* Blank line after */
+	private Value replacement;           /* Once erased: What stands in for it, for comments showing it */
+
+	int index = -1;                      /* Scratch, for passes: Mem2Reg's number for a variable's alloca,
+	                                      * BoundsChecks' place of an instruction in a loop being copied */
+
+	Instruction(Opcode opcode, LlvmType type, int number, Value... operands) {
+		super(type);
+
+		this.opcode = opcode;
+		this.number = number;
+		this.operands = operands;
+
+		for (Value operand: operands)
+			operand.addUser(this);
+	}
+
+	public Opcode getOpcode() {
+		return opcode;
+	}
+
+	public boolean isTerminator() {
+		return opcode == Opcode.BR || opcode == Opcode.RET || opcode == Opcode.UNREACHABLE;
+	}
+
+	public int getOperandCount() {
+		return operands.length;
+	}
+
+	public Value getOperand(int i) {
+		return operands[i];
+	}
+
+	public void setOperand(int i, Value value) {
+		operands[i].removeUser(this);
+		operands[i] = value;
+		value.addUser(this);
+	}
+
+	/* Another incoming value of a phi */
+	void addIncoming(Value value, BasicBlock block) {
+		operands = Arrays.copyOf(operands, operands.length + 1);
+		operands[operands.length - 1] = value;
+		value.addUser(this);
+
+		blocks = Arrays.copyOf(blocks, blocks.length + 1);
+		blocks[blocks.length - 1] = block;
+	}
+
+	/* Out of its block (which drops it on its next sweep()), and no longer a user of its operands.
+	 * It should have no users left itself */
+	void erase() {
+		for (Value operand: operands)
+			operand.removeUser(this);
+
+		parent = null;
+	}
+
+	public Value getReplacement() {
+		return replacement;
+	}
+
+	void setReplacement(Value replacement) {
+		this.replacement = replacement;
+	}
+
+	/* Every use of from in this instruction */
+	public void replaceUsesOf(Value from, Value to) {
+		for (int i = 0; i < operands.length; ++i) {
+			if (operands[i] == from)
+				setOperand(i, to);
+		}
+	}
+
+	/* Targets of a branch (true first), incoming blocks of a phi */
+	public int getBlockCount() {
+		return blocks.length;
+	}
+
+	public BasicBlock getBlock(int i) {
+		return blocks[i];
+	}
+
+	void setBlocks(BasicBlock... blocks) {
+		this.blocks = blocks;
+	}
+
+	void setBlock(int i, BasicBlock block) {
+		blocks[i] = block;
+	}
+
+	/* In no block yet, with the same operands, targets or incoming blocks, and comment */
+	Instruction copy() {
+		Instruction copy = new Instruction(opcode, getType(), -1, operands.clone());
+
+		copy.blocks = (blocks.length > 0) ? blocks.clone() : NO_BLOCKS;
+		copy.name = name;
+		copy.callType = callType;
+		copy.comment = (comment != null) ? comment.clone() : null;
+		copy.gap = gap;
+
+		return copy;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	void setNumber(int number) {
+		this.number = number;
+	}
+
+	/* Whether it is numbered when built: It has a result, and no name */
+	boolean isNumbered() {
+		return getType() != LlvmType.VOID && name == null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	void setName(String name) {
+		this.name = name;
+	}
+
+	public LlvmType getCallType() {
+		return callType;
+	}
+
+	void setCallType(LlvmType callType) {
+		this.callType = callType;
+	}
+
+	public BasicBlock getParent() {
+		return parent;
+	}
+
+	void setParent(BasicBlock parent) {
+		this.parent = parent;
+	}
+
+	public Object[] getComment() {
+		return comment;
+	}
+
+	void setComment(Object[] comment) {
+		this.comment = comment;
+	}
+
+	public boolean hasGap() {
+		return gap;
+	}
+
+	void setGap() {
+		gap = true;
+	}
+}
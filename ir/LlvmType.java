@@ -0,0 +1,61 @@
+package ir;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/* LLVM types, interned by name: There is a single object per type, so they compare by identity.
+ * A pointer type ("i32*") knows the type it points to; anything else (function and array types
+ * included) is known by its name alone */
+public final class LlvmType {
+	private static final ConcurrentHashMap<String, LlvmType> types = new ConcurrentHashMap<>();
+
+	public static final LlvmType VOID = of("void");
+	public static final LlvmType I1 = of("i1");
+	public static final LlvmType I8 = of("i8");
+	public static final LlvmType I32 = of("i32");
+	public static final LlvmType I8_PTR = of("i8*");
+	public static final LlvmType I32_PTR = of("i32*");
+
+	private final String name;
+	private final LlvmType pointee;
+	private LlvmType pointer;            /* Of this type, once asked for */
+
+	private LlvmType(String name, LlvmType pointee) {
+		this.name = name;
+		this.pointee = pointee;
+	}
+
+	public static LlvmType of(String name) {
+		LlvmType type = types.get(name);
+
+		if (type == null) {
+			LlvmType pointee = name.endsWith("*") ? of(name.substring(0, name.length() - 1)) : null;
+			LlvmType raced = types.putIfAbsent(name, type = new LlvmType(name, pointee));
+
+			if (raced != null)
+				type = raced;
+		}
+
+		return type;
+	}
+
+	public LlvmType pointer() {
+		if (pointer == null)
+			pointer = of(name + '*');
+
+		return pointer;
+	}
+
+	/* What a pointer type points to (null for anything else) */
+	public LlvmType getPointee() {
+		return pointee;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,461 @@
+package ir;
+
+import java.util.*;
+
+import ir.Instruction.Opcode;
+
+/* Promotes the allocas of a function that are only ever loaded from and stored to (every variable,
+ * as the LLVMVisitor generates code) to SSA values: A load takes the value stored last, and where
+ * paths with different values meet, a phi chooses among them.
+ *
+ * Phis go on the iterated dominance frontiers of the blocks storing to a variable (Cytron et al.),
+ * for the variables read in some block before being stored to there: The others never reach
+ * a join. Renaming walks the dominator tree (see Dominators). Last, phis that choose a single value go,
+ * as do those that no instruction but other such phis uses.
+ *
+ * Code nests without bound, so nothing here recurses: Walks keep their own stacks */
+public class Mem2Reg {
+	/* A phi placed in a block for a variable, and the next one placed there */
+	private static class Placed {
+		final Instruction phi;
+		final int variable;
+		final Placed next;
+
+		Placed(Instruction phi, int variable, Placed next) {
+			this.phi = phi;
+			this.variable = variable;
+			this.next = next;
+		}
+	}
+
+	private final Function function;
+
+	/* The blocks, in reverse postorder (BasicBlock.order is the index here), and the dominator tree */
+	private Dominators dominators;
+	private BasicBlock[] blocks;
+	private int[][] predecessors;
+	private int[] idom;
+	private int[][] frontiers;
+
+	/* The promoted allocas (Instruction.index is the index here, -1 for others), and the phis
+	 * placed in each block */
+	private Instruction[] allocas;
+	private Placed[] placed;
+	private final List<Instruction> phis = new ArrayList<>();
+
+	/* Whether the function has comments: They may show loads and phis taken out, and don't count as uses */
+	private boolean comments;
+
+	/* While renaming: The value of each variable, and the values it had before (for leaving a block) */
+	private Value[] current;
+	private int[] undoVariables = new int[16];
+	private Value[] undoValues = new Value[16];
+	private int undoSize;
+
+	private Mem2Reg(Function function) {
+		this.function = function;
+	}
+
+	public static void run(Function function) {
+		new Mem2Reg(function).promote();
+	}
+
+	private void promote() {
+		/* Code generation leaves no block unreachable. Should one be, the function stays as is */
+		dominators = Dominators.of(function);
+		if (dominators == null)
+			return;
+
+		blocks = dominators.blocks;
+		predecessors = dominators.predecessors;
+		idom = dominators.idom;
+
+		findAllocas();
+		if (allocas.length == 0)
+			return;
+
+		frontiers();
+		placePhis();
+		rename();
+
+		for (Instruction alloca: allocas)
+			alloca.erase();
+
+		for (int b = 0; b < blocks.length; ++b) {
+			if (placed[b] == null)
+				continue;
+
+			List<Instruction> first = new ArrayList<>();
+			for (Placed p = placed[b]; p != null; p = p.next)
+				first.add(0, p.phi);
+
+			blocks[b].prepend(first);
+		}
+
+		removeTrivialPhis();
+		removeDeadPhis();
+
+		for (BasicBlock block: blocks)
+			block.sweep();
+
+		if (comments)
+			updateComments();
+	}
+
+	/* Have the users of an instruction take value instead, and erase it */
+	private void replace(Instruction instruction, Value value) {
+		instruction.replaceAllUsesWith(value);
+		instruction.erase();
+
+		if (comments)
+			instruction.setReplacement(value);
+	}
+
+	private void updateComments() {
+		for (BasicBlock block: blocks) {
+			List<Instruction> instructions = block.getInstructions();
+
+			for (int j = 0; j < instructions.size(); ++j) {
+				Object[] comment = instructions.get(j).getComment();
+
+				if (comment == null)
+					continue;
+
+				for (int i = 0; i < comment.length; ++i) {
+					/* A phi may have stood in for a load, then been replaced in turn */
+					while (comment[i] instanceof Instruction && ((Instruction) comment[i]).getReplacement() != null)
+						comment[i] = ((Instruction) comment[i]).getReplacement();
+				}
+			}
+		}
+	}
+
+	/* Allocas of the entry block used only as the pointer of loads and stores */
+	private void findAllocas() {
+		List<Instruction> found = new ArrayList<>();
+
+		List<Instruction> entry = function.getEntry().getInstructions();
+
+		for (int j = 0; j < entry.size(); ++j) {
+			Instruction instruction = entry.get(j);
+
+			if (instruction.getOpcode() != Opcode.ALLOCA)
+				continue;
+
+			boolean promotable = true;
+			for (int i = 0; i < instruction.getUserCount() && promotable; ++i) {
+				Instruction user = instruction.getUser(i);
+
+				promotable = (user.getOpcode() == Opcode.LOAD) ||
+				             (user.getOpcode() == Opcode.STORE && user.getOperand(1) == instruction && user.getOperand(0) != instruction);
+			}
+
+			instruction.index = promotable ? found.size() : -1;
+			if (promotable)
+				found.add(instruction);
+		}
+
+		allocas = found.toArray(new Instruction[0]);
+	}
+
+	/* The promoted variable a load or store is of, or -1 */
+	private int variable(Instruction instruction) {
+		Value pointer;
+
+		if (instruction.getOpcode() == Opcode.LOAD)
+			pointer = instruction.getOperand(0);
+		else if (instruction.getOpcode() == Opcode.STORE)
+			pointer = instruction.getOperand(1);
+		else
+			return -1;
+
+		if (!(pointer instanceof Instruction) || ((Instruction) pointer).getOpcode() != Opcode.ALLOCA)
+			return -1;
+
+		return ((Instruction) pointer).index;
+	}
+
+	/* Each join point is in the frontier of the blocks from its predecessors up to its dominator */
+	private void frontiers() {
+		int n = blocks.length;
+		int[] sizes = new int[n];
+
+		frontiers = new int[n][];
+		for (int b = 0; b < n; ++b) {
+			if (predecessors[b].length < 2)
+				continue;
+
+			for (int p: predecessors[b]) {
+				for (int runner = p; runner != idom[b]; runner = idom[runner]) {
+					int[] frontier = frontiers[runner];
+
+					/* Walks from several predecessors may cross the same block */
+					if (frontier != null && sizes[runner] > 0 && frontier[sizes[runner] - 1] == b)
+						continue;
+
+					if (frontier == null)
+						frontier = frontiers[runner] = new int[2];
+					else if (sizes[runner] == frontier.length)
+						frontier = frontiers[runner] = Arrays.copyOf(frontier, sizes[runner] * 2);
+
+					frontier[sizes[runner]++] = b;
+				}
+			}
+		}
+
+		for (int b = 0; b < n; ++b)
+			frontiers[b] = (frontiers[b] != null) ? Arrays.copyOf(frontiers[b], sizes[b]) : new int[0];
+	}
+
+	private void placePhis() {
+		int n = blocks.length;
+		int v = allocas.length;
+
+		/* The blocks storing to each variable, and whether it is read before a store in some block */
+		int[][] stores = new int[v][];
+		int[] storeCounts = new int[v];
+		int[] storedIn = new int[v];         /* Last block (+ 1) seen storing to it */
+		boolean[] live = new boolean[v];
+
+		for (int b = 0; b < n; ++b) {
+			List<Instruction> instructions = blocks[b].getInstructions();
+
+			for (int j = 0; j < instructions.size(); ++j) {
+				Instruction instruction = instructions.get(j);
+				int variable = variable(instruction);
+
+				if (instruction.getComment() != null)
+					comments = true;
+
+				if (variable < 0)
+					continue;
+
+				if (instruction.getOpcode() == Opcode.LOAD) {
+					if (storedIn[variable] != b + 1)
+						live[variable] = true;
+				} else if (storedIn[variable] != b + 1) {
+					storedIn[variable] = b + 1;
+
+					if (stores[variable] == null)
+						stores[variable] = new int[4];
+					else if (storeCounts[variable] == stores[variable].length)
+						stores[variable] = Arrays.copyOf(stores[variable], storeCounts[variable] * 2);
+
+					stores[variable][storeCounts[variable]++] = b;
+				}
+			}
+		}
+
+		placed = new Placed[n];
+
+		/* Marks, by variable (+ 1): Has a phi for it, has been on the worklist */
+		int[] hasPhi = new int[n];
+		int[] queued = new int[n];
+		int[] worklist = new int[n];
+
+		for (int variable = 0; variable < v; ++variable) {
+			if (!live[variable] || stores[variable] == null)
+				continue;
+
+			int size = 0;
+			for (int i = 0; i < storeCounts[variable]; ++i) {
+				int b = stores[variable][i];
+
+				queued[b] = variable + 1;
+				worklist[size++] = b;
+			}
+
+			while (size > 0) {
+				for (int f: frontiers[worklist[--size]]) {
+					if (hasPhi[f] == variable + 1)
+						continue;
+
+					hasPhi[f] = variable + 1;
+
+					Instruction phi = new Instruction(Opcode.PHI, allocas[variable].getType().getPointee(), -1);
+					placed[f] = new Placed(phi, variable, placed[f]);
+					phis.add(phi);
+
+					if (queued[f] != variable + 1) {
+						queued[f] = variable + 1;
+						worklist[size++] = f;
+					}
+				}
+			}
+		}
+	}
+
+	/* Loads take the value of their variable, stores set it: Both go, as do the allocas' user lists */
+	private void rename() {
+		int n = blocks.length;
+
+		current = new Value[allocas.length];
+		for (Instruction alloca: allocas)
+			alloca.dropUsers();
+
+		int[] child = dominators.child;
+		int[] sibling = dominators.sibling;
+
+		/* Preorder: A block is pushed once more (as ~b) to be left, after its children */
+		int[] stack = new int[2 * n];
+		int[] marks = new int[n];
+		int depth = 0;
+
+		stack[depth++] = 0;
+
+		while (depth > 0) {
+			int b = stack[--depth];
+
+			if (b < 0) {
+				undo(marks[~b]);
+				continue;
+			}
+
+			marks[b] = undoSize;
+			stack[depth++] = ~b;
+
+			rename(blocks[b]);
+
+			for (int c = child[b]; c >= 0; c = sibling[c])
+				stack[depth++] = c;
+		}
+	}
+
+	private void rename(BasicBlock block) {
+		for (Placed p = placed[block.order]; p != null; p = p.next)
+			define(p.variable, p.phi);
+
+		List<Instruction> instructions = block.getInstructions();
+
+		for (int j = 0; j < instructions.size(); ++j) {
+			Instruction instruction = instructions.get(j);
+			int variable = variable(instruction);
+
+			if (variable < 0)
+				continue;
+
+			if (instruction.getOpcode() == Opcode.LOAD) {
+				replace(instruction, value(variable));
+			} else {
+				define(variable, instruction.getOperand(0));
+				instruction.erase();
+			}
+		}
+
+		for (int i = 0; i < Dominators.successorCount(block); ++i) {
+			BasicBlock successor = Dominators.successor(block, i);
+
+			for (Placed p = placed[successor.order]; p != null; p = p.next)
+				p.phi.addIncoming(value(p.variable), block);
+		}
+	}
+
+	private Value value(int variable) {
+		if (current[variable] == null)
+			current[variable] = Constant.undef(allocas[variable].getType().getPointee());
+
+		return current[variable];
+	}
+
+	private void define(int variable, Value value) {
+		if (undoSize == undoVariables.length) {
+			undoVariables = Arrays.copyOf(undoVariables, undoSize * 2);
+			undoValues = Arrays.copyOf(undoValues, undoSize * 2);
+		}
+
+		undoVariables[undoSize] = variable;
+		undoValues[undoSize] = current[variable];
+		++undoSize;
+
+		current[variable] = value;
+	}
+
+	private void undo(int mark) {
+		while (undoSize > mark) {
+			--undoSize;
+			current[undoVariables[undoSize]] = undoValues[undoSize];
+			undoValues[undoSize] = null;
+		}
+	}
+
+	/* Phis of a single value (but themselves) stand for it. Phis using a removed one may become so */
+	private void removeTrivialPhis() {
+		Deque<Instruction> worklist = new ArrayDeque<>(phis);
+
+		while (!worklist.isEmpty()) {
+			Instruction phi = worklist.pop();
+
+			if (phi.getParent() == null)
+				continue;
+
+			Value same = null;
+			boolean trivial = true;
+
+			for (int i = 0; i < phi.getOperandCount() && trivial; ++i) {
+				Value operand = phi.getOperand(i);
+
+				if (operand == phi || operand == same)
+					continue;
+
+				trivial = (same == null);
+				same = operand;
+			}
+
+			if (!trivial)
+				continue;
+
+			if (same == null)
+				same = Constant.undef(phi.getType());
+
+			for (int i = 0; i < phi.getUserCount(); ++i) {
+				Instruction user = phi.getUser(i);
+
+				if (user != phi && user.getOpcode() == Opcode.PHI)
+					worklist.push(user);
+			}
+
+			replace(phi, same);
+		}
+	}
+
+	/* Phis placed for a variable that is read no more after the join: Only (such) phis use them */
+	private void removeDeadPhis() {
+		if (phis.isEmpty())
+			return;
+
+		Set<Instruction> placedPhis = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Instruction phi: phis) {
+			if (phi.getParent() != null)
+				placedPhis.add(phi);
+		}
+
+		Set<Instruction> live = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Instruction> worklist = new ArrayDeque<>();
+
+		for (Instruction phi: placedPhis) {
+			for (int i = 0; i < phi.getUserCount(); ++i) {
+				if (!placedPhis.contains(phi.getUser(i))) {
+					live.add(phi);
+					worklist.push(phi);
+					break;
+				}
+			}
+		}
+
+		while (!worklist.isEmpty()) {
+			Instruction phi = worklist.pop();
+
+			for (int i = 0; i < phi.getOperandCount(); ++i) {
+				Value operand = phi.getOperand(i);
+
+				if (placedPhis.contains(operand) && live.add((Instruction) operand))
+					worklist.push((Instruction) operand);
+			}
+		}
+
+		for (Instruction phi: placedPhis) {
+			if (!live.contains(phi))
+				phi.erase();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package ir;
+
+import java.util.Arrays;
+
+/* Anything an instruction can take as an operand: Constants, globals, function arguments
+ * and the results of other instructions. Each has a type.
+ * Arguments and instructions also keep their users (def-use chains): The instructions that
+ * take them as operands, once per operand. Constants and globals are shared between functions
+ * (and threads), so they keep none */
+public abstract class Value {
+	private static final Instruction[] NONE = new Instruction[0];
+
+	private final LlvmType type;
+
+	/* Most values have a single user: It is kept apart, and only any further ones in an array */
+	private Instruction firstUser;
+	private Instruction[] users = NONE;
+	private int userCount = 0;
+
+	protected Value(LlvmType type) {
+		this.type = type;
+	}
+
+	public LlvmType getType() {
+		return type;
+	}
+
+	boolean tracksUsers() {
+		return true;
+	}
+
+	void addUser(Instruction user) {
+		if (!tracksUsers())
+			return;
+
+		if (userCount == 0) {
+			firstUser = user;
+		} else {
+			if (userCount - 1 == users.length)
+				users = Arrays.copyOf(users, Math.max(4, users.length * 2));
+
+			users[userCount - 1] = user;
+		}
+
+		++userCount;
+	}
+
+	/* One of user's uses, the last one recorded */
+	void removeUser(Instruction user) {
+		for (int i = userCount - 1; i >= 0; --i) {
+			if (getUser(i) == user) {
+				Instruction last = getUser(--userCount);
+
+				if (i == 0)
+					firstUser = last;
+				else
+					users[i - 1] = last;
+
+				if (userCount == 0)
+					firstUser = null;
+				else
+					users[userCount - 1] = null;
+
+				return;
+			}
+		}
+	}
+
+	public int getUserCount() {
+		return userCount;
+	}
+
+	public Instruction getUser(int i) {
+		return (i == 0) ? firstUser : users[i - 1];
+	}
+
+	/* Forget all users at once, as they are all about to be erased */
+	void dropUsers() {
+		firstUser = null;
+		users = NONE;
+		userCount = 0;
+	}
+
+	/* Have every user take value instead */
+	public void replaceAllUsesWith(Value value) {
+		if (value == this)
+			return;
+
+		while (userCount > 0)
+			getUser(userCount - 1).replaceUsesOf(this, value);
+	}
+}
@@ -0,0 +1,80 @@
+#!/bin/bash
+
+# Parse a generated program of C classes (ASCII, or with UTF-8 comments) with each
+# character stream and with the descent parser, the same file RUNS times in one JVM so the later runs are warm,
+# and print the best and median parse time and the bytes allocated by the parse.
+# Usage: ./parse.sh [C ...]  (default: 1000 5000)
+# RUNS (default 10), and extra flags for the JVM or Main, go in RUNS / JAVA_OPTS / MAIN_OPTS.
+
+CLASSES=("$@")
+[[ ${#CLASSES[@]} -eq 0 ]] && CLASSES=(1000 5000)
+
+RUNS=${RUNS:-10}
+JAVA_OPTS=${JAVA_OPTS:-"-Xmx4g"}
+MAIN_OPTS=${MAIN_OPTS:-""}
+
+MODES=("--charstream java" "--charstream mapped" "--parser descent")
+
+DIR=$(mktemp -d)
+trap 'rm -rf "$DIR"' EXIT
+
+generate() {
+	awk -v classes="$1" -v utf8="$2" '
+	BEGIN {
+		print "class Parse {"
+		print "\tpublic static void main(String[] a) {"
+		print "\t\tSystem.out.println(new C0().m(1));"
+		print "\t}"
+		print "}"
+
+		for (k = 0; k < classes; ++k) {
+			print (utf8 ? "// κλάση " k : "// class " k)
+			print "class C" k " {"
+			print "\tint f;"
+			print "\tint[] q;"
+			print "\tpublic int m(int x) {"
+			print "\t\tint i;"
+			print "\t\t/* a loop"
+			print "\t\t   over q */"
+			print "\t\tq = new int[10];"
+			print "\t\ti = 0;"
+			print "\t\twhile (i < (q.length)) {"
+			print "\t\t\tq[i] = (i * x) + f;"
+			print "\t\t\tif ((i < 5) && !(x < 0)) f = f + (q[i]); else f = f - 1;"
+			print "\t\t\ti = i + 1;"
+			print "\t\t}"
+			print "\t\treturn f;"
+			print "\t}"
+			print "}"
+		}
+	}'
+}
+
+for C in "${CLASSES[@]}"; do
+	for UTF8 in 0 1; do
+		FILE="$DIR/Parse.java"
+		generate "$C" "$UTF8" > "$FILE"
+		SIZE=$(( $(stat -c %s "$FILE") / 1024 ))
+
+		for MODE in "${MODES[@]}"; do
+			FILES=()
+			for (( R = 0; R < RUNS; ++R )); do
+				FILES+=("$FILE")
+			done
+
+			# One --stats line per run: Its parse time (ms) and bytes, sorted by time
+			java $JAVA_OPTS Main $MAIN_OPTS $MODE --stats - "${FILES[@]}" 2>&1 | grep '^{' |
+			sed -n 's/.*"parse":{"ns":\([0-9]*\),"allocated_bytes":\([0-9]*\)}.*/\1 \2/p' | sort -n |
+			awk -v c="$C" -v kb="$SIZE" -v utf8="$UTF8" -v mode="$MODE" '
+			{ ns[NR] = $1; bytes[NR] = $2 }
+			END {
+				if (NR == 0) {
+					printf "%6d classes %6d KB %-5s  %-22s FAILED\n", c, kb, utf8 ? "utf-8" : "ascii", mode
+					exit
+				}
+				printf "%6d classes %6d KB %-5s  %-22s best %7.1f ms  median %7.1f ms  %8.1f MB\n",
+				       c, kb, utf8 ? "utf-8" : "ascii", mode, ns[1] / 1e6, ns[int((NR + 1) / 2)] / 1e6, bytes[1] / 1e6
+			}'
+		done
+	done
+done
@@ -0,0 +1,81 @@
+#!/bin/bash
+
+# Compile the same F generated programs from CLIENTS concurrent Clients of one server,
+# sharing one IR cache (--cache), twice over: Once filling it, once served from it.
+# Every compile must succeed and give the same IR as a plain java Main.
+# Usage: ./servercache.sh [F [CLIENTS]]  (default: 40 6)
+
+FILES=${1:-40}
+CLIENTS=${2:-6}
+
+DIR=$(mktemp -d)
+export MINIJAVA_SOCKET="$DIR/minijava.sock"
+
+java Main --server "$MINIJAVA_SOCKET" > "$DIR/server.log" 2>&1 &
+SERVER=$!
+trap 'kill $SERVER 2>/dev/null; rm -rf "$DIR"' EXIT
+
+generate() {
+	awk -v n="$1" '
+	BEGIN {
+		print "class P" n " {"
+		print "\tpublic static void main(String[] a) {"
+		print "\t\tSystem.out.println(new C0().m(" n "));"
+		print "\t}"
+		print "}"
+
+		for (k = 0; k <= n % 7; ++k) {
+			print "class C" k " {"
+			print "\tint f;"
+			print "\tpublic int m(int x) {"
+			print "\t\tint i;"
+			print "\t\ti = 0;"
+			print "\t\twhile (i < x) {"
+			print "\t\t\tf = f + (i * " k ");"
+			print "\t\t\ti = i + 1;"
+			print "\t\t}"
+			print "\t\treturn f;"
+			print "\t}"
+			print "}"
+		}
+	}'
+}
+
+mkdir "$DIR/expected"
+for (( N = 0; N < FILES; ++N )); do
+	generate "$N" > "$DIR/expected/P$N.java"
+done
+
+java Main "$DIR"/expected/P*.java > /dev/null || { echo "java Main failed"; exit 1; }
+
+# Wait for the server to listen
+for (( T = 0; T < 100; ++T )); do
+	[[ -S "$MINIJAVA_SOCKET" ]] && break
+	sleep 0.1
+done
+
+FAILED=0
+
+for ROUND in fill hit; do
+	for (( C = 0; C < CLIENTS; ++C )); do
+		rm -rf "$DIR/client$C"
+		mkdir "$DIR/client$C"
+		cp "$DIR"/expected/*.java "$DIR/client$C"
+		java Client --cache "$DIR/cache" "$DIR/client$C"/P*.java > "$DIR/client$C/output.txt" 2>&1 &
+	done
+	wait $(jobs -p | grep -v "^$SERVER$")
+
+	for (( C = 0; C < CLIENTS; ++C )); do
+		ERRORS=$(grep -c "Exception\|Error" "$DIR/client$C/output.txt")
+		DIFFERENT=0
+		for (( N = 0; N < FILES; ++N )); do
+			cmp -s "$DIR/expected/P$N.ll" "$DIR/client$C/P$N.ll" || (( ++DIFFERENT ))
+		done
+
+		echo "$ROUND client $C: $ERRORS errors, $DIFFERENT of $FILES files with other IR"
+		(( ERRORS + DIFFERENT > 0 )) && FAILED=1
+	done
+done
+
+[[ $FAILED == 0 ]] && echo "OK" || { echo "FAILED"; grep -h "Exception\|Error" "$DIR"/client*/output.txt | sort | uniq -c; }
+exit $FAILED
@@ -0,0 +1,63 @@
+#!/bin/bash
+
+# Compile programs nested N levels deep, one shape at a time, and print
+# the --stats line of each (parse/symbols/typecheck/codegen time and bytes).
+# Usage: ./stress.sh [N ...]  (default: 100000 200000 500000 1000000)
+# Extra flags for the JVM or Main go in JAVA_OPTS / MAIN_OPTS.
+
+LEVELS=("$@")
+[[ ${#LEVELS[@]} -eq 0 ]] && LEVELS=(100000 200000 500000 1000000)
+
+JAVA_OPTS=${JAVA_OPTS:-"-Xmx4g"}
+MAIN_OPTS=${MAIN_OPTS:-"--parser descent"}
+
+DIR=$(mktemp -d)
+trap 'rm -rf "$DIR"' EXIT
+
+# Body of main(), N levels deep
+generate() {
+	awk -v shape="$1" -v n="$2" '
+	function rep(s, k,   r) {        # s k times, by doubling
+		for (r = ""; k > 0; k = int(k / 2)) {
+			if (k % 2)
+				r = r s
+			s = s s
+		}
+		return r
+	}
+
+	BEGIN {
+		if (shape == "brackets")
+			body = "System.out.println(" rep("(", n) "1" rep(")", n) ");"
+		else if (shape == "not")
+			body = "if (" rep("!", n) "true) System.out.println(1); else System.out.println(0);"
+		else if (shape == "and")
+			body = "if (" rep("(true && ", n) "true" rep(")", n) ") System.out.println(1); else System.out.println(0);"
+		else if (shape == "blocks")
+			body = rep("{", n) "System.out.println(1);" rep("}", n)
+		else if (shape == "if")
+			body = rep("if (true) ", n) "System.out.println(1);" rep(" else System.out.println(0);", n)
+		else if (shape == "while")
+			body = rep("while (false) ", n) "System.out.println(1);"
+
+		print "class Stress {"
+		print "\tpublic static void main(String[] a) {"
+		print "\t\t" body
+		print "\t}"
+		print "}"
+	}'
+}
+
+for SHAPE in brackets not and blocks if while; do
+	for N in "${LEVELS[@]}"; do
+		FILE="$DIR/${SHAPE}_$N.java"
+		generate "$SHAPE" "$N" > "$FILE"
+
+		START=$(date +%s%N)
+		STATS=$(java $JAVA_OPTS Main $MAIN_OPTS --stats - "$FILE" 2>&1 | grep '^{')
+		END=$(date +%s%N)
+
+		printf '%-8s %8d  %6d ms  %s\n' "$SHAPE" "$N" $(( (END - START) / 1000000 )) "${STATS:-FAILED}"
+		rm -f "$DIR"/*.ll
+	done
+done
@@ -5,33 +5,67 @@ import java.util.*;
 public class ClassSymbol extends FieldContainerSymbol {
 	private ClassSymbol parent;           /* MiniJava: Single Inheritance */
 	private final Map<String, MethodSymbol> methods = new LinkedHashMap<>();
-	private int lastFieldOffset = 0;
+	private int lastFieldOffset = 0;              /* Set by layout() */
 	private int lastMethodOffset = 0;
 
+	/* Set by layout(): Padding left between fields, as { start, end } ranges */
+	private List<int[]> gaps = Collections.emptyList();
+
+	/* Set by freeze(): Own and inherited members, flattened, so lookups no longer walk up the chain.
+	 * A class's tables extend its parent's, so a member keeps its index down the hierarchy, and the
+	 * SymbolTable keeps the few indices each name is found at, across all classes */
+	private Symbol[] fieldTable;                  /* Parents' first, shadowed ones included, then own by declaration */
+	private Slot[] fieldSlots;                    /* Same order */
+	private MethodSymbol[] vtable;                /* By method offset */
+	private Map<String, int[]> fieldIndices;
+	private Map<String, int[]> methodIndices;
+
+	/* Set by number(): Pre-order number in the class forest, and how many classes descend from it.
+	 * The descendants of a class are the ones numbered right after it */
+	private int preorder = -1;
+	private int descendants = 0;
+
+	/* Its type is the class itself: Bound to it by SymbolTable.addClass() */
+
 	// ClassDeclaration
-	public ClassSymbol(String name) throws Exception {
-		super("class", name);
+	public ClassSymbol(ClassType type) {
+		super(type, type.getName());
 	}
 
 	// ClassExtendsDeclaration
-	public ClassSymbol(String name, ClassSymbol parent) throws Exception {
-		this(name);
+	public ClassSymbol(ClassType type, ClassSymbol parent) {
+		this(type);
 		this.parent = parent;
 
-		/* Resume counters from parent class */
-		lastFieldOffset = parent.getLastFieldOffset();
+		/* Resume counter from parent class (fields are laid out on freezing, see layout()) */
 		lastMethodOffset = parent.getLastMethodOffset();
 	}
 
 	@Override
 	public void addField(Symbol field) {
-		field.setOffset(lastFieldOffset);
-		lastFieldOffset += field.getSize();
+		checkNotFrozen();
 
 		super.addField(field);
 	}
 
 	public void addMethod(MethodSymbol method) {
+		checkNotFrozen();
+
+		/* Overriding a parent method (same signature, see isOverload()): Borrow its offset */
+		MethodSymbol overridden = (parent != null) ? parent.getMethod(method.getName()) : null;
+
+		if (overridden != null && overridden.equals(method)) {
+			method.setOverride();
+			method.setOffset(overridden.getOffset());
+		}
+
+		putMethod(method);
+	}
+
+	/* A method already marked as an override (with the offset it borrows) or not, as SymbolFile loads them */
+	void putMethod(MethodSymbol method) {
+		checkNotFrozen();
+
 		/* Essentally, offset is undefined for static methods */
 		if (!method.isStatic() && !method.isOverride()) {
 			method.setOffset(lastMethodOffset);
@@ -42,16 +76,157 @@ public class ClassSymbol extends FieldContainerSymbol {
 		methods.put(method.getName(), method);
 	}
 
-	/* Size of class is essentially the sum of all its fields
-	 (C structs come to mind) */
+	/* Size of class: Where its last field ends (C structs come to mind, minus the tail padding,
+	 * which subclasses may fill). Frozen only */
 	@Override
 	public int getSize() {
 		return lastFieldOffset;
 	}
 
-	/* These getters recurse up the inheritance tree to locate a field or function */
+	/* Offsets for the fields of the class itself, after its parent's, each aligned to its size.
+	 * Largest first, so that padding is only needed before the first of each size; the gaps it leaves
+	 * (here or in a parent) are filled by smaller fields, first fit. The parent's fields keep their
+	 * offsets, so its methods find them in objects of the subclass too */
+	private void layout() {
+		List<Symbol> bySize = new ArrayList<>(fields);
+		bySize.sort((a, b) -> b.getSize() - a.getSize());          /* Stable: Declaration order otherwise */
+
+		List<int[]> gaps = (parent != null) ? new ArrayList<>(parent.gaps) : new ArrayList<>();
+		int end = (parent != null) ? parent.lastFieldOffset : 0;
+
+		for (Symbol field: bySize) {
+			int size = field.getSize();
+			int offset = -1;
+
+			for (int i = 0; i < gaps.size(); ++i) {
+				int[] gap = gaps.get(i);
+				int start = align(gap[0], size);
+
+				if (start + size > gap[1])
+					continue;
+
+				/* What is left on either side of it */
+				gaps.remove(i);
+				if (start + size < gap[1])
+					gaps.add(i, new int[] { start + size, gap[1] });
+				if (gap[0] < start)
+					gaps.add(i, new int[] { gap[0], start });
+
+				offset = start;
+				break;
+			}
+
+			if (offset < 0) {
+				offset = align(end, size);
+
+				if (end < offset)
+					gaps.add(new int[] { end, offset });
+
+				end = offset + size;
+			}
+
+			field.setOffset(offset);
+		}
+
+		this.gaps = gaps;
+		lastFieldOffset = end;
+	}
+
+	private static int align(int offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+
+	/* Once the class and its parents are complete (parents first, see SymbolTable.freeze()):
+	 * Flatten fields and methods into tables of its own, and index their names */
+	void freeze(Map<String, int[]> fieldIndices, Map<String, int[]> methodIndices) {
+		if (isFrozen())
+			return;
+
+		if (parent != null && !parent.isFrozen())
+			throw new IllegalStateException("Parent of class " + getName() + " is not frozen");
+
+		layout();
+
+		int inherited = (parent != null) ? parent.fieldTable.length : 0;
+
+		fieldTable = new Symbol[inherited + fields.size()];
+		fieldSlots = new Slot[fieldTable.length];
+		vtable = new MethodSymbol[getMethodsAmount()];
+
+		if (parent != null) {
+			System.arraycopy(parent.fieldTable, 0, fieldTable, 0, inherited);
+			System.arraycopy(parent.fieldSlots, 0, fieldSlots, 0, inherited);
+			System.arraycopy(parent.vtable, 0, vtable, 0, parent.vtable.length);
+		}
+
+		int index = inherited;
+		for (Symbol field: fields) {
+			fieldTable[index] = field;
+			fieldSlots[index] = new Slot(Slot.Kind.FIELD, field.getOffset(), field);
+			addIndex(fieldIndices, field.getName(), index++);
+		}
+
+		/* Overriding methods replace theirs, at the same offset */
+		for (MethodSymbol method: methods.values()) {
+			method.freeze();
+
+			if (method.isStatic())
+				continue;
+
+			vtable[method.getOffset() / 8] = method;
+			addIndex(methodIndices, method.getName(), method.getOffset() / 8);
+		}
+
+		this.fieldIndices = fieldIndices;
+		this.methodIndices = methodIndices;
+	}
+
+	/* Indices kept sorted, for shadowing: The last one that holds name is the nearest definition */
+	private static void addIndex(Map<String, int[]> indices, String name, int index) {
+		int[] existing = indices.get(name);
+
+		if (existing == null) {
+			indices.put(name, new int[] { index });
+			return;
+		}
+
+		int at = Arrays.binarySearch(existing, index);
+		if (at >= 0)
+			return;
+
+		at = -at - 1;
+
+		int[] grown = new int[existing.length + 1];
+		System.arraycopy(existing, 0, grown, 0, at);
+		grown[at] = index;
+		System.arraycopy(existing, at, grown, at + 1, existing.length - at);
+
+		indices.put(name, grown);
+	}
+
+	public boolean isFrozen() {
+		return fieldTable != null;
+	}
+
+	private void checkNotFrozen() {
+		if (isFrozen())
+			throw new IllegalStateException("Class " + getName() + " is frozen");
+	}
+
+	/* Non-static methods, own and inherited, in vtable order */
+	public MethodSymbol[] getVtable() {
+		return vtable.clone();
+	}
+
+	/* Until frozen, these getters recurse up the inheritance tree to locate a field or function */
 	@Override
 	public Symbol getField(String name) {
+		if (isFrozen()) {
+			int index = fieldIndex(name);
+
+			return (index >= 0) ? fieldTable[index] : null;
+		}
+
 		Symbol field = super.getField(name);
 
 		if (field != null)
@@ -62,6 +237,29 @@ public class ClassSymbol extends FieldContainerSymbol {
 			return parent.getField(name);
 	}
 
+	/* Frozen only: The field a name refers to, in methods of this class */
+	public Slot getFieldSlot(String name) {
+		int index = fieldIndex(name);
+
+		return (index >= 0) ? fieldSlots[index] : null;
+	}
+
+	/* Frozen only: Index of the nearest field by that name in fieldTable, or -1 */
+	private int fieldIndex(String name) {
+		int[] indices = fieldIndices.get(name);
+
+		if (indices != null) {
+			for (int i = indices.length - 1; i >= 0; --i) {
+				int index = indices[i];
+
+				if (index < fieldTable.length && fieldTable[index].getName().equals(name))
+					return index;
+			}
+		}
+
+		return -1;
+	}
+
 	@Override
 	public Collection<Symbol> getFields() {
 		// Optimization: Many classes might not extend some other class. No need to putAll()
@@ -80,10 +278,32 @@ public class ClassSymbol extends FieldContainerSymbol {
 
 		/* In HashMaps, put() overrides values for existing keys.
 		 * The subclasses fields shadow the parent ones, in the case of a name conflict */
-		allFields.putAll(fields);
+		for (Symbol field: fields)
+			allFields.put(field.getName(), field);
 	}
 
 	public MethodSymbol getMethod(String name) {
+		if (isFrozen()) {
+			int[] indices = methodIndices.get(name);
+
+			if (indices != null) {
+				for (int index: indices) {
+					if (index < vtable.length && vtable[index].getName().equals(name))
+						return vtable[index];
+				}
+			}
+
+			/* Static ones (main) stay out of the vtable */
+			for (ClassSymbol c = this; c != null; c = c.parent) {
+				MethodSymbol method = c.methods.get(name);
+
+				if (method != null && method.isStatic())
+					return method;
+			}
+
+			return null;
+		}
+
 		MethodSymbol method = methods.get(name);
 
 		if (method != null)
@@ -119,6 +339,24 @@ public class ClassSymbol extends FieldContainerSymbol {
 		return lastMethodOffset / 8; // MethodSymbol size
 	}
 
+	/* Methods defined in this class itself (incl. overrides), not inherited ones */
+	public int getDeclaredMethodsAmount() {
+		return methods.size();
+	}
+
+	public Collection<MethodSymbol> getDeclaredMethods() {
+		return Collections.unmodifiableCollection(methods.values());
+	}
+
+	/* Fields of this class itself, in declaration order */
+	public Collection<Symbol> getDeclaredFields() {
+		return fields;
+	}
+
+	public ClassSymbol getParent() {
+		return parent;
+	}
+
 	public int getLastFieldOffset() {
 		return lastFieldOffset;
 	}
@@ -146,25 +384,47 @@ public class ClassSymbol extends FieldContainerSymbol {
 			return true;
 
 		/* At this point the method was found in a parent class.
- 		 * Compare signature to see if we're overloading or not. */
-		if (existing.equals(candidate)) {
-			/* candidate is overriding a parent method, borrow offset */
-			candidate.setOverride();
-			candidate.setOffset(existing.getOffset());
+ 		 * Compare signature to see if we're overloading or not (overriding, as addMethod() marks it) */
+		return !existing.equals(candidate);
+	}
 
-			return false;
-		} else {
-			return true;
+	/* Number a class forest in pre-order, for isSubclassOf(). classes: Parents before subclasses (as
+	 * SymbolVisitor adds them), so no traversal is needed: Subtree sizes bottom-up, then numbers top-down */
+	static void number(List<ClassSymbol> classes) {
+		for (int i = classes.size() - 1; i >= 0; --i) {
+			ClassSymbol c = classes.get(i);
+
+			if (c.parent != null)
+				c.parent.descendants += 1 + c.descendants;
+		}
+
+		Map<ClassSymbol, Integer> nextChild = new IdentityHashMap<>();
+		int nextRoot = 0;
+
+		for (ClassSymbol c: classes) {
+			if (c.parent == null) {
+				c.preorder = nextRoot;
+				nextRoot += 1 + c.descendants;
+			} else {
+				c.preorder = nextChild.get(c.parent);
+				nextChild.put(c.parent, c.preorder + 1 + c.descendants);
+			}
+
+			nextChild.put(c, c.preorder + 1);
 		}
 	}
 
 	public boolean isSubclassOf(ClassSymbol ancestor) {
-		if (parent == null)
-			return false;
-		else if (parent == ancestor)
-			return true;
-		else
-			return parent.isSubclassOf(ancestor);
+		/* Numbered: Constant time */
+		if (preorder >= 0 && ancestor.preorder >= 0)
+			return ancestor.preorder < preorder && preorder <= ancestor.preorder + ancestor.descendants;
+
+		for (ClassSymbol c = parent; c != null; c = c.parent) {
+			if (c == ancestor)
+				return true;
+		}
+
+		return false;
 	}
 
 	public void printOffsets() {
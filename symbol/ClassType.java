@@ -0,0 +1,25 @@
+package symbol;
+
+/* A class name used as a type. It may come up before (or without) the class
+ * being defined, so the ClassSymbol is bound to it once added to the SymbolTable */
+public class ClassType extends Type {
+	private ClassSymbol classSymbol;
+
+	ClassType(String name) {
+		super(name, 8, "i8*", "null");
+	}
+
+	void bind(ClassSymbol classSymbol) {
+		this.classSymbol = classSymbol;
+	}
+
+	@Override
+	public boolean isValid() {
+		return classSymbol != null;
+	}
+
+	@Override
+	public ClassSymbol getClassSymbol() {
+		return classSymbol;
+	}
+}
@@ -4,14 +4,14 @@ import java.util.*;
 
 /* Abstract class to cover constructs that can contain fields (e.g. Class, Method)*/
 public abstract class FieldContainerSymbol extends Symbol {
-	protected final Map<String, Symbol> fields = new LinkedHashMap<>();
+	protected final SymbolMap<Symbol> fields = new SymbolMap<>();
 
-	public FieldContainerSymbol(String type, String name) {
+	public FieldContainerSymbol(Type type, String name) {
 		super(type, name);
 	}
 
 	public void addField(Symbol field) {
-		fields.put(field.getName(), field);
+		fields.put(field);
 	}
 
 	@Override
@@ -25,7 +25,7 @@ public abstract class FieldContainerSymbol extends Symbol {
 	}
 
 	public Collection<Symbol> getFields() {
-		return fields.values();
+		return fields;
 	}
 
 	public boolean hasField(String name) {
@@ -5,22 +5,45 @@ import java.util.*;
 public class MethodSymbol extends FieldContainerSymbol {
 	private ClassSymbol owner;
 	private boolean override = false;
-	private final Map<String, Symbol> params = new LinkedHashMap<>();
+	private final SymbolMap<Symbol> params = new SymbolMap<>();
+	private MethodType signature;
 
-	public MethodSymbol(String returnType, String name) {
+	/* Set by freeze(): Slots of the parameters and local variables, in declaration order */
+	private Slot[] paramSlots;
+	private Slot[] localSlots;
+
+	public MethodSymbol(Type returnType, String name) {
 		super(returnType, name);
 	}
 
-	public void setOwner(ClassSymbol owner) {
+	/* Once all parameters are in (see SymbolTable.getMethodType()) */
+	public void setSignature(MethodType signature) {
+		checkNotFrozen();
+		this.signature = signature;
+	}
+
+	public MethodType getSignature() {
+		return signature;
+	}
+
+	/* By ClassSymbol.addMethod() */
+	void setOwner(ClassSymbol owner) {
 		this.owner = owner;
 	}
 
-	public void setOverride() {
+	void setOverride() {
 		override = true;
 	}
 
 	public void addParameter(Symbol param) {
-		params.put(param.getName(), param);
+		checkNotFrozen();
+		params.put(param);
+	}
+
+	@Override
+	public void addField(Symbol field) {
+		checkNotFrozen();
+		super.addField(field);
 	}
 
 	public ClassSymbol getOwner() {
@@ -35,14 +58,48 @@ public class MethodSymbol extends FieldContainerSymbol {
 		return params.get(name);
 	}
 
+	/* In declaration order: A read-only view, not a copy */
 	public List<Symbol> getParameters() {
-		return new ArrayList<>(params.values());
+		return params;
 	}
 
 	public boolean hasParameter(String name) {
 		return (getParameter(name) != null);
 	}
 
+	/* Along with its class (see ClassSymbol.freeze()) */
+	void freeze() {
+		paramSlots = new Slot[params.size()];
+		for (int i = 0; i < paramSlots.length; ++i)
+			paramSlots[i] = new Slot(Slot.Kind.PARAMETER, i, params.get(i));
+
+		localSlots = new Slot[fields.size()];
+		for (int i = 0; i < localSlots.length; ++i)
+			localSlots[i] = new Slot(Slot.Kind.LOCAL, i, fields.get(i));
+	}
+
+	public boolean isFrozen() {
+		return paramSlots != null;
+	}
+
+	private void checkNotFrozen() {
+		if (isFrozen())
+			throw new IllegalStateException("Method " + getName() + " is frozen");
+	}
+
+	/* Nearest definition of a variable name used in the body: Parameters and local
+	 * variables shadow class fields. null if undefined */
+	public Slot resolve(String name) {
+		int at;
+
+		if ((at = params.position(name)) >= 0)
+			return paramSlots[at];
+		else if ((at = fields.position(name)) >= 0)
+			return localSlots[at];
+		else
+			return owner.getFieldSlot(name);
+	}
+
 	/* Test if functions have the same signature (i.e. override) */
 	@Override
 	public boolean equals(Object o) {
@@ -54,25 +111,7 @@ public class MethodSymbol extends FieldContainerSymbol {
 
 		MethodSymbol candidate = (MethodSymbol) o;
 
-		if (!sameTypeAs(candidate))
-			return false;
-
-		if (!getName().equals(candidate.getName()))
-			return false;
-
-		List<Symbol> thisParams = getParameters();
-		List<Symbol> candidateParams = candidate.getParameters();
-
-		if (thisParams.size() != candidateParams.size())
-			return false;
-
-		for (int i = 0; i < candidateParams.size(); ++i) {
-			/* Exactly the same argument types, for override */
-			if (!thisParams.get(i).sameTypeAs(candidateParams.get(i)))
-				return false;
-		}
-
 		// Functions are the same, which means overriding (if in the same class)
-		return true;
+		return getName().equals(candidate.getName()) && signature != null && signature == candidate.getSignature();
 	}
 }
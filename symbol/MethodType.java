@@ -0,0 +1,55 @@
+package symbol;
+
+import java.util.*;
+
+/* Signature of a method: Return and parameter types. Interned by the SymbolTable,
+ * so methods of the same signature (overrides) share one */
+public class MethodType extends Type {
+	private final Type returnType;
+	private final List<Type> parameterTypes;
+	private final String llParameters;
+
+	MethodType(Type returnType, List<Type> parameterTypes) {
+		this(returnType, parameterTypes, llParameters(parameterTypes));
+	}
+
+	private MethodType(Type returnType, List<Type> parameterTypes, String llParameters) {
+		/* A pointer, as a vtable entry */
+		super(signature(returnType, parameterTypes), 8, returnType.getLlType() + " (" + llParameters + ")*", "null");
+
+		this.returnType = returnType;
+		this.parameterTypes = Collections.unmodifiableList(new ArrayList<>(parameterTypes));
+		this.llParameters = llParameters;
+	}
+
+	private static String llParameters(List<Type> parameterTypes) {
+		StringBuilder parameters = new StringBuilder("i8*");         /* this */
+
+		for (Type parameter: parameterTypes)
+			parameters.append(", " + parameter.getLlType());
+
+		return parameters.toString();
+	}
+
+	private static String signature(Type returnType, List<Type> parameterTypes) {
+		StringJoiner parameters = new StringJoiner(", ", returnType + " (", ")");
+
+		for (Type parameter: parameterTypes)
+			parameters.add(parameter.getName());
+
+		return parameters.toString();
+	}
+
+	public Type getReturnType() {
+		return returnType;
+	}
+
+	public List<Type> getParameterTypes() {
+		return parameterTypes;
+	}
+
+	/* LLVM parameter types, "this" included: "i8*, i32, i1" */
+	public String getLlParameters() {
+		return llParameters;
+	}
+}
@@ -0,0 +1,44 @@
+package symbol;
+
+/* What a variable name used in a method body refers to: One of the method's parameters
+ * or local variables, or a field of its class. Made once per symbol when classes are frozen,
+ * so resolving a use (MethodSymbol.resolve()) allocates nothing */
+public class Slot {
+	public enum Kind { PARAMETER, LOCAL, FIELD }
+
+	private final Kind kind;
+	private final int index;
+	private final Symbol symbol;
+
+	Slot(Kind kind, int index, Symbol symbol) {
+		this.kind = kind;
+		this.index = index;
+		this.symbol = symbol;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public boolean isField() {
+		return kind == Kind.FIELD;
+	}
+
+	/* Parameter or local variable: Its position in the method. Field: Its offset in the object
+	 * (not counting the vtable pointer) */
+	public int getIndex() {
+		return index;
+	}
+
+	public Symbol getSymbol() {
+		return symbol;
+	}
+
+	public String getName() {
+		return symbol.getName();
+	}
+
+	public Type getType() {
+		return symbol.getType();
+	}
+}
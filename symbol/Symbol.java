@@ -1,16 +1,17 @@
 package symbol;
 
 public class Symbol {
-	private final String type;
+	private final Type type;
 	private final String name;
 	private int offset;
 
-	public Symbol(String type, String name) {
+	public Symbol(Type type, String name) {
 		this.type = type;
 		this.name = name;
 	}
 
-	public void setOffset(int offset) {
+	/* By its class, as it is added (see ClassSymbol) */
+	void setOffset(int offset) {
 		this.offset = offset;
 	}
 
@@ -18,29 +19,20 @@ public class Symbol {
 		return name;
 	}
 
-	public String getType() {
+	public Type getType() {
 		return type;
 	}
 
 	public int getSize() {
-		switch(type) {
-			case "boolean":
-				return 1;
-
-			case "int":
-				return 4;
-
-			default:               /* int[], Instances of classes */
-				return 8;
-		}
+		return type.getSize();
 	}
 
 	public boolean isStatic() {
-		return type.startsWith("static");
+		return type == Type.STATIC_VOID;
 	}
 
-	public boolean hasType(String type) {
-		return this.type.equals(type);
+	public boolean hasType(Type type) {
+		return this.type == type;
 	}
 
 	public boolean sameTypeAs(Symbol s) {
@@ -50,16 +42,4 @@ public class Symbol {
 	public int getOffset() {
 		return offset;
 	}
-
-	public static boolean isBasicType(String type) {
-		switch(type) {
-			case "boolean":
-			case "int":
-			case "int[]":
-				return true;
-
-			default:
-				return false;
-		}
-	}
 }
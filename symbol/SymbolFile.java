@@ -0,0 +1,288 @@
+package symbol;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/* Binary image of a frozen SymbolTable, so that it can be loaded instead of rebuilt from the AST.
+ * Names (of symbols and types) are written once, in a string table, and referred to by index:
+ *
+ *   int magic, int FORMAT
+ *   int strings, { int length, UTF-8 bytes }*
+ *   int signatures, { int returnType, int parameters, { int type }* }*
+ *   int classes, {
+ *       int name, int parent (index of an earlier class, or -1)
+ *       int fields, { int name, int type, int offset }*
+ *       int methods, { int name, int signature, byte override, int offset,
+ *                      { int name }* (one per parameter in the signature),
+ *                      int locals, { int name, int type }* }*
+ *   }*
+ *
+ * On loading, offsets are worked out again (those of methods as classes are added, those of fields
+ * when the table is frozen) and checked against the stored ones. Overrides take theirs from the file,
+ * so the methods they override need not be looked up */
+public class SymbolFile {
+	private static final int MAGIC = 0x4D4A5354;        /* "MJST" */
+
+	/* Bump whenever the layout above changes */
+	public static final int FORMAT = 1;
+
+	public static void write(SymbolTable symbols, Path path) throws IOException {
+		if (!symbols.isFrozen())
+			throw new IllegalStateException("Symbol table is not frozen");
+
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		Map<MethodType, Integer> signatureIndices = new HashMap<>();
+		Map<ClassSymbol, Integer> classIndices = new HashMap<>();
+
+		/* Signatures and classes first, as the string table fills up */
+		Output signatures = new Output();
+		Output body = new Output();
+
+		body.putInt(symbols.getClasses().size());
+		for (ClassSymbol c: symbols.getClasses()) {
+			classIndices.put(c, classIndices.size());
+
+			body.putInt(string(strings, c.getName()));
+			body.putInt((c.getParent() != null) ? classIndices.get(c.getParent()) : -1);
+
+			Collection<Symbol> fields = c.getDeclaredFields();
+			body.putInt(fields.size());
+			for (Symbol field: fields) {
+				putVariable(body, strings, field);
+				body.putInt(field.getOffset());
+			}
+
+			Collection<MethodSymbol> methods = c.getDeclaredMethods();
+			body.putInt(methods.size());
+			for (MethodSymbol method: methods) {
+				MethodType signature = method.getSignature();
+				Integer index = signatureIndices.get(signature);
+
+				/* Interned: Methods of the same signature share it */
+				if (index == null) {
+					index = signatureIndices.size();
+					signatureIndices.put(signature, index);
+
+					signatures.putInt(string(strings, signature.getReturnType().getName()));
+					signatures.putInt(signature.getParameterTypes().size());
+					for (Type type: signature.getParameterTypes())
+						signatures.putInt(string(strings, type.getName()));
+				}
+
+				body.putInt(string(strings, method.getName()));
+				body.putInt(index);
+				body.putByte(method.isOverride() ? 1 : 0);
+				body.putInt(method.getOffset());
+
+				for (Symbol param: method.getParameters())
+					body.putInt(string(strings, param.getName()));
+
+				body.putInt(method.getFields().size());
+				for (Symbol local: method.getFields())
+					putVariable(body, strings, local);
+			}
+		}
+
+		Output header = new Output();
+		header.putInt(MAGIC);
+		header.putInt(FORMAT);
+
+		header.putInt(strings.size());
+		for (String s: strings.keySet()) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+			header.putInt(bytes.length);
+			header.putBytes(bytes);
+		}
+
+		header.putInt(signatureIndices.size());
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer[] buffers = { header.buffer(), signatures.buffer(), body.buffer() };
+
+			while (buffers[2].hasRemaining())
+				channel.write(buffers);
+		}
+	}
+
+	/* Memory-mapped. Returns null for a file of another format; throws if the file is damaged */
+	public static SymbolTable read(Path path) throws IOException {
+		MappedByteBuffer in;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != FORMAT)
+				return null;
+
+			String[] strings = new String[in.getInt()];
+			for (int i = 0; i < strings.length; ++i) {
+				byte[] bytes = new byte[in.getInt()];
+				in.get(bytes);
+
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			SymbolTable symbols = new SymbolTable();
+
+			MethodType[] signatures = new MethodType[in.getInt()];
+			for (int i = 0; i < signatures.length; ++i) {
+				Type returnType = type(symbols, strings[in.getInt()]);
+				Type[] parameterTypes = new Type[in.getInt()];
+
+				for (int j = 0; j < parameterTypes.length; ++j)
+					parameterTypes[j] = type(symbols, strings[in.getInt()]);
+
+				signatures[i] = symbols.getMethodType(returnType, Arrays.asList(parameterTypes));
+			}
+
+			ClassSymbol[] classes = new ClassSymbol[in.getInt()];
+			int[][] fieldOffsets = new int[classes.length][];
+
+			for (int i = 0; i < classes.length; ++i) {
+				ClassType type = symbols.getClassType(strings[in.getInt()]);
+				int parent = in.getInt();
+
+				if (parent >= i)
+					throw damaged(path, "parent of class " + type + " comes after it");
+
+				ClassSymbol c = (parent >= 0) ? new ClassSymbol(type, classes[parent]) : new ClassSymbol(type);
+
+				fieldOffsets[i] = new int[in.getInt()];
+				for (int j = 0; j < fieldOffsets[i].length; ++j) {
+					c.addField(getVariable(in, symbols, strings));
+					fieldOffsets[i][j] = in.getInt();
+				}
+
+				for (int methods = in.getInt(); methods > 0; --methods) {
+					String name = strings[in.getInt()];
+					MethodType signature = signatures[in.getInt()];
+					boolean override = in.get() != 0;
+					int offset = in.getInt();
+
+					MethodSymbol method = new MethodSymbol(signature.getReturnType(), name);
+
+					for (Type paramType: signature.getParameterTypes())
+						method.addParameter(new Symbol(paramType, strings[in.getInt()]));
+
+					method.setSignature(signature);
+
+					for (int locals = in.getInt(); locals > 0; --locals)
+						method.addField(getVariable(in, symbols, strings));
+
+					/* An override borrows its offset: No need to look up the method it overrides */
+					if (override) {
+						method.setOverride();
+						method.setOffset(offset);
+					}
+
+					c.putMethod(method);
+
+					if (!method.isStatic() && method.getOffset() != offset)
+						throw damaged(path, "offset of method " + c.getName() + '.' + name + "()");
+				}
+
+				symbols.addClass(c);
+				classes[i] = c;
+			}
+
+			symbols.freeze();
+
+			for (int i = 0; i < classes.length; ++i) {
+				int j = 0;
+
+				for (Symbol field: classes[i].getDeclaredFields()) {
+					if (field.getOffset() != fieldOffsets[i][j++])
+						throw damaged(path, "offset of field " + classes[i].getName() + '.' + field.getName());
+				}
+			}
+
+			return symbols;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw damaged(path, "truncated or out of range");
+		}
+	}
+
+	private static void putVariable(Output out, Map<String, Integer> strings, Symbol variable) {
+		out.putInt(string(strings, variable.getName()));
+		out.putInt(string(strings, variable.getType().getName()));
+	}
+
+	private static Symbol getVariable(ByteBuffer in, SymbolTable symbols, String[] strings) {
+		String name = strings[in.getInt()];
+
+		return new Symbol(type(symbols, strings[in.getInt()]), name);
+	}
+
+	/* Types by name: main()'s too, which no variable can have */
+	private static Type type(SymbolTable symbols, String name) {
+		if (name.equals(Type.STRING_ARRAY.getName()))
+			return Type.STRING_ARRAY;
+		else if (name.equals(Type.STATIC_VOID.getName()))
+			return Type.STATIC_VOID;
+		else
+			return symbols.getType(name);
+	}
+
+	private static int string(Map<String, Integer> strings, String s) {
+		Integer index = strings.get(s);
+
+		if (index == null) {
+			index = strings.size();
+			strings.put(s, index);
+		}
+
+		return index;
+	}
+
+	private static IOException damaged(Path path, String what) {
+		return new IOException("Damaged symbol file " + path + ": " + what);
+	}
+
+	/* Growable big-endian buffer, as read back by ByteBuffer */
+	private static class Output {
+		private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+		private void ensure(int bytes) {
+			if (buffer.remaining() >= bytes)
+				return;
+
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+			buffer.flip();
+			grown.put(buffer);
+
+			buffer = grown;
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putByte(int value) {
+			ensure(1);
+			buffer.put((byte) value);
+		}
+
+		void putBytes(byte[] bytes) {
+			ensure(bytes.length);
+			buffer.put(bytes);
+		}
+
+		/* Flipped, for writing out */
+		ByteBuffer buffer() {
+			ByteBuffer out = buffer.duplicate();
+			out.flip();
+
+			return out;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package symbol;
+
+import java.util.*;
+
+/* Symbols by name, in insertion order: The parameters and variables of a method, or the fields of a class.
+ * Those are few, so they are kept in an array and looked up by scanning it, until there are more than
+ * THRESHOLD and a hash index is built. As a List, it is a read-only view of the symbols (no copies) */
+class SymbolMap<S extends Symbol> extends AbstractList<S> {
+	private static final int THRESHOLD = 8;
+	private static final Symbol[] EMPTY = new Symbol[0];
+
+	private Symbol[] symbols = EMPTY;
+	private int size = 0;
+	private Map<String, Integer> index;           /* Past THRESHOLD symbols */
+
+	/* A symbol of the same name is replaced, in place */
+	public void put(S symbol) {
+		int at = position(symbol.getName());
+
+		if (at >= 0) {
+			symbols[at] = symbol;
+			return;
+		}
+
+		if (size == symbols.length)
+			symbols = Arrays.copyOf(symbols, Math.max(4, size * 2));
+
+		symbols[size] = symbol;
+
+		if (index != null) {
+			index.put(symbol.getName(), size);
+		} else if (size == THRESHOLD) {
+			index = new HashMap<>();
+
+			for (int i = 0; i <= size; ++i)
+				index.put(symbols[i].getName(), i);
+		}
+
+		++size;
+	}
+
+	/* Position of the symbol of that name, or -1 */
+	public int position(String name) {
+		if (index != null) {
+			Integer at = index.get(name);
+			return (at != null) ? at : -1;
+		}
+
+		for (int i = 0; i < size; ++i) {
+			if (symbols[i].getName().equals(name))
+				return i;
+		}
+
+		return -1;
+	}
+
+	public S get(String name) {
+		int at = position(name);
+
+		return (at >= 0) ? get(at) : null;
+	}
+
+	public boolean containsKey(String name) {
+		return position(name) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public S get(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+
+		return (S) symbols[i];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
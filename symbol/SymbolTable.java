@@ -6,43 +6,125 @@ public class SymbolTable {
 	// Use LinkedHashMap to get nice indexing
 	private final Map<String, ClassSymbol> classes = new LinkedHashMap<>();
 
+	/* Interned class and method types */
+	private final Map<String, ClassType> classTypes = new HashMap<>();
+	private final Map<List<Type>, MethodType> methodTypes = new HashMap<>();
+
+	/* Once frozen, neither the table nor any symbol in it changes: A thread that sees it frozen
+	 * (a volatile read, as the visitors make on creation) can read it all without locks */
+	private volatile boolean frozen = false;
+
+	/* Indices in the flattened member tables of classes, by name (see ClassSymbol.freeze()) */
+	private final Map<String, int[]> fieldIndices = new HashMap<>();
+	private final Map<String, int[]> methodIndices = new HashMap<>();
+
 	public void addClass(ClassSymbol c) {
+		checkNotFrozen();
+
 		classes.put(c.getName(), c);
+		getClassType(c.getName()).bind(c);
 	}
 
-	public ClassSymbol getClass(String name) {
-		return classes.get(name);
+	/* The type of the given name: Class names need not be defined (yet) */
+	public Type getType(String name) {
+		switch (name) {
+			case "int":
+				return Type.INT;
+
+			case "boolean":
+				return Type.BOOLEAN;
+
+			case "int[]":
+				return Type.INT_ARRAY;
+
+			default:
+				return getClassType(name);
+		}
 	}
 
-	public boolean hasClass(String name) {
-		return (getClass(name) != null);
+	public ClassType getClassType(String name) {
+		/* Frozen: Types of undefined classes are no longer interned. Such types never match anyway */
+		if (frozen) {
+			ClassType type = classTypes.get(name);
+			return (type != null) ? type : new ClassType(name);
+		}
+
+		return classTypes.computeIfAbsent(name, ClassType::new);
 	}
 
-	public boolean isValidType(String type) {
-		return (Symbol.isBasicType(type) || hasClass(type));
+	/* Signature of a method, out of its return type and parameters so far */
+	public MethodType getMethodType(MethodSymbol method) {
+		List<Type> parameterTypes = new ArrayList<>();
+
+		for (Symbol parameter: method.getParameters())
+			parameterTypes.add(parameter.getType());
+
+		return getMethodType(method.getType(), parameterTypes);
 	}
 
-	public boolean isSubclass(String derived, String base) {
-		if (!hasClass(derived) || !hasClass(base))
-			return false;
+	MethodType getMethodType(Type returnType, List<Type> parameterTypes) {
+		checkNotFrozen();
+
+		List<Type> key = new ArrayList<>(parameterTypes.size() + 1);
 
-		return getClass(derived).isSubclassOf(getClass(base));
+		key.add(returnType);
+		key.addAll(parameterTypes);
+
+		MethodType signature = methodTypes.get(key);
+
+		if (signature == null) {
+			signature = new MethodType(key.get(0), key.subList(1, key.size()));
+			methodTypes.put(key, signature);
+		}
+
+		return signature;
 	}
 
-	public boolean typesMatch(String derived, String base) {
-		if (derived.equals(base))
-			return isValidType(derived);  /* Basic types here too */
-		else
-			return isSubclass(derived, base);
+	/* After SymbolVisitor: Class layouts and the hierarchy are final, so flatten member tables
+	 * and number the classes for subclass tests. A parent class is always added before its
+	 * subclasses, so it is frozen first */
+	public void freeze() {
+		if (frozen)
+			return;
+
+		for (ClassSymbol c: classes.values())
+			c.freeze(fieldIndices, methodIndices);
+
+		ClassSymbol.number(new ArrayList<>(classes.values()));
+
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new IllegalStateException("Symbol table is frozen");
+	}
+
+	public ClassSymbol getClass(String name) {
+		return classes.get(name);
+	}
+
+	public Collection<ClassSymbol> getClasses() {
+		return Collections.unmodifiableCollection(classes.values());
+	}
+
+	public boolean hasClass(String name) {
+		return (getClass(name) != null);
+	}
+
+	public boolean typesMatch(Type derived, Type base) {
+		return derived.matches(base);
 	}
 
 	public boolean typesMatch(Symbol derived, Symbol base) {
 		return typesMatch(derived.getType(), base.getType());
 	}
 
-	public String getFieldType(String className, String methodName, String name) {
-		Symbol target = null;
-
+	public Type getFieldType(String className, String methodName, String name) {
 		if (className == null)
 			return null;
 
@@ -55,15 +137,13 @@ public class SymbolTable {
 		if (methodName != null) {
 			MethodSymbol method = c.getMethod(methodName);
 			if (method != null) {
-				target = method.getField(name);
+				Slot slot = method.resolve(name);
 
-				if (target == null)
-					target = method.getParameter(name);
+				return (slot != null) ? slot.getType() : null;
 			}
 		}
 
-		if (target == null)
-			target = c.getField(name);
+		Symbol target = c.getField(name);
 
 		if (target == null)
 			return null;
@@ -71,19 +151,16 @@ public class SymbolTable {
 			return target.getType();
 	}
 
-	public boolean compatibleCall(MethodSymbol definition, MethodSymbol call) {
-		if (!definition.getName().equals(call.getName()))
-			return false;
-
+	/* Can definition be called with arguments of types argumentTypes[from] to argumentTypes[from + count - 1]? */
+	public boolean compatibleCall(MethodSymbol definition, Type[] argumentTypes, int from, int count) {
 		List<Symbol> definitionParams = definition.getParameters();
-		List<Symbol> callParams = call.getParameters();
 
-		if (definitionParams.size() != callParams.size())
+		if (definitionParams.size() != count)
 			return false;
 
-		for (int i = 0; i < callParams.size(); ++i) {
+		for (int i = 0; i < count; ++i) {
 			/* Call can pass subtype of argument type */
-			if (!typesMatch(callParams.get(i), definitionParams.get(i)))
+			if (!typesMatch(argumentTypes[from + i], definitionParams.get(i).getType()))
 				return false;
 		}
 
@@ -0,0 +1,71 @@
+package symbol;
+
+/* Interned MiniJava types: There is a single object per type (per SymbolTable, for class and
+ * method types), so they compare by identity. Size and LLVM type are worked out on creation */
+public class Type {
+	public static final Type INT = new Type("int", 4, "i32", "0");
+	public static final Type BOOLEAN = new Type("boolean", 1, "i1", "false");
+	public static final Type INT_ARRAY = new Type("int[]", 8, "i32*", "null");
+
+	/* Only in main(): Never valid for a variable */
+	public static final Type STRING_ARRAY = new Type("String[]", 8, "i8*", "null");
+	public static final Type STATIC_VOID = new Type("static void", 8, "i8*", "null");
+
+	private final String name;
+	private final int size;
+	private final String llType;
+	private final String llNull;
+
+	protected Type(String name, int size, String llType, String llNull) {
+		this.name = name;
+		this.size = size;
+		this.llType = llType;
+		this.llNull = llNull;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/* Bytes it takes as a field */
+	public int getSize() {
+		return size;
+	}
+
+	public String getLlType() {
+		return llType;
+	}
+
+	/* Zero value, for initialization */
+	public String getLlNull() {
+		return llNull;
+	}
+
+	public boolean isBasic() {
+		return this == INT || this == BOOLEAN || this == INT_ARRAY;
+	}
+
+	/* A basic type or a defined class */
+	public boolean isValid() {
+		return isBasic();
+	}
+
+	/* The class, for a defined class type (null otherwise) */
+	public ClassSymbol getClassSymbol() {
+		return null;
+	}
+
+	/* Can a value of this type be used as one of type base? */
+	public boolean matches(Type base) {
+		if (this == base)
+			return isValid();          /* Basic types here too */
+
+		ClassSymbol derived = getClassSymbol(), ancestor = base.getClassSymbol();
+		return derived != null && ancestor != null && derived.isSubclassOf(ancestor);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
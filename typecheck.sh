@@ -0,0 +1,79 @@
+#!/bin/bash
+
+# Compile programs of M methods (10 per class, each with a loop, arithmetic and calls),
+# type checking them sequentially and with --typecheck parallel on 1, 2, 4 ... P threads
+# of the common ForkJoinPool, and print the type check time of each run.
+# Usage: ./typecheck.sh [M ...]  (default: 10000 30000 100000)
+# P is the number of cores (or THREADS). Extra flags for the JVM or Main go in JAVA_OPTS / MAIN_OPTS.
+
+METHODS=("$@")
+[[ ${#METHODS[@]} -eq 0 ]] && METHODS=(10000 30000 100000)
+
+THREADS=${THREADS:-$(nproc)}
+JAVA_OPTS=${JAVA_OPTS:-"-Xmx4g"}
+MAIN_OPTS=${MAIN_OPTS:-"--parser descent"}
+
+DIR=$(mktemp -d)
+trap 'rm -rf "$DIR"' EXIT
+
+generate() {
+	awk -v methods="$1" '
+	BEGIN {
+		classes = int((methods + 9) / 10)
+
+		print "class Methods {"
+		print "\tpublic static void main(String[] a) {"
+		print "\t\tSystem.out.println(new C0().m0(1, new int[10]));"
+		print "\t}"
+		print "}"
+
+		for (k = 0; k < classes; ++k) {
+			print "class C" k " {"
+			print "\tint f;"
+			print "\tboolean b;"
+
+			for (l = 0; l < 10; ++l) {
+				print "\tpublic int m" l "(int x, int[] v) {"
+				print "\t\tint i;"
+				print "\t\tint n;"
+				print "\t\tint s;"
+				print "\t\tC" k " o;"
+				print "\t\ti = 0;"
+				print "\t\tn = v.length;"
+				print "\t\ts = x;"
+				print "\t\to = this;"
+				print "\t\twhile ((i < n) && !b) {"
+				print "\t\t\tv[i] = ((s + i) * 2) - f;"
+				print "\t\t\ts = s + (v[i]);"
+				print "\t\t\ti = i + 1;"
+				print "\t\t}"
+				if (l < 9)
+					print "\t\ts = s + (o.m" (l + 1) "(s - 1, v));"
+				print "\t\treturn s;"
+				print "\t}"
+			}
+
+			print "}"
+		}
+	}'
+}
+
+run() {
+	java $JAVA_OPTS "$@" Main $MAIN_OPTS --stats - "$FILE" 2>&1 | grep '^{' |
+		sed -n 's/.*"typecheck":{"ns":\([0-9]*\).*/\1/p'
+}
+
+for M in "${METHODS[@]}"; do
+	FILE="$DIR/methods_$M.java"
+	generate "$M" > "$FILE"
+
+	NS=$(run)
+	printf '%7d methods  sequential  %6d ms\n' "$M" $(( ${NS:-0} / 1000000 ))
+
+	for (( P = 1; P <= THREADS; P *= 2 )); do
+		NS=$(MAIN_OPTS="$MAIN_OPTS --typecheck parallel" run -Djava.util.concurrent.ForkJoinPool.common.parallelism=$P)
+		printf '%7d methods  parallel %-2d %6d ms\n' "$M" "$P" $(( ${NS:-0} / 1000000 ))
+	done
+
+	rm -f "$DIR"/*.ll
+done